@@ -0,0 +1,127 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage.mysql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares the insert modes against a local database, run with
+ * gradle benchmark -Dprism.benchmark.mysql=jdbc:mysql://localhost/prism_test
+ * and optionally prism.benchmark.user and prism.benchmark.password.
+ */
+@EnabledIfSystemProperty(named = "prism.benchmark.mysql", matches = "jdbc:.+")
+public class MySQLBulkInsertBenchmark {
+
+    private static final String TABLE = "prism_benchmark";
+    private static final int ROWS = 100000;
+    private static final int BATCH_SIZE = 1000;
+    private static final Logger LOGGER = Logger.getLogger(MySQLBulkInsertBenchmark.class.getName());
+
+    @Test
+    public void benchmarkInsertModes() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getProperty("prism.benchmark.user", "root"));
+        properties.setProperty("password", System.getProperty("prism.benchmark.password", ""));
+        properties.setProperty("allowLoadLocalInfile", "true");
+        properties.setProperty("allowLocalInfile", "true");
+
+        List<Object[]> rows = new ArrayList<>(ROWS);
+        String world = UUID.randomUUID().toString().replace("-", "");
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new Object[]{System.currentTimeMillis() / 1000L, i % 30, world, i % 5000, i % 256, i / 5000, i % 400, null, 1});
+        }
+
+        MySQLBulkInsert insert = new MySQLBulkInsert(TABLE,
+                Arrays.asList("created", "eventName", "worldUuid", "x", "y", "z", "target", "player", "cause"),
+                Arrays.asList("?", "?", "UNHEX(?)", "?", "?", "?", "?", "UNHEX(?)", "?"),
+                BATCH_SIZE);
+
+        try (Connection conn = DriverManager.getConnection(System.getProperty("prism.benchmark.mysql"), properties)) {
+            for (MySQLBulkInsert.Mode mode : MySQLBulkInsert.Mode.values()) {
+                recreateTable(conn);
+
+                long start = System.nanoTime();
+                conn.setAutoCommit(false);
+                for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+                    insert.insert(conn, rows.subList(i, Math.min(i + BATCH_SIZE, rows.size())), mode, false);
+                    conn.commit();
+                }
+
+                conn.setAutoCommit(true);
+                long elapsed = System.nanoTime() - start;
+
+                Assertions.assertEquals(ROWS, countRows(conn), mode + " lost rows");
+                LOGGER.info(String.format("%s: %d rows in %dms (%.0f rows/s)",
+                        mode, ROWS, elapsed / 1000000L, ROWS / (elapsed / 1e9)));
+            }
+
+            try (Statement statement = conn.createStatement()) {
+                statement.execute("DROP TABLE " + TABLE);
+            }
+        }
+    }
+
+    private static long countRows(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + TABLE)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void recreateTable(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute("CREATE TABLE " + TABLE + " ("
+                    + "id int(10) unsigned NOT NULL AUTO_INCREMENT, "
+                    + "created int(10) unsigned NOT NULL, "
+                    + "eventName int(10) unsigned NOT NULL, "
+                    + "worldUuid binary(16) NOT NULL, "
+                    + "x int(10) NOT NULL, "
+                    + "y smallint(5) NOT NULL, "
+                    + "z int(10) NOT NULL, "
+                    + "target int(10) unsigned, "
+                    + "player binary(16), "
+                    + "cause int(10) unsigned, "
+                    + "PRIMARY KEY (id), "
+                    + "KEY location (worldUuid, x, z, y), "
+                    + "KEY created (created)"
+                    + ") ENGINE=InnoDB");
+        }
+    }
+}
@@ -25,7 +25,6 @@
 package com.helion3.prism;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.helion3.prism.api.data.PrismEvent;
@@ -37,6 +36,7 @@ import com.helion3.prism.api.flags.FlagExtended;
 import com.helion3.prism.api.flags.FlagHandler;
 import com.helion3.prism.api.flags.FlagNoGroup;
 import com.helion3.prism.api.flags.FlagOrder;
+import com.helion3.prism.api.flags.FlagPreview;
 import com.helion3.prism.api.parameters.ParameterBlock;
 import com.helion3.prism.api.parameters.ParameterCause;
 import com.helion3.prism.api.parameters.ParameterEventName;
@@ -44,12 +44,16 @@ import com.helion3.prism.api.parameters.ParameterHandler;
 import com.helion3.prism.api.parameters.ParameterPlayer;
 import com.helion3.prism.api.parameters.ParameterRadius;
 import com.helion3.prism.api.parameters.ParameterTime;
-import com.helion3.prism.api.records.ActionableResult;
 import com.helion3.prism.api.storage.StorageAdapter;
 import com.helion3.prism.commands.PrismCommands;
 import com.helion3.prism.configuration.Config;
 import com.helion3.prism.configuration.Configuration;
 import com.helion3.prism.listeners.*;
+import com.helion3.prism.metrics.Metrics;
+import com.helion3.prism.queues.ApplierQueue;
+import com.helion3.prism.queues.RecordSampler;
+import com.helion3.prism.queues.RecordingQueue;
+import com.helion3.prism.queues.UndoLog;
 import com.helion3.prism.queues.RecordingQueueManager;
 import com.helion3.prism.storage.h2.H2StorageAdapter;
 import com.helion3.prism.storage.mongodb.MongoStorageAdapter;
@@ -72,8 +76,6 @@ import org.spongepowered.api.plugin.PluginContainer;
 import org.spongepowered.api.scheduler.Task;
 
 import java.nio.file.Path;
-import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -113,10 +115,12 @@ public final class Prism {
     private final Set<UUID> activeWands = Sets.newHashSet();
     private final FilterList filterList = new FilterList(FilterMode.BLACKLIST);
     private final Set<FlagHandler> flagHandlers = Sets.newHashSet();
-    private final Map<UUID, List<ActionableResult>> lastActionResults = Maps.newHashMap();
     private final Set<ParameterHandler> parameterHandlers = Sets.newHashSet();
     private final Set<PrismEvent> prismEvents = Sets.newHashSet();
     private final RecordingQueueManager recordingQueueManager = new RecordingQueueManager();
+    private RecordSampler recordSampler;
+    private RecordingQueue recordingQueue;
+    private UndoLog undoLog;
 
     @Listener
     public void onConstruction(GameConstructionEvent event) {
@@ -128,6 +132,9 @@ public final class Prism {
     @Listener
     public void onPreInitialization(GamePreInitializationEvent event) {
         getConfiguration().loadConfiguration();
+        recordSampler = new RecordSampler(getConfig().getRecordingCategory());
+        recordingQueue = new RecordingQueue(getConfig().getRecordingCategory(), getPath().getParent().resolve("spill"));
+        undoLog = new UndoLog(getPath().getParent().resolve("undo"));
     }
 
     @Listener
@@ -138,6 +145,7 @@ public final class Prism {
         registerFlagHandler(new FlagExtended());
         registerFlagHandler(new FlagNoGroup());
         registerFlagHandler(new FlagOrder());
+        registerFlagHandler(new FlagPreview());
 
         // Register ParameterHandlers
         registerParameterHandler(new ParameterBlock());
@@ -181,13 +189,9 @@ public final class Prism {
 
             Preconditions.checkState(getStorageAdapter().connect());
 
-            // Initialize the recording queue manager
-            Task.builder()
-                    .async()
-                    .name("PrismRecordingQueueManager")
-                    .interval(1, TimeUnit.SECONDS)
-                    .execute(recordingQueueManager)
-                    .submit(getPluginContainer());
+            // Start the recording queue manager and writers, they run until the server stops
+            recordingQueueManager.start();
+            Metrics.register();
             getLogger().info("Prism started successfully. Bad guys beware.");
         } catch (Exception ex) {
             Sponge.getEventManager().unregisterPluginListeners(getPluginContainer());
@@ -197,13 +201,24 @@ public final class Prism {
 
     @Listener
     public void onStoppedServer(GameStoppedServerEvent event) {
-        // Cancel all scheduled tasks
+        // Cancel all scheduled tasks, releasing any thread still feeding a rollback
+        ApplierQueue.cancelAll();
         Sponge.getScheduler().getScheduledTasks(getInstance()).forEach(Task::cancel);
 
         if (getStorageAdapter() != null) {
-            // Flush any pending records
-            // If the scheduled task is still running this will block until it completes
-            recordingQueueManager.run();
+            // Flush any pending records once the writers have finished their current batches
+            try {
+                if (!recordingQueueManager.stop(30, TimeUnit.SECONDS)) {
+                    getLogger().warn("Timed out waiting for the recording writers to stop");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            recordingQueueManager.flush();
+            recordingQueueManager.close();
+            getRecordingQueue().close();
+            Metrics.unregister();
 
             // Shutdown storage
             getStorageAdapter().close();
@@ -302,12 +317,39 @@ public final class Prism {
     }
 
     /**
-     * Get a map of players and their last available actionable results.
+     * Returns the history of each player's last rollback or restore.
+     *
+     * @return {@link UndoLog}
+     */
+    public UndoLog getUndoLog() {
+        return undoLog;
+    }
+
+    /**
+     * Returns the sampler thinning out high volume events.
+     *
+     * @return {@link RecordSampler}
+     */
+    public RecordSampler getRecordSampler() {
+        return recordSampler;
+    }
+
+    /**
+     * Returns the queue holding records until they are handed to the writers.
+     *
+     * @return {@link RecordingQueue}
+     */
+    public RecordingQueue getRecordingQueue() {
+        return recordingQueue;
+    }
+
+    /**
+     * Returns the manager dispatching queued records to the writers.
      *
-     * @return A map of players' UUIDs to a list of their {@link ActionableResult}s
+     * @return {@link RecordingQueueManager}
      */
-    public Map<UUID, List<ActionableResult>> getLastActionResults() {
-        return lastActionResults;
+    public RecordingQueueManager getRecordingQueueManager() {
+        return recordingQueueManager;
     }
 
     /**
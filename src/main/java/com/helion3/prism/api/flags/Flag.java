@@ -42,5 +42,10 @@ public enum Flag {
     /**
      * Prevent aggregation of result records.
      */
-    NO_GROUP;
+    NO_GROUP,
+
+    /**
+     * Show the result of a rollback to the player instead of applying it.
+     */
+    PREVIEW;
 }
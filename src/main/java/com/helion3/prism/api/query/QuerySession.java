@@ -74,6 +74,14 @@ public class QuerySession {
         flags.add(flag);
     }
 
+    /**
+     * Remove a flag from this query session.
+     * @param flag Flag
+     */
+    public void removeFlag(Flag flag) {
+        flags.remove(flag);
+    }
+
     /**
      * Returns the command source this session belongs to
      *
@@ -24,5 +24,11 @@
 package com.helion3.prism.api.query;
 
 public interface QueryValueMutator {
-    String mutate(String value);
+    /**
+     * Converts a condition value to the value stored by the database.
+     *
+     * @param value Condition value
+     * @return Value bound to the query
+     */
+    Object mutate(String value);
 }
@@ -23,6 +23,9 @@
  */
 package com.helion3.prism.api.query;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -35,20 +38,32 @@ import org.spongepowered.api.data.DataQuery;
 
 import com.google.common.collect.Range;
 import com.helion3.prism.Prism;
+import com.helion3.prism.storage.SQLDictionary;
+import com.helion3.prism.util.DataQueries;
 
 /**
  * Super simple SQL query builder.
+ *
+ * Condition values are never part of the SQL text, they're bound to
+ * placeholders in order. Queries differing only in their values share
+ * the same text, so prepared statements and their plans can be reused.
  */
 public class SQLQuery {
 
     protected final static String tablePrefix = Prism.getInstance().getConfig().getStorageCategory().getTablePrefix();
+
+    // Coalesced records stand for several events, so grouped lookups add up their counts
+    protected final static String GROUPED_TOTAL = "SUM(" + DataQueries.Count + ") AS total";
+
     protected final String query;
+    protected final List<Object> parameters;
 
     /**
      * Supported SQL query modes.
      */
     public enum Mode {
-        SELECT
+        SELECT,
+        DELETE
     }
 
     /**
@@ -56,7 +71,65 @@ public class SQLQuery {
      * @param query String query
      */
     public SQLQuery(String query) {
+        this(query, Collections.emptyList());
+    }
+
+    /**
+     * Create a new SQLQuery with placeholders and their values.
+     *
+     * @param query String query
+     * @param parameters Values bound to the placeholders, in order
+     */
+    public SQLQuery(String query, List<Object> parameters) {
         this.query = query;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Get the values bound to the placeholders of the query.
+     *
+     * @return List of values, in order
+     */
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Prepares the query and binds its values.
+     *
+     * @param conn Connection
+     * @return PreparedStatement
+     * @throws SQLException
+     */
+    public PreparedStatement prepare(Connection conn) throws SQLException {
+        PreparedStatement statement = conn.prepareStatement(query);
+        try {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+        } catch (SQLException ex) {
+            statement.close();
+            throw ex;
+        }
+
+        return statement;
+    }
+
+    /**
+     * Adds the value mutators for columns stored the same way by every
+     * SQL storage adapter.
+     *
+     * @param builder Builder
+     * @param dictionary Dictionary of the storage adapter
+     */
+    protected static void addValueMutators(Builder builder, SQLDictionary dictionary) {
+        // Values which have never been stored can't match any record
+        QueryValueMutator dictionaryMutator = value -> dictionary.findId(value).orElse(0);
+        builder.valueMutator(DataQueries.EventName, dictionaryMutator);
+        builder.valueMutator(DataQueries.Target, dictionaryMutator);
+        builder.valueMutator(DataQueries.Cause, dictionaryMutator);
+
+        builder.valueMutator(DataQueries.RolledBack, value -> Boolean.parseBoolean(value) ? 1 : 0);
     }
 
     /**
@@ -71,13 +144,22 @@ public class SQLQuery {
         private String table;
         private Map<String, String> joins = new HashMap<>();
         private List<Condition> conditions = new ArrayList<>();
+        private List<String> rawConditions = new ArrayList<>();
+        private List<Object> rawParameters = new ArrayList<>();
         private Map<DataQuery, QueryValueMutator> valueMutators = new HashMap<>();
+        private Map<DataQuery, String> placeholders = new HashMap<>();
+        private List<Object> parameters = new ArrayList<>();
 
         public Builder select() {
             mode = Mode.SELECT;
             return this;
         }
 
+        public Builder delete() {
+            mode = Mode.DELETE;
+            return this;
+        }
+
         /**
          * Add a column.
          *
@@ -154,6 +236,19 @@ public class SQLQuery {
             return this;
         }
 
+        /**
+         * Add a condition written in SQL, such as an id range.
+         *
+         * @param condition String condition, values as placeholders
+         * @param parameters Values of the placeholders, in order
+         * @return Builder
+         */
+        public Builder where(String condition, Object... parameters) {
+            rawConditions.add("AND (" + condition + ")");
+            Collections.addAll(rawParameters, parameters);
+            return this;
+        }
+
         /**
          * Add a value mutator.
          *
@@ -166,6 +261,19 @@ public class SQLQuery {
             return this;
         }
 
+        /**
+         * Add a value mutator whose value is used within an SQL expression.
+         *
+         * @param path DataQuery
+         * @param placeholder String expression containing a single '?', such as "UNHEX(?)"
+         * @param mutator QueryValueMutator mutator
+         * @return Builder
+         */
+        public Builder valueMutator(DataQuery path, String placeholder, QueryValueMutator mutator) {
+            placeholders.put(path, placeholder);
+            return valueMutator(path, mutator);
+        }
+
         /**
          * Add order by columns.
          *
@@ -184,9 +292,12 @@ public class SQLQuery {
          */
         public SQLQuery build() {
             StringBuilder sql = new StringBuilder(mode.name() + " ");
+            parameters = new ArrayList<>();
 
             // Columns
-            sql.append(String.join(", ", columns)).append(" ");
+            if (mode == Mode.SELECT) {
+                sql.append(String.join(", ", columns)).append(" ");
+            }
 
             // Tables
             sql.append("FROM ").append(table).append(" ");
@@ -198,6 +309,8 @@ public class SQLQuery {
 
             // Where
             List<String> queryConditions = buildConditions(conditions);
+            queryConditions.addAll(rawConditions);
+            parameters.addAll(rawParameters);
             if (!queryConditions.isEmpty()) {
                 sql.append("WHERE ").append(String.join(" ", queryConditions).replaceFirst("AND|OR ", "")).append(" ");
             }
@@ -212,7 +325,7 @@ public class SQLQuery {
                 sql.append("ORDER BY ").append(String.join(", ", orderBy)).append(" ");
             }
 
-            return new SQLQuery(sql.toString().trim());
+            return new SQLQuery(sql.toString().trim(), parameters);
         }
 
         /**
@@ -274,11 +387,11 @@ public class SQLQuery {
             String fieldComparator = "";
             String field = popDataQuery(condition.getFieldName().toString());
 
-            String value = "'" + condition.getValue().toString() + "'";
+            Object value = condition.getValue().toString();
 
             // Dates are stored as epochs in sql schemas
             if (condition.getValue() instanceof Date) {
-                value = "" + (((Date) condition.getValue()).getTime() / 1000L);
+                value = ((Date) condition.getValue()).getTime() / 1000L;
             }
 
             // Allow db-specific mutations
@@ -287,18 +400,25 @@ public class SQLQuery {
                 value = mutator.mutate(condition.getValue().toString());
             }
 
+            String placeholder = placeholders.getOrDefault(condition.getFieldName(), "?");
+
             if (condition.getMatchRule().equals(MatchRule.EQUALS)) {
-                fieldComparator += "= " + value + " ";
+                fieldComparator += "= " + placeholder + " ";
+                parameters.add(value);
             }
             else if (condition.getMatchRule().equals(MatchRule.BETWEEN)) {
                 Range<?> range = (Range<?>) condition.getValue();
-                fieldComparator += "> " + range.lowerEndpoint() + " AND " + field + " < " + range.upperEndpoint() + " ";
+                fieldComparator += "> ? AND " + field + " < ? ";
+                parameters.add(range.lowerEndpoint());
+                parameters.add(range.upperEndpoint());
             }
             else if (condition.getMatchRule().equals(MatchRule.GREATER_THAN_EQUAL)) {
-                fieldComparator += ">= " + value + " ";
+                fieldComparator += ">= " + placeholder + " ";
+                parameters.add(value);
             }
             else if (condition.getMatchRule().equals(MatchRule.LESS_THAN_EQUAL)) {
-                fieldComparator += "<= " + value + " ";
+                fieldComparator += "<= " + placeholder + " ";
+                parameters.add(value);
             }
             // @todo handle includes, excludes
 
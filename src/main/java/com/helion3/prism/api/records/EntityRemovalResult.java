@@ -0,0 +1,66 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.helion3.prism.api.records;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.data.Transaction;
+import org.spongepowered.api.entity.Entity;
+import org.spongepowered.api.world.World;
+
+import com.helion3.prism.util.DataQueries;
+
+/**
+ * Removes an entity spawned by a rollback, used to undo it.
+ */
+public class EntityRemovalResult extends ResultComplete implements Actionable {
+    @Override
+    public ActionableResult rollback() {
+        Optional<String> worldUuid = data.getString(DataQueries.Location.then(DataQueries.WorldUuid));
+        Optional<String> entityUuid = data.getString(DataQueries.Id);
+        if (!worldUuid.isPresent() || !entityUuid.isPresent()) {
+            return ActionableResult.skipped(SkipReason.INVALID);
+        }
+
+        Optional<World> world = Sponge.getServer().getWorld(UUID.fromString(worldUuid.get()));
+        if (!world.isPresent()) {
+            return ActionableResult.skipped(SkipReason.INVALID_LOCATION);
+        }
+
+        Optional<Entity> entity = world.get().getEntity(UUID.fromString(entityUuid.get()));
+        if (!entity.isPresent() || entity.get().isRemoved()) {
+            return ActionableResult.skipped(SkipReason.INVALID);
+        }
+
+        entity.get().remove();
+        return ActionableResult.success(new Transaction<>(entity.get(), new SerializableNonExistent()));
+    }
+
+    @Override
+    public ActionableResult restore() {
+        return ActionableResult.skipped(SkipReason.UNIMPLEMENTED);
+    }
+}
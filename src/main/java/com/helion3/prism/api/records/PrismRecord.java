@@ -27,7 +27,6 @@ package com.helion3.prism.api.records;
 import com.google.common.base.Preconditions;
 import com.helion3.prism.Prism;
 import com.helion3.prism.api.data.PrismEvent;
-import com.helion3.prism.queues.RecordingQueue;
 import com.helion3.prism.util.DataQueries;
 import com.helion3.prism.util.DataUtil;
 import org.spongepowered.api.Sponge;
@@ -58,6 +57,7 @@ import org.spongepowered.api.world.World;
 
 import java.util.Date;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * An easy-to-understand factory class for Prism records,
@@ -70,12 +70,28 @@ import java.util.Optional;
  *          .location(player.getLocation())
  *          .buildAndSave();
  * }</pre>
+ *
+ * Common values such as the target and location are held in plain
+ * fields, a {@link DataContainer} is only built once the record is
+ * about to be written, off the main thread.
  */
 public class PrismRecord {
 
     private final String event;
     private final Object source;
-    private final DataContainer dataContainer;
+    private final String target;
+    private final UUID worldUuid;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final String container;
+    private final DataContainer extraData;
+    private Integer quantity;
+    private int count = 1;
+    private long created;
+    private String player;
+    private String cause;
+    private DataContainer dataContainer;
 
     /**
      * A final, save-ready record.
@@ -87,46 +103,95 @@ public class PrismRecord {
     private PrismRecord(String event, Object source, DataContainer dataContainer) {
         this.event = event;
         this.source = source;
+        this.target = null;
+        this.worldUuid = null;
+        this.x = 0;
+        this.y = 0;
+        this.z = 0;
+        this.quantity = null;
+        this.container = null;
+        this.extraData = null;
+        this.created = DataUtil.getCreated(dataContainer).getTime();
         this.dataContainer = dataContainer;
     }
 
+    /**
+     * A final, save-ready record.
+     *
+     * @param builder EventBuilder holding the record values
+     */
+    PrismRecord(EventBuilder builder) {
+        this.event = builder.event;
+        this.source = builder.source;
+        this.target = builder.target;
+        this.worldUuid = builder.worldUuid;
+        this.x = builder.x;
+        this.y = builder.y;
+        this.z = builder.z;
+        this.quantity = builder.quantity;
+        this.container = builder.container;
+        this.extraData = builder.extraData;
+    }
+
     /**
      * Save the current record.
      */
     public void save() {
-        DataUtil.writeToDataView(getDataContainer(), DataQueries.Created, new Date());
-        DataUtil.writeToDataView(getDataContainer(), DataQueries.EventName, getEvent());
+        created = System.currentTimeMillis();
 
-        DataQuery causeKey = DataQueries.Cause;
-        String causeValue = "environment";
         if (getSource() instanceof Player) {
-            causeKey = DataQueries.Player;
-            causeValue = ((Player) getSource()).getUniqueId().toString();
+            player = ((Player) getSource()).getUniqueId().toString();
         } else if (getSource() instanceof Entity) {
-            causeValue = ((Entity) getSource()).getType().getName();
+            cause = ((Entity) getSource()).getType().getName();
+        } else {
+            cause = "environment";
         }
 
-        DataUtil.writeToDataView(getDataContainer(), causeKey, causeValue);
-
         // Source filtered?
         if (!Prism.getInstance().getFilterList().allowsSource(getSource())) {
             return;
         }
 
-        // Original block filtered?
-        Optional<BlockType> originalBlockType = getDataContainer().getObject(DataQueries.OriginalBlock.then(DataQueries.BlockState).then(DataQueries.BlockType), BlockType.class);
-        if (originalBlockType.map(Prism.getInstance().getFilterList()::allows).orElse(false)) {
-            return;
+        // Block data is only present for events which carry extra data
+        if (extraData != null) {
+            // Original block filtered?
+            Optional<BlockType> originalBlockType = extraData.getObject(DataQueries.OriginalBlock.then(DataQueries.BlockState).then(DataQueries.BlockType), BlockType.class);
+            if (originalBlockType.map(Prism.getInstance().getFilterList()::allows).orElse(false)) {
+                return;
+            }
+
+            // Replacement block filtered?
+            Optional<BlockType> replacementBlockType = extraData.getObject(DataQueries.ReplacementBlock.then(DataQueries.BlockState).then(DataQueries.BlockType), BlockType.class);
+            if (replacementBlockType.map(Prism.getInstance().getFilterList()::allows).orElse(false)) {
+                return;
+            }
         }
 
-        // Replacement block filtered?
-        Optional<BlockType> replacementBlockType = getDataContainer().getObject(DataQueries.ReplacementBlock.then(DataQueries.BlockState).then(DataQueries.BlockType), BlockType.class);
-        if (replacementBlockType.map(Prism.getInstance().getFilterList()::allows).orElse(false)) {
+        // Sampled away or over the rate limit?
+        if (!Prism.getInstance().getRecordSampler().accept(this)) {
             return;
         }
 
         // Queue the finished record for saving
-        RecordingQueue.add(this);
+        Prism.getInstance().getRecordingQueue().add(this);
+    }
+
+    /**
+     * Recreates a queued record from its container, used when records
+     * are read back from disk. The original source is no longer
+     * available so the recorded player or cause is used instead.
+     *
+     * @param dataContainer DataContainer written by {@link #getDataContainer()}
+     * @return The recreated record
+     */
+    public static PrismRecord from(DataContainer dataContainer) {
+        Preconditions.checkNotNull(dataContainer);
+
+        String event = dataContainer.getString(DataQueries.EventName).orElse("unknown");
+        Object source = dataContainer.getString(DataQueries.Player)
+                .orElse(dataContainer.getString(DataQueries.Cause).orElse("environment"));
+
+        return new PrismRecord(event, source, dataContainer);
     }
 
     /**
@@ -146,7 +211,153 @@ public class PrismRecord {
         return source;
     }
 
-    public DataContainer getDataContainer() {
+    /**
+     * Returns the target of this record.
+     *
+     * @return Target, or null if not set or the record was read back from disk
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the world this record happened in.
+     *
+     * @return World UUID, or null if not set or the record was read back from disk
+     */
+    public UUID getWorldUuid() {
+        return worldUuid;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Returns the time this record was saved.
+     *
+     * @return Epoch milliseconds
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Returns the UUID of the player responsible for this record.
+     *
+     * @return Player UUID, or null if not caused by a player
+     */
+    public String getPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the non-player cause of this record.
+     *
+     * @return Cause, or null if caused by a player
+     */
+    public String getCause() {
+        return cause;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public String getContainer() {
+        return container;
+    }
+
+    /**
+     * Returns how many identical records were merged into this record.
+     *
+     * @return Record count, 1 if nothing was merged
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Merges an identical record into this record, adding up the
+     * quantity and count. The earliest created time is kept.
+     *
+     * @param record Identical record
+     */
+    public synchronized void merge(PrismRecord record) {
+        Preconditions.checkState(dataContainer == null, "Record has already been written");
+
+        if (quantity != null || record.quantity != null) {
+            quantity = (quantity != null ? quantity : 1) + (record.quantity != null ? record.quantity : 1);
+        }
+
+        count += record.count;
+        created = Math.min(created, record.created);
+    }
+
+    /**
+     * Returns whether this record carries data beyond its plain fields.
+     *
+     * @return True if extra data is present
+     */
+    public boolean hasExtraData() {
+        return extraData != null;
+    }
+
+    /**
+     * Returns the full container for this record, it's built on first
+     * use so this should only be called by the storage writers.
+     *
+     * @return DataContainer for this record
+     */
+    public synchronized DataContainer getDataContainer() {
+        if (dataContainer == null) {
+            DataContainer data = extraData != null ? extraData : DataContainer.createNew();
+            data.set(DataQueries.Created, new Date(created));
+            data.set(DataQueries.EventName, event);
+
+            if (player != null) {
+                data.set(DataQueries.Player, player);
+            } else {
+                data.set(DataQueries.Cause, cause != null ? cause : "environment");
+            }
+
+            if (target != null) {
+                data.set(DataQueries.Target, target);
+            }
+
+            if (quantity != null) {
+                data.set(DataQueries.Quantity, quantity);
+            }
+
+            if (container != null) {
+                data.set(DataQueries.Container, container);
+            }
+
+            if (count > 1) {
+                data.set(DataQueries.Count, count);
+            }
+
+            // Entities write their exact position into the extra data
+            if (worldUuid != null && !data.contains(DataQueries.Location)) {
+                DataContainer location = DataContainer.createNew();
+                location.set(DataQueries.WorldUuid, worldUuid.toString());
+                location.set(DataQueries.X, x);
+                location.set(DataQueries.Y, y);
+                location.set(DataQueries.Z, z);
+                data.set(DataQueries.Location, location);
+            }
+
+            dataContainer = data;
+        }
+
         return dataContainer;
     }
 
@@ -157,12 +368,18 @@ public class PrismRecord {
 
         private final Object source;
         private String event;
-        private DataContainer dataContainer;
+        private String target;
+        private UUID worldUuid;
+        private int x;
+        private int y;
+        private int z;
+        private Integer quantity;
+        private String container;
+        private DataContainer extraData;
 
         protected EventBuilder(Object source) {
             this.source = source;
             this.event = "unknown";
-            this.dataContainer = DataContainer.createNew();
         }
 
         /**
@@ -197,7 +414,7 @@ public class PrismRecord {
         public EventBuilder container(String container) {
             Preconditions.checkNotNull(container);
 
-            DataUtil.writeToDataView(getDataContainer(), DataQueries.Container, container);
+            this.container = checkOverwrite(DataQueries.Container, this.container, container);
             return this;
         }
 
@@ -230,7 +447,10 @@ public class PrismRecord {
 
             DataUtil.writeToDataView(getDataContainer(), DataQueries.Entity, entityData);
             DataUtil.writeToDataView(getDataContainer(), DataQueries.Id, entity.getType().getId());
-            DataUtil.writeToDataView(getDataContainer(), DataQueries.Target, entity.get(Keys.DISPLAY_NAME).map(Text::toPlain).orElse(entity.getType().getName()));
+            target(entity.get(Keys.DISPLAY_NAME).map(Text::toPlain).orElse(entity.getType().getName()));
+
+            // Plain location fields are kept for partitioning, the exact position is in the extra data
+            setLocation(entity.getLocation());
             return this;
         }
 
@@ -268,8 +488,8 @@ public class PrismRecord {
             Preconditions.checkNotNull(itemStack);
             Preconditions.checkArgument(itemStack.getType() != ItemTypes.NONE);
 
-            DataUtil.writeToDataView(getDataContainer(), DataQueries.Target, itemStack.getType().getId());
-            DataUtil.writeToDataView(getDataContainer(), DataQueries.Quantity, quantity);
+            target(itemStack.getType().getId());
+            this.quantity = checkOverwrite(DataQueries.Quantity, this.quantity, quantity);
             return this;
         }
 
@@ -298,8 +518,8 @@ public class PrismRecord {
             }else{
                 target = itemStack.getTranslation().get();
             }
-            DataUtil.writeToDataView(getDataContainer(), DataQueries.Target, target);
-            DataUtil.writeToDataView(getDataContainer(), DataQueries.Quantity, quantity);
+            target(target);
+            this.quantity = checkOverwrite(DataQueries.Quantity, this.quantity, quantity);
             return this;
         }
 
@@ -311,11 +531,11 @@ public class PrismRecord {
         public EventBuilder location(Location<World> location) {
             Preconditions.checkNotNull(location);
 
-            DataContainer container = location.toContainer();
-            container.remove(DataQueries.BlockType);
-            container.remove(DataQueries.ContentVersion);
-            container.remove(DataQueries.WorldName);
-            DataUtil.writeToDataView(getDataContainer(), DataQueries.Location, location);
+            if (worldUuid != null) {
+                throw new IllegalArgumentException("Attempted to overwrite " + DataQueries.Location);
+            }
+
+            setLocation(location);
             return this;
         }
 
@@ -337,7 +557,7 @@ public class PrismRecord {
         public EventBuilder target(String target) {
             Preconditions.checkNotNull(target);
 
-            DataUtil.writeToDataView(getDataContainer(), DataQueries.Target, target);
+            this.target = checkOverwrite(DataQueries.Target, this.target, target);
             return this;
         }
 
@@ -366,6 +586,35 @@ public class PrismRecord {
             return blockData;
         }
 
+        /**
+         * Stores the block position of a location.
+         *
+         * @param location The location to store
+         */
+        private void setLocation(Location<World> location) {
+            this.worldUuid = location.getExtent().getUniqueId();
+            this.x = location.getBlockX();
+            this.y = location.getBlockY();
+            this.z = location.getBlockZ();
+        }
+
+        /**
+         * Mirrors {@link DataUtil#writeToDataView} for plain fields.
+         *
+         * @param path DataQuery used in error messages
+         * @param currentValue Current field value
+         * @param value New value
+         * @return The value to store
+         * @throws IllegalArgumentException If an attempt is made to change an existing value.
+         */
+        private <T> T checkOverwrite(DataQuery path, T currentValue, T value) throws IllegalArgumentException {
+            if (currentValue != null && !currentValue.equals(value)) {
+                throw new IllegalArgumentException("Attempted to overwrite " + path.toString());
+            }
+
+            return value;
+        }
+
         /**
          * Creates a new {@link PrismRecord}.
          *
@@ -373,7 +622,7 @@ public class PrismRecord {
          */
         public PrismRecord build() {
             Preconditions.checkState(Sponge.getRegistry().getType(PrismEvent.class, getEvent()).isPresent(), getEvent() + " is not registered");
-            return new PrismRecord(getEvent(), getSource(), getDataContainer());
+            return new PrismRecord(this);
         }
 
         /**
@@ -400,12 +649,21 @@ public class PrismRecord {
             return this;
         }
 
+        /**
+         * Returns the container for extra data, creating it on first use.
+         *
+         * @return DataContainer for extra data
+         */
         private DataContainer getDataContainer() {
-            return dataContainer;
+            if (extraData == null) {
+                extraData = DataContainer.createNew();
+            }
+
+            return extraData;
         }
 
         public EventBuilder dataContainer(DataContainer dataContainer) {
-            this.dataContainer = dataContainer;
+            this.extraData = dataContainer;
             return this;
         }
     }
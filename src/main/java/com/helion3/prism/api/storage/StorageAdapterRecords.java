@@ -25,6 +25,7 @@ package com.helion3.prism.api.storage;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import com.helion3.prism.api.records.Result;
 import org.spongepowered.api.data.DataContainer;
@@ -52,6 +53,27 @@ public interface StorageAdapterRecords {
      */
     CompletableFuture<List<Result>> query(QuerySession session, boolean translate) throws Exception;
 
+    /**
+     * Execute a query session, handing each resulting action to the consumer
+     * as it is read instead of collecting them into a list. Player UUIDs are
+     * not translated. Blocks until every result has been consumed.
+     *
+     * @param session QuerySession
+     * @param consumer Receives each {@link Result} in query order
+     * @throws Exception Abstract DB or query/handler exceptions
+     */
+    void stream(QuerySession session, Consumer<Result> consumer) throws Exception;
+
+    /**
+     * Sets whether records have been rolled back, so later rollbacks
+     * can skip them.
+     *
+     * @param recordIds Ids read from {@link com.helion3.prism.util.DataQueries#RecordId}
+     * @param rolledBack True once rolled back, false once restored
+     * @throws Exception Abstract DB or query/handler exceptions
+     */
+    void markRolledBack(List<Object> recordIds, boolean rolledBack) throws Exception;
+
     /**
      * Given a {@link Query} this will remove all matching records.
      *
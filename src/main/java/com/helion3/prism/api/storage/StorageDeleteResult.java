@@ -25,4 +25,18 @@ package com.helion3.prism.api.storage;
 
 public class StorageDeleteResult implements StorageResult {
 
-}
\ No newline at end of file
+    private final int deleted;
+
+    public StorageDeleteResult(int deleted) {
+        this.deleted = deleted;
+    }
+
+    /**
+     * Get the amount of records removed.
+     *
+     * @return Deleted record count
+     */
+    public int getDeleted() {
+        return deleted;
+    }
+}
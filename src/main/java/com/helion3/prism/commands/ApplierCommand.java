@@ -26,11 +26,14 @@ package com.helion3.prism.commands;
 
 import com.helion3.prism.Prism;
 import com.helion3.prism.api.flags.Flag;
+import com.helion3.prism.api.query.FieldCondition;
+import com.helion3.prism.api.query.MatchRule;
 import com.helion3.prism.api.query.QuerySession;
 import com.helion3.prism.api.query.Sort;
-import com.helion3.prism.api.records.Actionable;
 import com.helion3.prism.api.records.ActionableResult;
-import com.helion3.prism.api.records.Result;
+import com.helion3.prism.queues.ApplierPreview;
+import com.helion3.prism.queues.ApplierQueue;
+import com.helion3.prism.queues.UndoLog;
 import com.helion3.prism.util.*;
 import org.spongepowered.api.command.CommandResult;
 import org.spongepowered.api.command.CommandSource;
@@ -40,10 +43,13 @@ import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.scheduler.Task;
 import org.spongepowered.api.text.Text;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 
 public class ApplierCommand {
@@ -65,7 +71,14 @@ public class ApplierCommand {
                 CompletableFuture<Void> future = session.newQueryFromArguments(args.<String>getOne("parameters").get());
                 // Ignore user order flag, if used, for proper rollback/restore order to be used.
                 session.setSortBy(sort);
-                future.thenAccept((v) -> runApplier(session, sort));
+                future.thenAccept((v) -> {
+                    // Actions which are already rolled back have nothing left to revert
+                    if (sort == Sort.NEWEST_FIRST) {
+                        session.getQuery().addCondition(FieldCondition.of(DataQueries.RolledBack, MatchRule.EQUALS, false));
+                    }
+
+                    runApplier(session, sort);
+                });
             } catch(Exception e) {
                 source.sendMessage(Format.error(Text.of(e.getMessage())));
             }
@@ -76,72 +89,148 @@ public class ApplierCommand {
     }
 
     /**
-     * Use a designated QuerySession
+     * Use a designated QuerySession. Results are streamed from storage into
+     * an {@link ApplierQueue}, which applies them over as many ticks as needed.
      * @param session
      * @param sort
      */
     public static void runApplier(QuerySession session, Sort sort) {
         session.getQuery().setLimit(Prism.getInstance().getConfig().getLimitCategory().getMaximumActionable());
         CommandSource source = session.getCommandSource();
-        try {
-            List<ActionableResult> actionResults = new ArrayList<>();
-            // Iterate query results
-            CompletableFuture<List<Result>> futureResults = Prism.getInstance().getStorageAdapter().records().query(session, false);
-            futureResults.thenAccept(results -> {
-                if (results.isEmpty()) {
-                    source.sendMessage(Format.error("No results."));
-                } else {
+
+        if (session.hasFlag(Flag.PREVIEW) && source instanceof Player) {
+            runPreview(session, sort, (Player) source);
+            return;
+        }
+
+        ApplierQueue queue = new ApplierQueue(source, sort, completed -> complete(session, sort, completed));
+        if (!queue.start()) {
+            source.sendMessage(Format.error("You already have a rollback or restore in progress."));
+            return;
+        }
+
+        Task.builder().async().execute(() -> {
+            try {
+                Prism.getInstance().getStorageAdapter().records().stream(session, result -> {
                     try {
-                        // Iterate record results
-                        Task.builder().execute(() -> {
-                            results.forEach(result -> {
-                                try {
-                                    if (result instanceof Actionable) {
-
-                                        Actionable actionable = (Actionable) result;
-
-                                        if (sort.equals(Sort.NEWEST_FIRST)) {
-                                            actionResults.add(actionable.rollback());
-                                        } else {
-                                            actionResults.add(actionable.restore());
-                                        }
-                                    }
-                                } catch (Exception e) {
-                                    source.sendMessage(Format.error(Text.of(e.getMessage())));
-                                }
-                            });
-                            sendResults(source, actionResults);
-                        }).submit(Prism.getInstance());
-                    } catch(Exception ignored) {
+                        if (!queue.offer(result)) {
+                            throw new CancellationException();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException();
                     }
+                });
+            } catch (CancellationException ignored) {
+            } catch (Exception e) {
+                source.sendMessage(Format.error(Text.of(e.getMessage())));
+            } finally {
+                queue.finish();
+            }
+        }).submit(Prism.getInstance());
+    }
 
-                    if (source instanceof Player) {
-                        int changes = 0;
+    /**
+     * Streams the results into an {@link ApplierPreview} shown to the player,
+     * without changing the world.
+     * @param session
+     * @param sort
+     * @param player
+     */
+    private static void runPreview(QuerySession session, Sort sort, Player player) {
+        ApplierPreview preview = new ApplierPreview(player, sort, () -> {
+            session.removeFlag(Flag.PREVIEW);
+            runApplier(session, sort);
+        });
 
-                        if (session.hasFlag(Flag.CLEAN)) {
-                            changes += WorldUtil.removeIllegalBlocks(
-                                ((Player) source).getLocation(), session.getRadius());
-                            changes += WorldUtil.removeItemEntitiesAroundLocation(((Player) source).getLocation(), session.getRadius());
-                        }
+        Task.builder().async().execute(() -> {
+            try {
+                Prism.getInstance().getStorageAdapter().records().stream(session, preview::offer);
+            } catch (Exception e) {
+                player.sendMessage(Format.error(Text.of(e.getMessage())));
+                return;
+            }
 
-                        if (session.hasFlag(Flag.DRAIN)) {
-                            changes += WorldUtil.removeLiquidsAroundLocation(
-                                ((Player) source).getLocation(), session.getRadius());
-                        }
+            Task.builder().execute(() -> {
+                int blocks = preview.show();
+                if (blocks == 0) {
+                    preview.cancel();
+                    player.sendMessage(Format.error("No results."));
+                    return;
+                }
 
-                        if (changes > 0) {
-                            source.sendMessage(Format.bonus("Cleaning area..."));
-                        }
-                    }
+                player.sendMessage(Format.heading(Text.of("Previewing ", blocks, " block changes. Only you can see them.")));
+                player.sendMessage(Format.bonus("Use /pr apply to apply them or /pr cancel to discard them."));
+            }).submit(Prism.getInstance());
+        }).submit(Prism.getInstance());
+    }
+
+    private static void complete(QuerySession session, Sort sort, ApplierQueue queue) {
+        CommandSource source = queue.getSource();
 
+        if (queue.getOffered() == 0) {
+            source.sendMessage(Format.error("No results."));
+            return;
+        }
+
+        if (queue.isCancelled()) {
+            source.sendMessage(Format.error("Cancelled, changes already applied were kept."));
+        }
+
+        List<ActionableResult> actionResults = new ArrayList<>(queue.getActionResults());
+        sendResults(source, actionResults);
+
+        List<Object> recordIds = new ArrayList<>(queue.getAppliedRecordIds());
+        boolean rolledBack = sort == Sort.NEWEST_FIRST;
+
+        // Entities can only be read on the main thread, so what undoing needs is taken now
+        List<UndoLog.Change> changes = source instanceof Player ? UndoLog.capture(actionResults, queue.getChangeRecordIds()) : Collections.emptyList();
+
+        // Records are updated and snapshots serialized off the main thread
+        Task.builder().async().execute(() -> {
+            try {
+                Prism.getInstance().getStorageAdapter().records().markRolledBack(recordIds, rolledBack);
+            } catch (Exception e) {
+                Prism.getInstance().getLogger().error("Failed to update rolled back records", e);
+            }
+
+            if (source instanceof Player) {
+                try {
+                    int undoable = Prism.getInstance().getUndoLog().put(((Player) source).getUniqueId(), changes, rolledBack);
+                    if (undoable < actionResults.size() && undoable == Prism.getInstance().getConfig().getLimitCategory().getUndoMaximumChanges()) {
+                        source.sendMessage(Format.error("Only the first " + undoable + " changes can be undone."));
+                    }
+                } catch (IOException e) {
+                    Prism.getInstance().getLogger().error("Failed to store undo history", e);
                 }
-            });
-        } catch (Exception e) {
-            source.sendMessage(Format.error(Text.of(e.getMessage())));
+            }
+        }).submit(Prism.getInstance());
+
+        if (queue.getCollapsed() > 0) {
+            source.sendMessage(Format.bonus(queue.getCollapsed() + " redundant changes to the same blocks were collapsed."));
+        }
+
+        if (source instanceof Player) {
+            int changes = 0;
+
+            if (session.hasFlag(Flag.CLEAN)) {
+                changes += WorldUtil.removeIllegalBlocks(
+                    ((Player) source).getLocation(), session.getRadius());
+                changes += WorldUtil.removeItemEntitiesAroundLocation(((Player) source).getLocation(), session.getRadius());
+            }
+
+            if (session.hasFlag(Flag.DRAIN)) {
+                changes += WorldUtil.removeLiquidsAroundLocation(
+                    ((Player) source).getLocation(), session.getRadius());
+            }
+
+            if (changes > 0) {
+                source.sendMessage(Format.bonus("Cleaning area..."));
+            }
         }
     }
 
-    private static void sendResults(CommandSource source, List<ActionableResult> actionResults) {
+    static void sendResults(CommandSource source, List<ActionableResult> actionResults) {
         int appliedCount = 0;
         int skippedCount = 0;
         for (ActionableResult result : actionResults) {
@@ -167,9 +256,5 @@ public class ApplierCommand {
             Text.of(Template.parseTemplate(messageTemplate, tokens)),
             " ", Format.bonus(Translation.from("rollback.success.bonus"))
         ));
-
-        if (source instanceof Player) {
-            Prism.getInstance().getLastActionResults().put(((Player) source).getUniqueId(), actionResults);
-        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.commands;
+
+import java.util.Optional;
+
+import com.helion3.prism.queues.ApplierPreview;
+import com.helion3.prism.queues.ApplierQueue;
+import com.helion3.prism.util.Format;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.spec.CommandSpec;
+import org.spongepowered.api.entity.living.player.Player;
+
+/**
+ * Pauses, resumes or cancels the caller's running rollback or restore,
+ * and applies or discards their preview.
+ */
+public class ApplierControlCommand {
+    private ApplierControlCommand() {}
+
+    public static CommandSpec getPauseCommand() {
+        return CommandSpec.builder()
+            .permission("prism.rollback")
+            .executor((source, args) -> {
+                if (getQueue(source).pause()) {
+                    source.sendMessage(Format.heading("Paused. Use /pr resume to continue or /pr cancel to stop."));
+                } else {
+                    source.sendMessage(Format.error("Already paused."));
+                }
+
+                return CommandResult.success();
+            })
+            .build();
+    }
+
+    public static CommandSpec getResumeCommand() {
+        return CommandSpec.builder()
+            .permission("prism.rollback")
+            .executor((source, args) -> {
+                if (getQueue(source).resume()) {
+                    source.sendMessage(Format.heading("Resumed."));
+                } else {
+                    source.sendMessage(Format.error("Not paused."));
+                }
+
+                return CommandResult.success();
+            })
+            .build();
+    }
+
+    public static CommandSpec getCancelCommand() {
+        return CommandSpec.builder()
+            .permission("prism.rollback")
+            .executor((source, args) -> {
+                Optional<ApplierPreview> preview = getPreview(source);
+                if (preview.isPresent()) {
+                    preview.get().cancel();
+                    source.sendMessage(Format.heading("Preview discarded."));
+                } else {
+                    getQueue(source).cancel();
+                }
+
+                return CommandResult.success();
+            })
+            .build();
+    }
+
+    public static CommandSpec getApplyCommand() {
+        return CommandSpec.builder()
+            .permission("prism.rollback")
+            .executor((source, args) -> {
+                Optional<ApplierPreview> preview = getPreview(source);
+                if (!preview.isPresent()) {
+                    throw new CommandException(Format.error("You have no preview to apply."));
+                }
+
+                source.sendMessage(Format.heading("Applying preview..."));
+                preview.get().apply();
+                return CommandResult.success();
+            })
+            .build();
+    }
+
+    private static Optional<ApplierPreview> getPreview(CommandSource source) {
+        if (!(source instanceof Player)) {
+            return Optional.empty();
+        }
+
+        return ApplierPreview.get((Player) source);
+    }
+
+    private static ApplierQueue getQueue(CommandSource source) throws CommandException {
+        Optional<ApplierQueue> queue = ApplierQueue.get(source);
+        if (!queue.isPresent()) {
+            throw new CommandException(Format.error("You have no rollback or restore in progress."));
+        }
+
+        return queue.get();
+    }
+}
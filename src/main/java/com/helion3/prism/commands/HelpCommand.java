@@ -40,8 +40,11 @@ public class HelpCommand {
                 source.sendMessage(Format.message("/pr near", TextColors.GRAY, " - Quick lookup of nearby activity."));
                 source.sendMessage(Format.message("/pr [rb|rollback] (params)", TextColors.GRAY, " - Reverse changes, limited by parameters."));
                 source.sendMessage(Format.message("/pr [rs|restore] (params)", TextColors.GRAY, " - Re-apply changes, limited by parameters."));
+                source.sendMessage(Format.message("/pr [pause|resume|cancel]", TextColors.GRAY, " - Control a running rollback/restore."));
+                source.sendMessage(Format.message("/pr [apply|cancel]", TextColors.GRAY, " - Apply or discard a -preview rollback/restore."));
                 source.sendMessage(Format.message("/pr undo", TextColors.GRAY, " - Reverse your last rollback/restore."));
                 source.sendMessage(Format.message("/pr reload", TextColors.GRAY, " - Reload prism configuration."));
+                source.sendMessage(Format.message("/pr stats", TextColors.GRAY, " - Show recording and storage statistics."));
                 source.sendMessage(Format.message("/pr i", TextColors.GRAY, " - Toggle the inspection wand."));
                 return CommandResult.success();
             }).build();
@@ -54,9 +54,14 @@ public class PrismCommands {
         // Sort order newest first for rollback, and oldest first for restore.
         builder.put(ImmutableList.of("rb", "rollback"), ApplierCommand.getCommand(Sort.NEWEST_FIRST));
         builder.put(ImmutableList.of("rs", "restore"), ApplierCommand.getCommand(Sort.OLDEST_FIRST));
+        builder.put(ImmutableList.of("pause"), ApplierControlCommand.getPauseCommand());
+        builder.put(ImmutableList.of("resume"), ApplierControlCommand.getResumeCommand());
+        builder.put(ImmutableList.of("cancel"), ApplierControlCommand.getCancelCommand());
+        builder.put(ImmutableList.of("apply"), ApplierControlCommand.getApplyCommand());
         builder.put(ImmutableList.of("undo"), UndoCommand.getCommand());
         builder.put(ImmutableList.of("ext"), ExtinguishCommand.getCommand());
         builder.put(ImmutableList.of("reload"), ReloadCommand.getCommand());
+        builder.put(ImmutableList.of("stats"), StatsCommand.getCommand());
         builder.put(ImmutableList.of("?", "help"), HelpCommand.getCommand());
 
         return CommandSpec.builder()
@@ -0,0 +1,99 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.commands;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.spec.CommandSpec;
+import org.spongepowered.api.text.format.TextColors;
+
+import com.helion3.prism.metrics.Histogram;
+import com.helion3.prism.metrics.Meter;
+import com.helion3.prism.metrics.Metrics;
+import com.helion3.prism.metrics.PrismMetrics;
+import com.helion3.prism.util.Format;
+
+public class StatsCommand {
+    private static final int TOP_EVENTS = 5;
+
+    private StatsCommand() {}
+
+    public static CommandSpec getCommand() {
+        return CommandSpec.builder()
+            .permission("prism.stats")
+            .executor((source, args) -> {
+                PrismMetrics metrics = new PrismMetrics();
+
+                source.sendMessage(Format.heading("Recording statistics"));
+                source.sendMessage(Format.message(TextColors.GRAY, "Queue: ", TextColors.WHITE,
+                        metrics.getQueueSize(), "/", metrics.getQueueCapacity(),
+                        TextColors.GRAY, " (peak ", metrics.getQueueHighWaterMark(), "), writers: ", TextColors.WHITE,
+                        metrics.getWriterPending(), TextColors.GRAY, " pending, ", TextColors.WHITE,
+                        metrics.getCoalescing(), TextColors.GRAY, " coalescing"));
+                source.sendMessage(Format.message(TextColors.GRAY, "Records: ", TextColors.WHITE,
+                        String.format("%.1f", metrics.getRecordsPerSecond()), TextColors.GRAY, "/s recorded, ", TextColors.WHITE,
+                        String.format("%.1f", metrics.getWritesPerSecond()), TextColors.GRAY, "/s written"));
+                source.sendMessage(Format.message(TextColors.GRAY, "Top events: ", TextColors.WHITE, getTopEvents()));
+                source.sendMessage(Format.message(TextColors.GRAY, "Batch size: ", TextColors.WHITE,
+                        "p50 ", metrics.getBatchSizeP50(), ", max ", metrics.getBatchSizeMax(),
+                        TextColors.GRAY, ", queue lag: ", TextColors.WHITE, "p99 ", metrics.getQueueLagP99(), "ms"));
+                source.sendMessage(Format.message(TextColors.GRAY, "Write latency: ", TextColors.WHITE, getLatencies(Metrics.getWriteLatency())));
+                source.sendMessage(Format.message(TextColors.GRAY, "Query latency: ", TextColors.WHITE, getLatencies(Metrics.getQueryLatency())));
+                source.sendMessage(Format.message(TextColors.GRAY, "Lookup latency: ", TextColors.WHITE, getLatencies(Metrics.getLookupLatency())));
+                source.sendMessage(Format.message(TextColors.GRAY, "Not written: ", TextColors.WHITE,
+                        metrics.getRecordsDropped(), TextColors.GRAY, " dropped, ", TextColors.WHITE,
+                        metrics.getRecordsSampled(), TextColors.GRAY, " sampled, ", TextColors.WHITE,
+                        metrics.getWriteFailures(), TextColors.GRAY, " failed (", TextColors.WHITE,
+                        metrics.getRecordsJournaled(), TextColors.GRAY, " journaled, ", TextColors.WHITE,
+                        metrics.getRecordsSpilled(), TextColors.GRAY, " spilled)"));
+                return CommandResult.success();
+            }).build();
+    }
+
+    private static String getTopEvents() {
+        Map<String, Meter> recorded = Metrics.getRecorded();
+        if (recorded.isEmpty()) {
+            return "none";
+        }
+
+        return recorded.entrySet().stream()
+                .sorted(Comparator.comparingDouble((Map.Entry<String, Meter> entry) -> entry.getValue().getRate()).reversed())
+                .limit(TOP_EVENTS)
+                .map(entry -> String.format("%s %.1f/s", entry.getKey(), entry.getValue().getRate()))
+                .collect(Collectors.joining(", "));
+    }
+
+    private static String getLatencies(Histogram histogram) {
+        Histogram.Snapshot snapshot = histogram.getSnapshot();
+        return String.format("p50 %.1fms, p95 %.1fms, p99 %.1fms (%d samples)",
+                PrismMetrics.toMillis(snapshot.getPercentile(50)),
+                PrismMetrics.toMillis(snapshot.getPercentile(95)),
+                PrismMetrics.toMillis(snapshot.getPercentile(99)),
+                snapshot.getCount());
+    }
+}
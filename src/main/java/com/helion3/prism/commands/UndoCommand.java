@@ -23,25 +23,25 @@
  */
 package com.helion3.prism.commands;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.google.common.collect.Lists;
 import org.spongepowered.api.command.CommandException;
-import org.spongepowered.api.block.BlockSnapshot;
 import org.spongepowered.api.command.CommandResult;
 import org.spongepowered.api.command.spec.CommandSpec;
-import org.spongepowered.api.entity.Entity;
 import org.spongepowered.api.entity.living.player.Player;
-import org.spongepowered.api.text.Text;
+import org.spongepowered.api.scheduler.Task;
 
 import com.helion3.prism.Prism;
-import com.helion3.prism.api.records.ActionableResult;
+import com.helion3.prism.api.query.Sort;
+import com.helion3.prism.api.records.Result;
+import com.helion3.prism.queues.ApplierQueue;
+import com.helion3.prism.queues.UndoLog;
 import com.helion3.prism.util.Format;
-import com.helion3.prism.util.Template;
-import com.helion3.prism.util.Translation;
-import org.spongepowered.api.world.BlockChangeFlags;
 
 public class UndoCommand {
     private UndoCommand() {}
@@ -54,59 +54,55 @@ public class UndoCommand {
                     throw new CommandException(Format.error("You must be a player to use this command."));
                 }
 
-                List<ActionableResult> results = Prism.getInstance().getLastActionResults().get(((Player) source).getUniqueId());
-                if (results == null || results.isEmpty()) {
-                    throw new CommandException(Format.error("You have no valid actions to undo."));
-                }
-                // Reverse the order of the list to undo last action.
-                results = Lists.reverse(results);
-
-                int applied = 0;
-                int skipped = 0;
+                // Undoing reverts the recorded original states, the same way a rollback does
+                AtomicReference<UndoLog.History> undone = new AtomicReference<>();
+                ApplierQueue queue = new ApplierQueue(source, Sort.NEWEST_FIRST, completed -> {
+                    if (completed.getOffered() == 0) {
+                        source.sendMessage(Format.error("You have no valid actions to undo."));
+                        return;
+                    }
 
-                for (ActionableResult result : results) {
-                    if (result.getTransaction().isPresent()) {
-                        Object rawOriginal = result.getTransaction().get().getOriginal();
-                        Object rawFinal = result.getTransaction().get().getFinal();
+                    ApplierCommand.sendResults(source, new ArrayList<>(completed.getActionResults()));
 
-                        if (rawOriginal instanceof BlockSnapshot) {
-                            if (((BlockSnapshot)rawOriginal).restore(true, BlockChangeFlags.NONE)) {
-                                applied++;
-                            } else {
-                                skipped++;
-                            }
+                    // Only the records whose changes were undone return to their previous state
+                    List<Object> recordIds = new ArrayList<>(completed.getAppliedRecordIds());
+                    boolean rolledBack = !undone.get().isRolledBack();
+                    Task.builder().async().execute(() -> {
+                        try {
+                            Prism.getInstance().getStorageAdapter().records().markRolledBack(recordIds, rolledBack);
+                        } catch (Exception e) {
+                            Prism.getInstance().getLogger().error("Failed to update rolled back records", e);
                         }
+                    }).submit(Prism.getInstance());
+                });
 
-                        if (rawFinal instanceof Entity) {
-                            Entity entity = (Entity) rawFinal;
-                            if (!entity.isRemoved()) {
-                                entity.remove();
-                                applied++;
-                            } else {
-                                skipped++;
-                            }
-                        }
-                    }
-                    else {
-                        skipped++;
-                    }
+                if (!queue.start()) {
+                    throw new CommandException(Format.error("You already have a rollback or restore in progress."));
                 }
 
-                Map<String, String> tokens = new HashMap<>();
-                tokens.put("appliedCount", "" + applied);
-                tokens.put("skippedCount", "" + skipped);
-
-                final String messageTemplate;
-                if (skipped > 0) {
-                    messageTemplate = Translation.from("rollback.success.withskipped");
-                } else {
-                    messageTemplate = Translation.from("rollback.success");
-                }
+                UUID playerUuid = ((Player) source).getUniqueId();
+                Task.builder().async().execute(() -> {
+                    try {
+                        Optional<UndoLog.History> history = Prism.getInstance().getUndoLog().take(playerUuid);
+                        if (history.isPresent()) {
+                            undone.set(history.get());
 
-                source.sendMessage(Format.heading(
-                    Text.of(Template.parseTemplate(messageTemplate, tokens)),
-                    " ", Format.bonus(Translation.from("rollback.success.bonus"))
-                ));
+                            for (Result result : history.get().getResults()) {
+                                if (!queue.offer(result)) {
+                                    break;
+                                }
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException e) {
+                        Prism.getInstance().getLogger().error("Failed to read undo history", e);
+                    } catch (Exception e) {
+                        Prism.getInstance().getLogger().error("Failed to undo changes", e);
+                    } finally {
+                        queue.finish();
+                    }
+                }).submit(Prism.getInstance());
 
                 return CommandResult.success();
             })
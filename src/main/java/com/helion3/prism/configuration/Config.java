@@ -28,6 +28,7 @@ import com.helion3.prism.configuration.category.DefaultCategory;
 import com.helion3.prism.configuration.category.EventCategory;
 import com.helion3.prism.configuration.category.GeneralCategory;
 import com.helion3.prism.configuration.category.LimitCategory;
+import com.helion3.prism.configuration.category.RecordingCategory;
 import com.helion3.prism.configuration.category.StorageCategory;
 import ninja.leaping.configurate.objectmapping.Setting;
 import ninja.leaping.configurate.objectmapping.serialize.ConfigSerializable;
@@ -47,6 +48,9 @@ public class Config {
     @Setting(value = "limit")
     private LimitCategory limitCategory = new LimitCategory();
 
+    @Setting(value = "recording")
+    private RecordingCategory recordingCategory = new RecordingCategory();
+
     @Setting(value = "storage")
     private StorageCategory storageCategory = new StorageCategory();
 
@@ -66,6 +70,10 @@ public class Config {
         return limitCategory;
     }
 
+    public RecordingCategory getRecordingCategory() {
+        return recordingCategory;
+    }
+
     public StorageCategory getStorageCategory() {
         return storageCategory;
     }
@@ -40,7 +40,7 @@ public class GeneralCategory {
     private boolean debug = false;
 
     @Setting(value = "schema-version")
-    private int schemaVersion = 2;
+    private int schemaVersion = 6;
 
     @Setting(value = "blacklist")
     private List<String> blacklist = Lists.newArrayList();
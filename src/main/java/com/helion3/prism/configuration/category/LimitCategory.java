@@ -30,6 +30,9 @@ import ninja.leaping.configurate.objectmapping.serialize.ConfigSerializable;
 @ConfigSerializable
 public class LimitCategory {
 
+    @Setting(value = "applier-tick-budget", comment = "Milliseconds per tick spent applying a rollback or restore")
+    private long applierTickBudget = 10;
+
     @Setting(value = "maximum-actionable")
     private int maximumActionable = 10000;
 
@@ -39,6 +42,23 @@ public class LimitCategory {
     @Setting(value = "maximum-radius")
     private int maximumRadius = 100;
 
+    @Setting(value = "preview-timeout", comment = "Seconds before a rollback or restore preview is discarded")
+    private int previewTimeout = 60;
+
+    @Setting(value = "undo-maximum-changes", comment = "Most changes of a single rollback or restore which can be undone")
+    private int undoMaximumChanges = 10000;
+
+    @Setting(value = "undo-memory-limit", comment = "Megabytes of undo history kept in memory, least recently used history beyond it is moved to disk")
+    private int undoMemoryLimit = 16;
+
+    public long getApplierTickBudget() {
+        return applierTickBudget;
+    }
+
+    public void setApplierTickBudget(long applierTickBudget) {
+        this.applierTickBudget = applierTickBudget;
+    }
+
     public int getMaximumActionable() {
         return maximumActionable;
     }
@@ -62,4 +82,28 @@ public class LimitCategory {
     public void setMaximumRadius(int maximumRadius) {
         this.maximumRadius = maximumRadius;
     }
+
+    public int getPreviewTimeout() {
+        return previewTimeout;
+    }
+
+    public void setPreviewTimeout(int previewTimeout) {
+        this.previewTimeout = previewTimeout;
+    }
+
+    public int getUndoMaximumChanges() {
+        return undoMaximumChanges;
+    }
+
+    public void setUndoMaximumChanges(int undoMaximumChanges) {
+        this.undoMaximumChanges = undoMaximumChanges;
+    }
+
+    public int getUndoMemoryLimit() {
+        return undoMemoryLimit;
+    }
+
+    public void setUndoMemoryLimit(int undoMemoryLimit) {
+        this.undoMemoryLimit = undoMemoryLimit;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.helion3.prism.configuration.category;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import ninja.leaping.configurate.objectmapping.Setting;
+import ninja.leaping.configurate.objectmapping.serialize.ConfigSerializable;
+
+import java.util.List;
+import java.util.Map;
+
+@ConfigSerializable
+public class RecordingCategory {
+
+    @Setting(value = "batch-size", comment = "Maximum amount of records sent to the database in a single write")
+    private int batchSize = 1000;
+
+    @Setting(value = "max-linger", comment = "Maximum milliseconds a record waits for a batch to fill before it's written")
+    private int maxLinger = 250;
+
+    @Setting(value = "writer-workers", comment = ""
+            + "Amount of threads writing records to the database\n"
+            + " - Each writer uses its own connection, keep this below 'maximum-pool-size'")
+    private int writerWorkers = 2;
+
+    @Setting(value = "writer-partition", comment = ""
+            + "How records are split between writers, records in the same partition are written in order\n"
+            + "   (World, Chunk)")
+    private String writerPartition = "world";
+
+    @Setting(value = "coalesce-window", comment = ""
+            + "Seconds identical records are held back to be merged into a single record, 0 to disable\n"
+            + " - Records are identical when their event, source, target, location and container match")
+    private int coalesceWindow = 0;
+
+    @Setting(value = "coalesce-events", comment = ""
+            + "Events which may be merged, only records without extra data are merged\n"
+            + " - Block events carry the original and replacement blocks, so they are never merged")
+    private List<String> coalesceEvents = Lists.newArrayList("drop", "insert", "pickup", "remove");
+
+    @Setting(value = "sample-rates", comment = ""
+            + "Keep only one in every N records of an event, keyed by event or event:source\n"
+            + " - Sources are 'player', an entity type such as 'creeper' or 'environment'\n"
+            + " - Example: grow = 10, \"break:environment\" = 4")
+    private Map<String, Integer> sampleRates = Maps.newHashMap();
+
+    @Setting(value = "rate-limits", comment = ""
+            + "Maximum records per second of an event in each chunk, keyed by event or event:source\n"
+            + " - Example: decay = 20")
+    private Map<String, Integer> rateLimits = Maps.newHashMap();
+
+    @Setting(value = "queue-capacity", comment = "Maximum amount of records held in memory while waiting to be written")
+    private int queueCapacity = 100000;
+
+    @Setting(value = "overflow-policy", comment = ""
+            + "What happens to new records when the queue is full\n"
+            + "   (Block, Drop, Spill)\n"
+            + " - Block: Wait for up to 'overflow-timeout' milliseconds, then drop the record\n"
+            + " - Drop: Discard queued 'low-priority-events' first, then the new record\n"
+            + " - Spill: Write records to disk until the queue has drained")
+    private String overflowPolicy = "block";
+
+    @Setting(value = "overflow-timeout", comment = "Milliseconds to wait for space when using the Block overflow policy")
+    private int overflowTimeout = 10;
+
+    @Setting(value = "journal-max-retry-delay", comment = ""
+            + "Maximum seconds between attempts to write journaled records\n"
+            + " - Records which fail to save are journaled to disk and retried until storage is available")
+    private int journalMaxRetryDelay = 60;
+
+    @Setting(value = "low-priority-events", comment = "Events which are discarded first when using the Drop overflow policy")
+    private List<String> lowPriorityEvents = Lists.newArrayList("close", "command", "disconnect", "drop", "join", "open", "pickup");
+
+    @Setting(value = "spill-segment-size", comment = "Amount of records written to each spill file")
+    private int spillSegmentSize = 10000;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxLinger() {
+        return maxLinger;
+    }
+
+    public void setMaxLinger(int maxLinger) {
+        this.maxLinger = maxLinger;
+    }
+
+    public int getWriterWorkers() {
+        return writerWorkers;
+    }
+
+    public void setWriterWorkers(int writerWorkers) {
+        this.writerWorkers = writerWorkers;
+    }
+
+    public String getWriterPartition() {
+        return writerPartition;
+    }
+
+    public void setWriterPartition(String writerPartition) {
+        this.writerPartition = writerPartition;
+    }
+
+    public int getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public void setCoalesceWindow(int coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    public List<String> getCoalesceEvents() {
+        return coalesceEvents;
+    }
+
+    public void setCoalesceEvents(List<String> coalesceEvents) {
+        this.coalesceEvents = coalesceEvents;
+    }
+
+    public Map<String, Integer> getSampleRates() {
+        return sampleRates;
+    }
+
+    public void setSampleRates(Map<String, Integer> sampleRates) {
+        this.sampleRates = sampleRates;
+    }
+
+    public Map<String, Integer> getRateLimits() {
+        return rateLimits;
+    }
+
+    public void setRateLimits(Map<String, Integer> rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getOverflowTimeout() {
+        return overflowTimeout;
+    }
+
+    public void setOverflowTimeout(int overflowTimeout) {
+        this.overflowTimeout = overflowTimeout;
+    }
+
+    public int getJournalMaxRetryDelay() {
+        return journalMaxRetryDelay;
+    }
+
+    public void setJournalMaxRetryDelay(int journalMaxRetryDelay) {
+        this.journalMaxRetryDelay = journalMaxRetryDelay;
+    }
+
+    public List<String> getLowPriorityEvents() {
+        return lowPriorityEvents;
+    }
+
+    public void setLowPriorityEvents(List<String> lowPriorityEvents) {
+        this.lowPriorityEvents = lowPriorityEvents;
+    }
+
+    public int getSpillSegmentSize() {
+        return spillSegmentSize;
+    }
+
+    public void setSpillSegmentSize(int spillSegmentSize) {
+        this.spillSegmentSize = spillSegmentSize;
+    }
+}
@@ -43,12 +43,34 @@ public class StorageCategory {
             + "   (H2, MongoDB, MySQL)")
     private String engine = "h2";
 
+    @Setting(value = "extra-layout", comment = ""
+            + "Where extra record data, such as block states, is stored\n"
+            + "   (Table, Inline)\n"
+            + " - Table: JSON in a separate table joined on lookup\n"
+            + " - Inline: Compressed in a column of the records table, existing data is moved over on startup")
+    private String extraLayout = "table";
+
     @Setting(value = "mysql-driver", comment = ""
             + "The SQL driver to use when using "
             + "MySQL storage engine\n"
             + "   (MySQL, MariaDB)")
     private String mysqlDriver = "mysql";
 
+    @Setting(value = "mysql-insert-mode", comment = ""
+            + "How records are sent to MySQL\n"
+            + "   (Batch, Multi-Row, Load-Data)\n"
+            + " - Batch: One INSERT statement per record\n"
+            + " - Multi-Row: INSERT statements holding many records each\n"
+            + " - Load-Data: LOAD DATA LOCAL INFILE streamed from memory, requires 'local_infile' to be enabled on the server")
+    private String mysqlInsertMode = "multi-row";
+
+    @Setting(value = "mysql-partitioning", comment = ""
+            + "Partitions the MySQL records table by creation time\n"
+            + "   (None, Daily, Weekly)\n"
+            + " - Expired records are removed by dropping whole partitions, so they're kept up to one interval longer\n"
+            + " - Existing tables are rebuilt on startup, extra data is always stored inline")
+    private String mysqlPartitioning = "none";
+
     @Setting(value = "should-expire", comment = "Should records expire (be removed) after a specified amount of time?")
     private boolean shouldExpire = true;
 
@@ -65,7 +87,21 @@ public class StorageCategory {
     private String password = "";
 
     @Setting(value = "purge-batch-limit", comment = "Amount of records to purge at a time")
-    private int purgeBatchLimit = 100000;
+    private int purgeBatchLimit = 1000;
+
+    @Setting(value = "purge-hours", comment = ""
+            + "Hours of the day purging runs in, such as '2-6' for 02:00 to 06:00\n"
+            + " - Leave empty to purge at any time")
+    private String purgeHours = "";
+
+    @Setting(value = "purge-interval", comment = "Minutes between purges once all expired records are removed")
+    private int purgeInterval = 60;
+
+    @Setting(value = "purge-maximum-queue-lag", comment = "Purging backs off while records wait in the recording queue longer than this many milliseconds")
+    private int purgeMaximumQueueLag = 1000;
+
+    @Setting(value = "purge-rate", comment = "Maximum amount of records purged per second")
+    private int purgeRate = 5000;
 
     @Setting(value = "table-prefix", comment = "The prefix of all SQL tables.")
     private String tablePrefix = "prism_";
@@ -137,6 +173,38 @@ public class StorageCategory {
         this.purgeBatchLimit = purgeBatchLimit;
     }
 
+    public String getPurgeHours() {
+        return purgeHours;
+    }
+
+    public void setPurgeHours(String purgeHours) {
+        this.purgeHours = purgeHours;
+    }
+
+    public int getPurgeInterval() {
+        return purgeInterval;
+    }
+
+    public void setPurgeInterval(int purgeInterval) {
+        this.purgeInterval = purgeInterval;
+    }
+
+    public int getPurgeMaximumQueueLag() {
+        return purgeMaximumQueueLag;
+    }
+
+    public void setPurgeMaximumQueueLag(int purgeMaximumQueueLag) {
+        this.purgeMaximumQueueLag = purgeMaximumQueueLag;
+    }
+
+    public int getPurgeRate() {
+        return purgeRate;
+    }
+
+    public void setPurgeRate(int purgeRate) {
+        this.purgeRate = purgeRate;
+    }
+
     public String getTablePrefix() {
         return tablePrefix;
     }
@@ -161,6 +229,34 @@ public class StorageCategory {
         this.mysqlDriver = mysqlDriver;
     }
 
+    public String getExtraLayout() {
+        return extraLayout;
+    }
+
+    public void setExtraLayout(String extraLayout) {
+        this.extraLayout = extraLayout;
+    }
+
+    public boolean isExtraInline() {
+        return "inline".equalsIgnoreCase(extraLayout);
+    }
+
+    public String getMysqlPartitioning() {
+        return mysqlPartitioning;
+    }
+
+    public void setMysqlPartitioning(String mysqlPartitioning) {
+        this.mysqlPartitioning = mysqlPartitioning;
+    }
+
+    public String getMysqlInsertMode() {
+        return mysqlInsertMode;
+    }
+
+    public void setMysqlInsertMode(String mysqlInsertMode) {
+        this.mysqlInsertMode = mysqlInsertMode;
+    }
+
     public boolean isShouldExpire() {
         return shouldExpire;
     }
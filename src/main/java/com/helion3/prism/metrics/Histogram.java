@@ -0,0 +1,211 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values such as latencies or
+ * batch sizes.
+ *
+ * Values are counted in logarithmic buckets, four per power of two, so
+ * percentiles are accurate to within 25%. Only the current and previous
+ * interval are kept so percentiles reflect recent activity.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE + 1) * SUB_BUCKETS;
+
+    private final long interval;
+    private volatile Interval current;
+    private volatile Interval previous;
+
+    /**
+     * Creates a histogram keeping one minute intervals.
+     */
+    public Histogram() {
+        this(TimeUnit.MINUTES.toNanos(1));
+    }
+
+    /**
+     * Creates a histogram.
+     *
+     * @param interval Nanoseconds before values start to expire
+     */
+    public Histogram(long interval) {
+        this.interval = interval;
+        this.current = new Interval(System.nanoTime());
+        this.previous = new Interval(System.nanoTime());
+    }
+
+    /**
+     * Records a value, negative values are recorded as zero.
+     *
+     * @param value Value to record
+     */
+    public void record(long value) {
+        rotate().record(Math.max(0, value));
+    }
+
+    /**
+     * Returns the recorded values of the current and previous interval.
+     *
+     * @return Snapshot
+     */
+    public Snapshot getSnapshot() {
+        Interval latest = rotate();
+        Interval older = previous;
+
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latest.counts.get(i) + older.counts.get(i);
+        }
+
+        return new Snapshot(counts, Math.max(latest.max.get(), older.max.get()));
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value Non-negative value
+     * @return Bucket index
+     */
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        // Bucket by the highest bit, then by the bits just below it
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int fraction = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + fraction;
+    }
+
+    /**
+     * Returns the highest value counted in a bucket.
+     *
+     * @param bucket Bucket index
+     * @return Upper bound
+     */
+    static long getUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long fraction = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + fraction) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private Interval rotate() {
+        Interval latest = current;
+        long now = System.nanoTime();
+        if (now - latest.start < interval) {
+            return latest;
+        }
+
+        synchronized (this) {
+            if (current == latest) {
+                // An idle histogram shouldn't report values from long ago
+                previous = now - latest.start < interval * 2 ? latest : new Interval(now);
+                current = new Interval(now);
+            }
+
+            return current;
+        }
+    }
+
+    private static final class Interval {
+        private final long start;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        private Interval(long start) {
+            this.start = start;
+        }
+
+        private void record(long value) {
+            counts.incrementAndGet(getBucket(value));
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Immutable view of a histogram.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            this.max = max;
+
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+
+            this.count = total;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the value below which the given share of values fall.
+         *
+         * @param percentile Percentile between 0 and 100
+         * @return Upper bound of the bucket holding the percentile, 0 if empty
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(getUpperBound(i), max);
+                }
+            }
+
+            return max;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and their rate over the last minute.
+ */
+public class Meter {
+
+    private static final int SECONDS = 60;
+
+    private final LongAdder total = new LongAdder();
+    private final AtomicLongArray counts = new AtomicLongArray(SECONDS);
+    private final AtomicLongArray seconds = new AtomicLongArray(SECONDS);
+
+    /**
+     * Counts a single event.
+     */
+    public void mark() {
+        mark(1);
+    }
+
+    /**
+     * Counts several events.
+     *
+     * @param count Amount of events
+     */
+    public void mark(long count) {
+        total.add(count);
+
+        long second = currentSecond();
+        int slot = (int) Math.floorMod(second, (long) SECONDS);
+
+        // The first event of a new second clears the slot left from a minute ago
+        long slotSecond = seconds.get(slot);
+        if (slotSecond != second && seconds.compareAndSet(slot, slotSecond, second)) {
+            counts.set(slot, 0);
+        }
+
+        counts.addAndGet(slot, count);
+    }
+
+    /**
+     * Returns the amount of events since startup.
+     *
+     * @return Event count
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the average events per second over the last minute.
+     *
+     * @return Events per second
+     */
+    public double getRate() {
+        long second = currentSecond();
+        long sum = 0;
+        for (int slot = 0; slot < SECONDS; slot++) {
+            // Skip the current, incomplete second
+            long age = second - seconds.get(slot);
+            if (age > 0 && age <= SECONDS) {
+                sum += counts.get(slot);
+            }
+        }
+
+        return (double) sum / SECONDS;
+    }
+
+    private static long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+}
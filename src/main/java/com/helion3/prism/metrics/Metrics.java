@@ -0,0 +1,204 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.common.collect.ImmutableMap;
+import com.helion3.prism.Prism;
+
+/**
+ * Registry of the metrics collected by the recording pipeline and storage.
+ *
+ * Latencies are recorded in nanoseconds, queue lag in milliseconds.
+ */
+public final class Metrics {
+
+    private static final String OBJECT_NAME = "com.helion3.prism:type=Metrics";
+
+    private static final Map<String, Meter> recorded = new ConcurrentHashMap<>();
+    private static final Meter written = new Meter();
+    private static final LongAdder writeFailures = new LongAdder();
+    private static final LongAdder journaled = new LongAdder();
+    private static final Histogram batchSize = new Histogram();
+    private static final Histogram queueLag = new Histogram();
+    private static final Histogram writeLatency = new Histogram();
+    private static final Histogram queryLatency = new Histogram();
+    private static final Histogram lookupLatency = new Histogram();
+
+    private Metrics() {}
+
+    /**
+     * Counts a record entering the recording queue.
+     *
+     * @param event Event id
+     */
+    public static void recordEvent(String event) {
+        recorded.computeIfAbsent(event, key -> new Meter()).mark();
+    }
+
+    /**
+     * Records the time a record spent waiting before it was handed to a writer.
+     *
+     * @param millis Milliseconds since the record was saved
+     */
+    public static void recordQueueLag(long millis) {
+        queueLag.record(millis);
+    }
+
+    /**
+     * Records the size of a batch about to be written.
+     *
+     * @param size Amount of records
+     */
+    public static void recordBatch(int size) {
+        batchSize.record(size);
+    }
+
+    /**
+     * Records a successful storage write.
+     *
+     * @param records Amount of records written
+     * @param nanos Time taken
+     */
+    public static void recordWrite(int records, long nanos) {
+        written.mark(records);
+        writeLatency.record(nanos);
+    }
+
+    /**
+     * Counts records which failed to write.
+     *
+     * @param records Amount of records
+     */
+    public static void recordWriteFailure(int records) {
+        writeFailures.add(records);
+    }
+
+    /**
+     * Counts records written to the journal to be retried.
+     *
+     * @param records Amount of records
+     */
+    public static void recordJournaled(int records) {
+        journaled.add(records);
+    }
+
+    /**
+     * Records the time taken by a storage query.
+     *
+     * @param nanos Time taken
+     */
+    public static void recordQuery(long nanos) {
+        queryLatency.record(nanos);
+    }
+
+    /**
+     * Records the time taken by a lookup, from the command until the results are ready.
+     *
+     * @param nanos Time taken
+     */
+    public static void recordLookup(long nanos) {
+        lookupLatency.record(nanos);
+    }
+
+    /**
+     * Returns the meters of records entering the queue, by event.
+     *
+     * @return Meters keyed by event id
+     */
+    public static Map<String, Meter> getRecorded() {
+        return ImmutableMap.copyOf(recorded);
+    }
+
+    public static Meter getWritten() {
+        return written;
+    }
+
+    public static long getWriteFailures() {
+        return writeFailures.sum();
+    }
+
+    public static long getJournaled() {
+        return journaled.sum();
+    }
+
+    public static Histogram getBatchSize() {
+        return batchSize;
+    }
+
+    public static Histogram getQueueLag() {
+        return queueLag;
+    }
+
+    public static Histogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    public static Histogram getQueryLatency() {
+        return queryLatency;
+    }
+
+    public static Histogram getLookupLatency() {
+        return lookupLatency;
+    }
+
+    /**
+     * Exposes the metrics through JMX.
+     */
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new PrismMetrics(), name);
+            }
+        } catch (JMException ex) {
+            Prism.getInstance().getLogger().warn("Failed to register metrics with JMX", ex);
+        }
+    }
+
+    /**
+     * Removes the metrics from JMX.
+     */
+    public static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex) {
+            Prism.getInstance().getLogger().warn("Failed to unregister metrics from JMX", ex);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.helion3.prism.Prism;
+import com.helion3.prism.queues.RecordingWriter;
+
+public class PrismMetrics implements PrismMetricsMBean {
+
+    @Override
+    public int getQueueSize() {
+        return Prism.getInstance().getRecordingQueue().size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return Prism.getInstance().getRecordingQueue().getCapacity();
+    }
+
+    @Override
+    public int getQueueHighWaterMark() {
+        return Prism.getInstance().getRecordingQueue().getHighWaterMark();
+    }
+
+    @Override
+    public int getWriterPending() {
+        int pending = 0;
+        for (RecordingWriter writer : Prism.getInstance().getRecordingQueueManager().getWriters()) {
+            pending += writer.size();
+        }
+
+        return pending;
+    }
+
+    @Override
+    public int getCoalescing() {
+        int coalescing = 0;
+        for (RecordingWriter writer : Prism.getInstance().getRecordingQueueManager().getWriters()) {
+            coalescing += writer.getCoalescing();
+        }
+
+        return coalescing;
+    }
+
+    @Override
+    public long getRecordsRecorded() {
+        long count = 0;
+        for (Meter meter : Metrics.getRecorded().values()) {
+            count += meter.getCount();
+        }
+
+        return count;
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+        double rate = 0;
+        for (Meter meter : Metrics.getRecorded().values()) {
+            rate += meter.getRate();
+        }
+
+        return rate;
+    }
+
+    @Override
+    public long getRecordsWritten() {
+        return Metrics.getWritten().getCount();
+    }
+
+    @Override
+    public double getWritesPerSecond() {
+        return Metrics.getWritten().getRate();
+    }
+
+    @Override
+    public long getRecordsDropped() {
+        return Prism.getInstance().getRecordingQueue().getDropped();
+    }
+
+    @Override
+    public long getRecordsSpilled() {
+        return Prism.getInstance().getRecordingQueue().getSpilled();
+    }
+
+    @Override
+    public long getRecordsSampled() {
+        return Prism.getInstance().getRecordSampler().getSampled();
+    }
+
+    @Override
+    public long getRecordsJournaled() {
+        return Metrics.getJournaled();
+    }
+
+    @Override
+    public long getWriteFailures() {
+        return Metrics.getWriteFailures();
+    }
+
+    @Override
+    public long getBatchSizeP50() {
+        return Metrics.getBatchSize().getSnapshot().getPercentile(50);
+    }
+
+    @Override
+    public long getBatchSizeMax() {
+        return Metrics.getBatchSize().getSnapshot().getMax();
+    }
+
+    @Override
+    public long getQueueLagP99() {
+        return Metrics.getQueueLag().getSnapshot().getPercentile(99);
+    }
+
+    @Override
+    public double getWriteLatencyP50() {
+        return toMillis(Metrics.getWriteLatency().getSnapshot().getPercentile(50));
+    }
+
+    @Override
+    public double getWriteLatencyP95() {
+        return toMillis(Metrics.getWriteLatency().getSnapshot().getPercentile(95));
+    }
+
+    @Override
+    public double getWriteLatencyP99() {
+        return toMillis(Metrics.getWriteLatency().getSnapshot().getPercentile(99));
+    }
+
+    @Override
+    public double getQueryLatencyP50() {
+        return toMillis(Metrics.getQueryLatency().getSnapshot().getPercentile(50));
+    }
+
+    @Override
+    public double getQueryLatencyP95() {
+        return toMillis(Metrics.getQueryLatency().getSnapshot().getPercentile(95));
+    }
+
+    @Override
+    public double getQueryLatencyP99() {
+        return toMillis(Metrics.getQueryLatency().getSnapshot().getPercentile(99));
+    }
+
+    @Override
+    public double getLookupLatencyP95() {
+        return toMillis(Metrics.getLookupLatency().getSnapshot().getPercentile(95));
+    }
+
+    /**
+     * Converts nanoseconds to fractional milliseconds.
+     *
+     * @param nanos Nanoseconds
+     * @return Milliseconds
+     */
+    public static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.metrics;
+
+/**
+ * JMX view of the recording pipeline and storage metrics.
+ *
+ * Latencies are in milliseconds and cover roughly the last one to two
+ * minutes, counts are totals since startup.
+ */
+public interface PrismMetricsMBean {
+
+    int getQueueSize();
+
+    int getQueueCapacity();
+
+    int getQueueHighWaterMark();
+
+    int getWriterPending();
+
+    int getCoalescing();
+
+    long getRecordsRecorded();
+
+    double getRecordsPerSecond();
+
+    long getRecordsWritten();
+
+    double getWritesPerSecond();
+
+    long getRecordsDropped();
+
+    long getRecordsSpilled();
+
+    long getRecordsSampled();
+
+    long getRecordsJournaled();
+
+    long getWriteFailures();
+
+    long getBatchSizeP50();
+
+    long getBatchSizeMax();
+
+    long getQueueLagP99();
+
+    double getWriteLatencyP50();
+
+    double getWriteLatencyP95();
+
+    double getWriteLatencyP99();
+
+    double getQueryLatencyP50();
+
+    double getQueryLatencyP95();
+
+    double getQueryLatencyP99();
+
+    double getLookupLatencyP95();
+}
@@ -0,0 +1,230 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.helion3.prism.Prism;
+import com.helion3.prism.api.query.Sort;
+import com.helion3.prism.api.records.BlockResult;
+import com.helion3.prism.api.records.Result;
+import com.helion3.prism.util.BlockUtil;
+import com.helion3.prism.util.DataQueries;
+import com.helion3.prism.util.Format;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.scheduler.Task;
+
+/**
+ * Shows the blocks a rollback or restore would change to a single player
+ * with fake block changes, leaving the world and storage untouched.
+ *
+ * Like the {@link ApplierQueue}, only the last change offered for each
+ * block is kept. Changes are sent chunk by chunk within the applier tick
+ * budget. The preview ends when it's applied, cancelled or times out, at
+ * which point the player is sent the real blocks again.
+ */
+public class ApplierPreview {
+
+    private static final Map<UUID, ApplierPreview> previews = new ConcurrentHashMap<>();
+
+    private final UUID playerUuid;
+    private final UUID worldUuid;
+    private final Sort sort;
+    private final Runnable applier;
+    private final long tickBudget;
+    private final Map<Vector3i, Map<Vector3i, String>> chunks = new LinkedHashMap<>();
+    private final List<Vector3i> sent = new ArrayList<>();
+    private Task sendTask;
+    private Task expiryTask;
+
+    /**
+     * @param player Player to show the preview to
+     * @param sort Sort, newest first to rollback or oldest first to restore
+     * @param applier Runs the previewed rollback or restore if the preview is applied
+     */
+    public ApplierPreview(Player player, Sort sort, Runnable applier) {
+        this.playerUuid = player.getUniqueId();
+        this.worldUuid = player.getWorld().getUniqueId();
+        this.sort = sort;
+        this.applier = applier;
+        this.tickBudget = TimeUnit.MILLISECONDS.toNanos(Math.max(1, Prism.getInstance().getConfig().getLimitCategory().getApplierTickBudget()));
+    }
+
+    /**
+     * Returns the preview currently shown to a player.
+     *
+     * @param player Player
+     * @return The {@link ApplierPreview}, or empty
+     */
+    public static Optional<ApplierPreview> get(Player player) {
+        return Optional.ofNullable(previews.get(player.getUniqueId()));
+    }
+
+    /**
+     * Records the block state a result would leave behind. Results in
+     * other worlds, entities and records in the legacy block format can't
+     * be previewed and are ignored.
+     *
+     * @param result Result
+     */
+    public synchronized void offer(Result result) {
+        if (!(result instanceof BlockResult)) {
+            return;
+        }
+
+        DataQuery path = sort.equals(Sort.NEWEST_FIRST) ? DataQueries.OriginalBlock : DataQueries.ReplacementBlock;
+        Optional<String> state = result.data.getString(path.then(DataQueries.BlockState).then(DataQueries.BlockState));
+        Optional<DataView> location = result.data.getView(DataQueries.Location);
+        if (!state.isPresent() || !location.isPresent()
+                || !worldUuid.toString().equals(location.get().getString(DataQueries.WorldUuid).orElse(null))) {
+            return;
+        }
+
+        Optional<Integer> x = location.get().getInt(DataQueries.X);
+        Optional<Integer> y = location.get().getInt(DataQueries.Y);
+        Optional<Integer> z = location.get().getInt(DataQueries.Z);
+        if (!x.isPresent() || !y.isPresent() || !z.isPresent()) {
+            return;
+        }
+
+        Vector3i chunk = new Vector3i(x.get() >> 4, 0, z.get() >> 4);
+        chunks.computeIfAbsent(chunk, key -> new LinkedHashMap<>()).put(new Vector3i(x.get(), y.get(), z.get()), state.get());
+    }
+
+    /**
+     * Starts sending the preview, replacing any preview already shown to the player.
+     * Must be called from the main thread once all results were offered.
+     *
+     * @return Number of blocks in the preview
+     */
+    public int show() {
+        ApplierPreview previous = previews.put(playerUuid, this);
+        if (previous != null) {
+            previous.reset();
+        }
+
+        sendTask = Task.builder()
+                .name("PrismPreview-" + playerUuid)
+                .intervalTicks(1)
+                .execute(this::send)
+                .submit(Prism.getInstance());
+
+        expiryTask = Task.builder()
+                .delay(Math.max(1, Prism.getInstance().getConfig().getLimitCategory().getPreviewTimeout()), TimeUnit.SECONDS)
+                .execute(() -> {
+                    if (previews.remove(playerUuid, this)) {
+                        reset();
+                        Sponge.getServer().getPlayer(playerUuid).ifPresent(player -> player.sendMessage(Format.heading("Preview expired.")));
+                    }
+                })
+                .submit(Prism.getInstance());
+
+        return chunks.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Ends the preview and runs the previewed rollback or restore for real.
+     */
+    public void apply() {
+        if (previews.remove(playerUuid, this)) {
+            reset();
+            applier.run();
+        }
+    }
+
+    /**
+     * Ends the preview without changing anything.
+     */
+    public void cancel() {
+        if (previews.remove(playerUuid, this)) {
+            reset();
+        }
+    }
+
+    private void send(Task task) {
+        Optional<Player> player = Sponge.getServer().getPlayer(playerUuid);
+        if (!player.isPresent() || !player.get().getWorld().getUniqueId().equals(worldUuid)) {
+            cancel();
+            return;
+        }
+
+        long deadline = System.nanoTime() + tickBudget;
+        Map<String, Optional<BlockState>> states = new HashMap<>();
+
+        Iterator<Map<Vector3i, String>> iterator = chunks.values().iterator();
+        while (iterator.hasNext() && System.nanoTime() - deadline < 0) {
+            // Whole chunks at a time, so each area of the preview appears at once
+            for (Map.Entry<Vector3i, String> block : iterator.next().entrySet()) {
+                Optional<BlockState> state = states.computeIfAbsent(block.getValue(), id -> Sponge.getRegistry().getType(BlockState.class, id));
+                if (state.isPresent() && !BlockUtil.rejectIllegalApplierBlock(state.get().getType())) {
+                    player.get().sendBlockChange(block.getKey(), state.get());
+                    sent.add(block.getKey());
+                }
+            }
+
+            iterator.remove();
+        }
+
+        if (chunks.isEmpty()) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Stops sending and restores the real blocks for the player.
+     */
+    private void reset() {
+        if (sendTask != null) {
+            sendTask.cancel();
+        }
+
+        if (expiryTask != null) {
+            expiryTask.cancel();
+        }
+
+        Sponge.getServer().getPlayer(playerUuid).ifPresent(player -> {
+            if (player.getWorld().getUniqueId().equals(worldUuid)) {
+                sent.forEach(player::resetBlockChange);
+            }
+        });
+
+        sent.clear();
+        chunks.clear();
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.helion3.prism.Prism;
+import com.helion3.prism.api.query.Sort;
+import com.helion3.prism.api.records.Actionable;
+import com.helion3.prism.api.records.ActionableResult;
+import com.helion3.prism.api.records.BlockResult;
+import com.helion3.prism.api.records.Result;
+import com.helion3.prism.util.DataQueries;
+import com.helion3.prism.util.Format;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.text.Text;
+
+/**
+ * Applies the results of a rollback or restore on the main thread, spread
+ * over as many ticks as needed to stay within the configured tick budget.
+ *
+ * Results are grouped by chunk as they're offered and each chunk is
+ * finished before the next one is started. Results within a chunk keep
+ * the order they were offered in, so changes to a single block are still
+ * applied in query order. Storage streams results in time order, so the
+ * results held at once are what gets grouped, and a chunk changed again
+ * later in the stream is visited again.
+ *
+ * While a block change is pending, any later change to the same block
+ * replaces it. Results arrive newest first for a rollback and oldest first
+ * for a restore, so the latest one offered is always the state the block
+ * would end up in, and the changes before it would only be overwritten.
+ *
+ * The next few chunks are loaded asynchronously and pinned ahead of time,
+ * and only chunks which are already loaded are applied, so the main thread
+ * never waits on a chunk load.
+ */
+public class ApplierQueue {
+
+    private static final int CAPACITY = 5000;
+    private static final int PROGRESS_INTERVAL = 100;
+    private static final int PRELOAD_AHEAD = 16;
+    private static final Map<String, ApplierQueue> queues = new ConcurrentHashMap<>();
+
+    private final CommandSource source;
+    private final Sort sort;
+    private final Consumer<ApplierQueue> callback;
+    private final long tickBudget;
+    private final Map<ChunkKey, Chunk> chunks = new LinkedHashMap<>();
+    private final List<ActionableResult> actionResults = new ArrayList<>();
+    private final List<Object> appliedRecordIds = new ArrayList<>();
+    private final Map<ActionableResult, List<Object>> changeRecordIds = new IdentityHashMap<>();
+    private final BlockVolumeApplier blockApplier = new BlockVolumeApplier();
+    private final ChunkPreloader preloader = new ChunkPreloader();
+    private int size = 0;
+    private int offered = 0;
+    private int collapsed = 0;
+    private boolean finished = false;
+    private boolean cancelled = false;
+    private volatile boolean paused = false;
+    private long ticks = 0;
+
+    /**
+     * @param source CommandSource which started the change
+     * @param sort Sort, newest first to rollback or oldest first to restore
+     * @param callback Called on the main thread once every result was applied or the queue was cancelled
+     */
+    public ApplierQueue(CommandSource source, Sort sort, Consumer<ApplierQueue> callback) {
+        this.source = source;
+        this.sort = sort;
+        this.callback = callback;
+        this.tickBudget = TimeUnit.MILLISECONDS.toNanos(Math.max(1, Prism.getInstance().getConfig().getLimitCategory().getApplierTickBudget()));
+    }
+
+    /**
+     * Returns the queue currently running for a source.
+     *
+     * @param source CommandSource
+     * @return The running {@link ApplierQueue}, or empty
+     */
+    public static Optional<ApplierQueue> get(CommandSource source) {
+        return Optional.ofNullable(queues.get(source.getIdentifier()));
+    }
+
+    /**
+     * Cancels every running queue.
+     */
+    public static void cancelAll() {
+        queues.values().forEach(ApplierQueue::cancel);
+    }
+
+    /**
+     * Starts applying results, unless the source already has a queue running.
+     *
+     * @return True if the queue was started
+     */
+    public boolean start() {
+        if (queues.putIfAbsent(source.getIdentifier(), this) != null) {
+            return false;
+        }
+
+        Task.builder()
+                .name("PrismApplier-" + source.getIdentifier())
+                .intervalTicks(1)
+                .execute(this::tick)
+                .submit(Prism.getInstance());
+
+        return true;
+    }
+
+    /**
+     * Queues a result to be applied, waiting while the queue is full.
+     *
+     * @param result Result
+     * @return False if the queue was cancelled and the result discarded
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public synchronized boolean offer(Result result) throws InterruptedException {
+        while (size >= CAPACITY && !cancelled) {
+            wait();
+        }
+
+        if (cancelled) {
+            return false;
+        }
+
+        offered++;
+        if (chunks.computeIfAbsent(ChunkKey.of(result), Chunk::new).add(result, sort)) {
+            size++;
+        } else {
+            collapsed++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks the end of the results, the queue completes once the rest are applied.
+     */
+    public synchronized void finish() {
+        finished = true;
+    }
+
+    /**
+     * Stops applying results until resumed.
+     *
+     * @return False if already paused
+     */
+    public boolean pause() {
+        boolean wasPaused = paused;
+        paused = true;
+        return !wasPaused;
+    }
+
+    /**
+     * Continues applying results after a pause.
+     *
+     * @return False if not paused
+     */
+    public boolean resume() {
+        boolean wasPaused = paused;
+        paused = false;
+        return wasPaused;
+    }
+
+    /**
+     * Discards all pending results. Results already applied stay applied.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        chunks.clear();
+        size = 0;
+        notifyAll();
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Returns how many results have been queued, including those already applied.
+     *
+     * @return Number of results offered
+     */
+    public synchronized int getOffered() {
+        return offered;
+    }
+
+    /**
+     * Returns how many results were dropped because a later change to the
+     * same block replaced them before they were applied.
+     *
+     * @return Number of collapsed results
+     */
+    public synchronized int getCollapsed() {
+        return collapsed;
+    }
+
+    /**
+     * Returns how many results are waiting to be applied.
+     *
+     * @return Number of pending results
+     */
+    public synchronized int getPending() {
+        return size;
+    }
+
+    /**
+     * Returns the outcome of each applied result, in the order they were applied.
+     * Only safe to use from the main thread.
+     *
+     * @return List of {@link ActionableResult}
+     */
+    public List<ActionableResult> getActionResults() {
+        return Collections.unmodifiableList(actionResults);
+    }
+
+    /**
+     * Returns the record ids of every result which was applied, including
+     * those collapsed into an applied result. Only safe to use from the main thread.
+     *
+     * @return List of record ids
+     */
+    public List<Object> getAppliedRecordIds() {
+        return Collections.unmodifiableList(appliedRecordIds);
+    }
+
+    /**
+     * Returns the record ids settled by each applied result, keyed by
+     * the result itself. Only safe to use from the main thread.
+     *
+     * @return Map of record ids
+     */
+    public Map<ActionableResult, List<Object>> getChangeRecordIds() {
+        return Collections.unmodifiableMap(changeRecordIds);
+    }
+
+    public CommandSource getSource() {
+        return source;
+    }
+
+    private void tick(Task task) {
+        if (!paused) {
+            long deadline = System.nanoTime() + tickBudget;
+            preload();
+
+            Entry entry;
+            while ((entry = poll()) != null) {
+                apply(entry);
+
+                if (System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+            }
+
+            if (++ticks % PROGRESS_INTERVAL == 0 && !isDone()) {
+                source.sendMessage(Format.subduedHeading(Text.of(
+                        "Applied ", actionResults.size(), " of ", getOffered(), " changes so far...")));
+            }
+        }
+
+        if (isDone()) {
+            task.cancel();
+            preloader.release();
+            queues.remove(source.getIdentifier(), this);
+            callback.accept(this);
+        }
+    }
+
+    private void apply(Entry entry) {
+        ActionableResult actionResult = apply(entry.result);
+        if (actionResult == null) {
+            return;
+        }
+
+        actionResults.add(actionResult);
+
+        // Changes this one replaced are settled by it as well
+        if (actionResult.applied()) {
+            List<Object> recordIds = getRecordIds(entry.result);
+            recordIds.addAll(entry.replacedRecordIds);
+            appliedRecordIds.addAll(recordIds);
+            changeRecordIds.put(actionResult, recordIds);
+        }
+    }
+
+    /**
+     * Returns the ids of the records a result settles, its own and those
+     * of the changes it undoes.
+     */
+    static List<Object> getRecordIds(Result result) {
+        List<Object> recordIds = new ArrayList<>();
+        result.data.get(DataQueries.RecordId).ifPresent(recordIds::add);
+        result.data.getList(DataQueries.RecordIds).ifPresent(recordIds::addAll);
+        return recordIds;
+    }
+
+    private ActionableResult apply(Result result) {
+        try {
+            if (result instanceof BlockResult) {
+                Optional<ActionableResult> actionResult = blockApplier.apply((BlockResult) result, sort);
+                if (actionResult.isPresent()) {
+                    return actionResult.get();
+                }
+            }
+
+            if (result instanceof Actionable) {
+                Actionable actionable = (Actionable) result;
+
+                if (sort.equals(Sort.NEWEST_FIRST)) {
+                    return actionable.rollback();
+                } else {
+                    return actionable.restore();
+                }
+            }
+        } catch (Exception e) {
+            source.sendMessage(Format.error(Text.of(e.getMessage())));
+        }
+
+        return null;
+    }
+
+    /**
+     * Starts loading the next chunks which haven't been requested yet.
+     */
+    private void preload() {
+        List<Chunk> requests = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Chunk> iterator = chunks.values().iterator();
+            for (int i = 0; i < PRELOAD_AHEAD && iterator.hasNext(); i++) {
+                Chunk chunk = iterator.next();
+                if (!chunk.requested) {
+                    chunk.requested = true;
+                    requests.add(chunk);
+                }
+            }
+        }
+
+        for (Chunk chunk : requests) {
+            UUID worldUuid = chunk.key != null ? chunk.key.getWorldUuid() : null;
+            if (worldUuid == null) {
+                markResident(chunk);
+                continue;
+            }
+
+            preloader.load(worldUuid, chunk.key.getPosition()).whenComplete((loaded, ex) -> markResident(chunk));
+        }
+    }
+
+    private synchronized void markResident(Chunk chunk) {
+        chunk.resident = true;
+    }
+
+    /**
+     * Takes the next result of the first loaded chunk.
+     */
+    private synchronized Entry poll() {
+        Iterator<Chunk> iterator = chunks.values().iterator();
+        while (iterator.hasNext()) {
+            Chunk chunk = iterator.next();
+            if (!chunk.resident) {
+                continue;
+            }
+
+            Entry entry = chunk.poll();
+            if (chunk.isEmpty()) {
+                iterator.remove();
+
+                if (chunk.key != null && chunk.key.getWorldUuid() != null) {
+                    preloader.unpin(chunk.key.getWorldUuid(), chunk.key.getPosition());
+                }
+            }
+
+            size--;
+            notifyAll();
+            return entry;
+        }
+
+        return null;
+    }
+
+    private synchronized boolean isDone() {
+        return cancelled || (finished && size == 0);
+    }
+
+    /**
+     * Pending results of a single chunk, with the pending block changes
+     * indexed by position so repeated changes can be collapsed.
+     */
+    static final class Chunk {
+        private final ChunkKey key;
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        private final Map<Vector3i, Entry> blocks = new HashMap<>();
+        private boolean requested = false;
+        private boolean resident = false;
+
+        Chunk(ChunkKey key) {
+            this.key = key;
+        }
+
+        /**
+         * @return False if the result replaced a pending change to the same block
+         */
+        boolean add(Result result, Sort sort) {
+            Vector3i position = getCollapsiblePosition(result, sort);
+            if (position != null) {
+                Entry pending = blocks.get(position);
+                if (pending != null) {
+                    pending.replacedRecordIds.addAll(getRecordIds(pending.result));
+                    pending.result = result;
+                    return false;
+                }
+            }
+
+            Entry entry = new Entry(result, position);
+            entries.addLast(entry);
+            if (position != null) {
+                blocks.put(position, entry);
+            }
+
+            return true;
+        }
+
+        Entry poll() {
+            Entry entry = entries.pollFirst();
+            if (entry.position != null) {
+                blocks.remove(entry.position);
+            }
+
+            return entry;
+        }
+
+        boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        /**
+         * Only block changes carrying the state they apply can replace
+         * another, so an unusable record never hides a usable one.
+         */
+        private static Vector3i getCollapsiblePosition(Result result, Sort sort) {
+            if (!(result instanceof BlockResult)) {
+                return null;
+            }
+
+            DataQuery state = sort.equals(Sort.NEWEST_FIRST) ? DataQueries.OriginalBlock : DataQueries.ReplacementBlock;
+            Optional<DataView> location = result.data.getView(DataQueries.Location);
+            if (!location.isPresent() || !result.data.contains(state)) {
+                return null;
+            }
+
+            Optional<Integer> x = location.get().getInt(DataQueries.X);
+            Optional<Integer> y = location.get().getInt(DataQueries.Y);
+            Optional<Integer> z = location.get().getInt(DataQueries.Z);
+            if (!x.isPresent() || !y.isPresent() || !z.isPresent()) {
+                return null;
+            }
+
+            return new Vector3i(x.get(), y.get(), z.get());
+        }
+    }
+
+    static final class Entry {
+        private final Vector3i position;
+        final List<Object> replacedRecordIds = new ArrayList<>();
+        Result result;
+
+        private Entry(Result result, Vector3i position) {
+            this.result = result;
+            this.position = position;
+        }
+    }
+
+    /**
+     * World and chunk coordinates of a result.
+     */
+    static final class ChunkKey {
+        private final String worldUuid;
+        private final int x;
+        private final int z;
+
+        private ChunkKey(String worldUuid, int x, int z) {
+            this.worldUuid = worldUuid;
+            this.x = x;
+            this.z = z;
+        }
+
+        private static ChunkKey of(Result result) {
+            Optional<DataView> location = result.data.getView(DataQueries.Location);
+            if (!location.isPresent()) {
+                return null;
+            }
+
+            String worldUuid = location.get().getString(DataQueries.WorldUuid).orElse(null);
+            int x = (int) Math.floor(location.get().getDouble(DataQueries.X).orElse(0D));
+            int z = (int) Math.floor(location.get().getDouble(DataQueries.Z).orElse(0D));
+            return new ChunkKey(worldUuid, x >> 4, z >> 4);
+        }
+
+        /**
+         * @return World UUID, or null if missing or malformed
+         */
+        private UUID getWorldUuid() {
+            try {
+                return worldUuid != null ? UUID.fromString(worldUuid) : null;
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+
+        private Vector3i getPosition() {
+            return new Vector3i(x, 0, z);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof ChunkKey)) {
+                return false;
+            }
+
+            ChunkKey other = (ChunkKey) obj;
+            return x == other.x && z == other.z && Objects.equals(worldUuid, other.worldUuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(worldUuid, x, z);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import com.helion3.prism.api.query.Sort;
+import com.helion3.prism.api.records.ActionableResult;
+import com.helion3.prism.api.records.BlockResult;
+import com.helion3.prism.api.records.SkipReason;
+import com.helion3.prism.util.BlockUtil;
+import com.helion3.prism.util.DataQueries;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.block.BlockSnapshot;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.data.Transaction;
+import org.spongepowered.api.world.BlockChangeFlags;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+
+/**
+ * Writes block results straight into their chunk, skipping the
+ * {@link BlockSnapshot} rebuilt for every record by
+ * {@link BlockResult#rollback()} and {@link BlockResult#restore()}.
+ *
+ * Each distinct block state is decoded once per job, and the world and
+ * chunk of the previous result are reused while the {@link ApplierQueue}
+ * works through a chunk. Blocks with tile entity data, records in the
+ * legacy format and unloaded chunks are left to the snapshot path.
+ */
+class BlockVolumeApplier {
+
+    private final Map<String, Optional<BlockState>> states = new HashMap<>();
+    private String worldUuid;
+    private World world;
+    private Chunk chunk;
+
+    /**
+     * Applies a block result.
+     *
+     * @param result BlockResult
+     * @param sort Sort, newest first to rollback or oldest first to restore
+     * @return The outcome, or empty if the result must use the snapshot path
+     */
+    Optional<ActionableResult> apply(BlockResult result, Sort sort) {
+        DataQuery path = sort.equals(Sort.NEWEST_FIRST) ? DataQueries.OriginalBlock : DataQueries.ReplacementBlock;
+        Optional<DataView> block = result.data.getView(path);
+        Optional<DataView> location = result.data.getView(DataQueries.Location);
+        if (!block.isPresent() || !location.isPresent() || block.get().contains(DataQueries.UnsafeData)) {
+            return Optional.empty();
+        }
+
+        Optional<BlockState> state = getState(block.get());
+        Optional<String> worldUuid = location.get().getString(DataQueries.WorldUuid);
+        Optional<Integer> x = location.get().getInt(DataQueries.X);
+        Optional<Integer> y = location.get().getInt(DataQueries.Y);
+        Optional<Integer> z = location.get().getInt(DataQueries.Z);
+        if (!state.isPresent() || !worldUuid.isPresent() || !x.isPresent() || !y.isPresent() || !z.isPresent()) {
+            return Optional.empty();
+        }
+
+        // Filter unsafe blocks
+        if (BlockUtil.rejectIllegalApplierBlock(state.get().getType())) {
+            return Optional.of(ActionableResult.skipped(SkipReason.ILLEGAL_BLOCK));
+        }
+
+        Optional<Chunk> chunk = getChunk(worldUuid.get(), x.get(), y.get(), z.get());
+        if (!chunk.isPresent()) {
+            return Optional.empty();
+        }
+
+        // Current block in this space, kept for undo
+        BlockSnapshot original = chunk.get().createSnapshot(x.get(), y.get(), z.get());
+
+        if (!chunk.get().setBlock(x.get(), y.get(), z.get(), state.get(), BlockChangeFlags.NONE)) {
+            return Optional.of(ActionableResult.skipped(SkipReason.UNKNOWN));
+        }
+
+        return Optional.of(ActionableResult.success(new Transaction<>(original, original.withState(state.get()))));
+    }
+
+    private Optional<BlockState> getState(DataView block) {
+        // Version 1 stored block data which only the snapshot builder understands
+        if (block.getInt(DataQueries.BlockState.then(DataQueries.ContentVersion)).orElse(1) == 1) {
+            return Optional.empty();
+        }
+
+        Optional<String> id = block.getString(DataQueries.BlockState.then(DataQueries.BlockState));
+        if (!id.isPresent()) {
+            return Optional.empty();
+        }
+
+        return states.computeIfAbsent(id.get(), key -> Sponge.getRegistry().getType(BlockState.class, key));
+    }
+
+    private Optional<Chunk> getChunk(String worldUuid, int x, int y, int z) {
+        if (!worldUuid.equals(this.worldUuid)) {
+            this.worldUuid = worldUuid;
+            this.world = Sponge.getServer().getWorld(UUID.fromString(worldUuid)).orElse(null);
+            this.chunk = null;
+        }
+
+        if (world == null) {
+            return Optional.empty();
+        }
+
+        // Only loaded chunks are written here, a chunk that unloaded since the last result is looked up again
+        if (chunk == null || !chunk.isLoaded() || !chunk.containsBlock(x, y, z)) {
+            chunk = world.getChunkAtBlock(x, y, z).orElse(null);
+        }
+
+        return Optional.ofNullable(chunk);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.helion3.prism.Prism;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.world.ChunkTicketManager;
+import org.spongepowered.api.world.ChunkTicketManager.LoadingTicket;
+import org.spongepowered.api.world.World;
+
+/**
+ * Loads the chunks of a rollback or restore off the main thread before
+ * they're applied, and keeps them loaded with chunk tickets until the
+ * {@link ApplierQueue} is done with them.
+ *
+ * Must only be used from the main thread.
+ */
+class ChunkPreloader {
+
+    private static boolean callbackRegistered = false;
+
+    private final Map<UUID, List<LoadingTicket>> tickets = new HashMap<>();
+
+    /**
+     * Pins a chunk and starts loading it if it isn't loaded yet.
+     *
+     * @param worldUuid World UUID
+     * @param chunk Chunk position
+     * @return Completes once the chunk is loaded or couldn't be loaded
+     */
+    CompletableFuture<?> load(UUID worldUuid, Vector3i chunk) {
+        Optional<World> world = Sponge.getServer().getWorld(worldUuid);
+        if (!world.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        getTicket(world.get()).ifPresent(ticket -> ticket.forceChunk(chunk));
+
+        // Never generate, an empty chunk isn't worth creating to apply a change to it
+        return world.get().loadChunkAsync(chunk, false);
+    }
+
+    /**
+     * Releases a chunk pinned by {@link #load}.
+     *
+     * @param worldUuid World UUID
+     * @param chunk Chunk position
+     */
+    void unpin(UUID worldUuid, Vector3i chunk) {
+        for (LoadingTicket ticket : tickets.getOrDefault(worldUuid, new ArrayList<>())) {
+            if (ticket.getChunkList().contains(chunk)) {
+                ticket.unforceChunk(chunk);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Releases all chunks still pinned.
+     */
+    void release() {
+        tickets.values().forEach(list -> list.forEach(LoadingTicket::release));
+        tickets.clear();
+    }
+
+    private Optional<LoadingTicket> getTicket(World world) {
+        List<LoadingTicket> list = tickets.computeIfAbsent(world.getUniqueId(), uuid -> new ArrayList<>());
+        for (LoadingTicket ticket : list) {
+            if (ticket.getChunkList().size() < ticket.getNumChunks()) {
+                return Optional.of(ticket);
+            }
+        }
+
+        ChunkTicketManager manager = Sponge.getServer().getChunkTicketManager();
+        if (!callbackRegistered) {
+            // Tickets are only needed while a queue runs, any restored after a restart are stale
+            manager.registerCallback(Prism.getInstance(), (loaded, loadedWorld) -> loaded.forEach(LoadingTicket::release));
+            callbackRegistered = true;
+        }
+
+        Optional<LoadingTicket> ticket = manager.createTicket(Prism.getInstance(), world);
+        ticket.ifPresent(list::add);
+        return ticket;
+    }
+}
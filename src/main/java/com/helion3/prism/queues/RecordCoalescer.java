@@ -0,0 +1,199 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import com.helion3.prism.api.records.PrismRecord;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Merges identical records which happen within a short window into a
+ * single record with a combined count and quantity.
+ *
+ * Records are identical when their event, source, target, location and
+ * container match. Only records without extra data can be merged, they
+ * are held back until their window has passed.
+ */
+public class RecordCoalescer {
+
+    private final Map<Key, Entry> pending = new LinkedHashMap<>();
+    private final Set<String> events;
+    private final long window;
+    private final int maximumPending;
+
+    /**
+     * Creates a coalescer.
+     *
+     * @param events Event ids which may be merged
+     * @param window Nanoseconds a record is held back to merge with later records
+     * @param maximumPending Maximum amount of records held back at once
+     */
+    public RecordCoalescer(Set<String> events, long window, int maximumPending) {
+        this.events = events;
+        this.window = window;
+        this.maximumPending = Math.max(1, maximumPending);
+    }
+
+    /**
+     * Merges a record into a pending record or holds it back for later
+     * records to merge into. Records which can't be merged are not held.
+     *
+     * @param record Record to offer
+     * @param ready Records which are ready to be written
+     * @return True if the record was taken by the coalescer
+     */
+    public boolean offer(PrismRecord record, Collection<PrismRecord> ready) {
+        if (!events.contains(record.getEvent()) || record.hasExtraData() || record.getWorldUuid() == null) {
+            return false;
+        }
+
+        Key key = new Key(record);
+        Entry entry = pending.get(key);
+        if (entry != null) {
+            entry.record.merge(record);
+            return true;
+        }
+
+        // Make space by releasing the oldest record early
+        if (pending.size() >= maximumPending) {
+            Iterator<Entry> iterator = pending.values().iterator();
+            ready.add(iterator.next().record);
+            iterator.remove();
+        }
+
+        pending.put(key, new Entry(record, System.nanoTime() + window));
+        return true;
+    }
+
+    /**
+     * Releases all records whose window has passed.
+     *
+     * @param ready Records which are ready to be written
+     */
+    public void drainExpired(Collection<PrismRecord> ready) {
+        long now = System.nanoTime();
+
+        // Records are held in the order they arrived so the oldest come first
+        Iterator<Entry> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.expiry < 0) {
+                break;
+            }
+
+            ready.add(entry.record);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Releases all held records.
+     *
+     * @param ready Records which are ready to be written
+     */
+    public void drainAll(Collection<PrismRecord> ready) {
+        for (Entry entry : pending.values()) {
+            ready.add(entry.record);
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Returns the amount of records held back.
+     *
+     * @return Pending record count
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private static final class Entry {
+        private final PrismRecord record;
+        private final long expiry;
+
+        private Entry(PrismRecord record, long expiry) {
+            this.record = record;
+            this.expiry = expiry;
+        }
+    }
+
+    private static final class Key {
+        private final String event;
+        private final String player;
+        private final String cause;
+        private final String target;
+        private final String container;
+        private final UUID worldUuid;
+        private final int x;
+        private final int y;
+        private final int z;
+
+        private Key(PrismRecord record) {
+            this.event = record.getEvent();
+            this.player = record.getPlayer();
+            this.cause = record.getCause();
+            this.target = record.getTarget();
+            this.container = record.getContainer();
+            this.worldUuid = record.getWorldUuid();
+            this.x = record.getX();
+            this.y = record.getY();
+            this.z = record.getZ();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) obj;
+            return x == key.x
+                    && y == key.y
+                    && z == key.z
+                    && event.equals(key.event)
+                    && worldUuid.equals(key.worldUuid)
+                    && Objects.equals(player, key.player)
+                    && Objects.equals(cause, key.cause)
+                    && Objects.equals(target, key.target)
+                    && Objects.equals(container, key.container);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(event, player, cause, target, container, worldUuid, x, y, z);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.helion3.prism.queues;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.helion3.prism.util.DataQueries;
+import com.helion3.prism.util.DataUtil;
+import org.spongepowered.api.data.DataContainer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An append-only log of record containers, split into segment files.
+ *
+ * Each line of a segment holds one record in JSON form. Segments are
+ * read back oldest first and deleted once they have been consumed. A
+ * segment with an unreadable line anywhere but at its end is copied
+ * aside first, so the records in it aren't lost without a trace.
+ */
+public class RecordLog {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CORRUPT_SUFFIX = ".corrupt";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Deque<Path> segments = new ArrayDeque<>();
+
+    private FileChannel channel;
+    private Writer writer;
+    private Path currentSegment;
+    private int currentCount;
+    private long sequence;
+
+    /**
+     * Opens a log in the given directory, picking up any segments
+     * left behind by a previous run.
+     *
+     * @param directory Directory holding segment files
+     * @param segmentSize Amount of records written to a segment before starting a new one
+     * @throws IOException If the directory could not be read
+     */
+    public RecordLog(Path directory, int segmentSize) throws IOException {
+        Preconditions.checkArgument(segmentSize > 0, "Segment size must be positive");
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(existing::add);
+        }
+
+        Collections.sort(existing);
+        for (Path segment : existing) {
+            sequence = Math.max(sequence, parseSequence(segment) + 1);
+            segments.add(segment);
+        }
+    }
+
+    /**
+     * Appends a record to the current segment.
+     *
+     * @param container Record container
+     * @throws IOException If the record could not be written
+     */
+    public synchronized void append(DataContainer container) throws IOException {
+        if (writer == null) {
+            openSegment();
+        }
+
+        writer.write(encode(container));
+        writer.write('\n');
+        currentCount++;
+
+        if (currentCount >= segmentSize) {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Appends all records to the log.
+     *
+     * @param containers Record containers
+     * @throws IOException If a record could not be written
+     */
+    public synchronized void append(Collection<DataContainer> containers) throws IOException {
+        for (DataContainer container : containers) {
+            append(container);
+        }
+    }
+
+    /**
+     * Pushes buffered records to the file system.
+     *
+     * @param sync Whether to wait until the data has reached the storage device
+     * @throws IOException If the segment could not be flushed
+     */
+    public synchronized void flush(boolean sync) throws IOException {
+        if (writer != null) {
+            writer.flush();
+
+            if (sync) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the oldest segment, the segment currently being written
+     * is closed if no other segment exists.
+     *
+     * @return Oldest segment, or empty if the log is empty
+     * @throws IOException If the current segment could not be closed
+     */
+    public synchronized Optional<Path> oldest() throws IOException {
+        if (segments.isEmpty() && writer != null) {
+            closeSegment();
+        }
+
+        return Optional.ofNullable(segments.peekFirst());
+    }
+
+    /**
+     * Reads all records from a segment. A partially written last line is
+     * skipped, any other unreadable line leaves a copy of the segment
+     * next to it with the {@value #CORRUPT_SUFFIX} suffix.
+     *
+     * @param segment Segment returned by {@link #oldest()}
+     * @return Record containers
+     * @throws IOException If the segment could not be read
+     */
+    public List<DataContainer> read(Path segment) throws IOException {
+        List<DataContainer> containers = new ArrayList<>();
+        JsonParser parser = new JsonParser();
+        boolean unreadable = false;
+        boolean corrupt = false;
+
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                // Only the last line may be partially written, after a crash
+                corrupt |= unreadable;
+
+                try {
+                    containers.add(decode(parser.parse(line).getAsJsonObject()));
+                    unreadable = false;
+                } catch (JsonParseException | IllegalStateException ex) {
+                    unreadable = true;
+                }
+            }
+        }
+
+        if (corrupt) {
+            Files.copy(segment, segment.resolveSibling(segment.getFileName() + CORRUPT_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return containers;
+    }
+
+    /**
+     * Deletes a consumed segment.
+     *
+     * @param segment Segment returned by {@link #oldest()}
+     * @throws IOException If the segment could not be deleted
+     */
+    public synchronized void delete(Path segment) throws IOException {
+        segments.remove(segment);
+        Files.deleteIfExists(segment);
+    }
+
+    /**
+     * Reads and deletes the oldest segment.
+     *
+     * @return Record containers, or empty if the log is empty
+     * @throws IOException If the segment could not be read
+     */
+    public synchronized Optional<List<DataContainer>> poll() throws IOException {
+        Optional<Path> segment = oldest();
+        if (!segment.isPresent()) {
+            return Optional.empty();
+        }
+
+        List<DataContainer> containers = read(segment.get());
+        delete(segment.get());
+        return Optional.of(containers);
+    }
+
+    /**
+     * Returns whether the log holds no records.
+     *
+     * @return True if there is nothing to read
+     */
+    public synchronized boolean isEmpty() {
+        return segments.isEmpty() && currentCount == 0;
+    }
+
+    /**
+     * Flushes and closes the current segment.
+     *
+     * @throws IOException If the segment could not be closed
+     */
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            closeSegment();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        currentSegment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence++, SEGMENT_SUFFIX));
+        channel = FileChannel.open(currentSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+        currentCount = 0;
+    }
+
+    private void closeSegment() throws IOException {
+        writer.flush();
+        channel.force(false);
+        writer.close();
+
+        if (currentCount > 0) {
+            segments.add(currentSegment);
+        } else {
+            Files.deleteIfExists(currentSegment);
+        }
+
+        writer = null;
+        channel = null;
+        currentSegment = null;
+        currentCount = 0;
+    }
+
+    private static long parseSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Converts a record container into a single line of JSON. The created
+     * date isn't supported by {@link DataUtil#jsonFromDataView} so it's
+     * stored separately as epoch milliseconds.
+     *
+     * @param container Record container
+     * @return JSON string
+     */
+    private static String encode(DataContainer container) {
+        JsonObject json = DataUtil.jsonFromDataView(container);
+        json.addProperty(DataQueries.Created.toString(), DataUtil.getCreated(container).getTime());
+
+        return json.toString();
+    }
+
+    private static DataContainer decode(JsonObject json) {
+        DataContainer container = DataUtil.dataViewFromJson(json).getContainer();
+        container.getLong(DataQueries.Created).ifPresent(created -> container.set(DataQueries.Created, new Date(created)));
+
+        return container;
+    }
+}
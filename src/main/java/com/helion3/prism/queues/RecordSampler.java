@@ -0,0 +1,265 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableMap;
+import com.helion3.prism.Prism;
+import com.helion3.prism.api.records.PrismRecord;
+import com.helion3.prism.configuration.category.RecordingCategory;
+
+/**
+ * Thins out high volume events before they are queued.
+ *
+ * Rules are keyed by event id, optionally followed by a source such as
+ * "break:environment". The source is "player" for players, the entity
+ * type for entities and "environment" for everything else. A rule for
+ * the event and source takes precedence over a rule for the event alone.
+ */
+public class RecordSampler {
+
+    private static final long REPORT_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    private static final long BUCKET_EXPIRY = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, Integer> sampleRates;
+    private final Map<String, Integer> rateLimits;
+    private final Map<String, AtomicLong> sampleCounters = new ConcurrentHashMap<>();
+    private final Map<BucketKey, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> sampled = new ConcurrentHashMap<>();
+
+    private long lastReportedSampled = 0;
+    private long lastReportTime = 0;
+
+    public RecordSampler(RecordingCategory config) {
+        this(config.getSampleRates(), config.getRateLimits());
+    }
+
+    RecordSampler(Map<String, Integer> sampleRates, Map<String, Integer> rateLimits) {
+        this.sampleRates = parseRules(sampleRates, 1);
+        this.rateLimits = parseRules(rateLimits, 0);
+    }
+
+    /**
+     * Decides whether a record should be kept. Rejected records are
+     * counted against their event.
+     *
+     * @param record Record about to be queued
+     * @return True if the record should be queued
+     */
+    public boolean accept(PrismRecord record) {
+        if (sampleRates.isEmpty() && rateLimits.isEmpty()) {
+            return true;
+        }
+
+        String source = getSource(record);
+
+        // Keep one in every N records
+        String sampleRule = findRule(sampleRates, record.getEvent(), source);
+        if (sampleRule != null) {
+            long index = sampleCounters.computeIfAbsent(sampleRule, key -> new AtomicLong()).getAndIncrement();
+            if (index % sampleRates.get(sampleRule) != 0) {
+                reject(record);
+                return false;
+            }
+        }
+
+        // Keep at most N records per second for each chunk
+        String limitRule = findRule(rateLimits, record.getEvent(), source);
+        if (limitRule != null) {
+            BucketKey key = new BucketKey(limitRule, record.getWorldUuid(), record.getX() >> 4, record.getZ() >> 4);
+            TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(rateLimits.get(limitRule)));
+            if (!bucket.tryAcquire()) {
+                reject(record);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the amount of records discarded by sampling and rate limits.
+     *
+     * @return Sampled record count
+     */
+    public long getSampled() {
+        long total = 0;
+        for (LongAdder count : sampled.values()) {
+            total += count.sum();
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns the amount of records discarded for each event.
+     *
+     * @return Sampled record counts keyed by event id
+     */
+    public Map<String, Long> getSampledByEvent() {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        sampled.forEach((event, count) -> builder.put(event, count.sum()));
+        return builder.build();
+    }
+
+    /**
+     * Logs the amount of records sampled away since the last report and
+     * forgets rate limits for chunks which have been idle for a while.
+     */
+    public synchronized void reportSampled() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isIdle(now));
+
+        long sampledTotal = getSampled();
+        long time = System.currentTimeMillis();
+        if (sampledTotal == lastReportedSampled || time - lastReportTime < REPORT_INTERVAL) {
+            return;
+        }
+
+        Prism.getInstance().getLogger().info("Sampled away {} records ({} total): {}",
+                sampledTotal - lastReportedSampled, sampledTotal, getSampledByEvent());
+
+        lastReportedSampled = sampledTotal;
+        lastReportTime = time;
+    }
+
+    private void reject(PrismRecord record) {
+        sampled.computeIfAbsent(record.getEvent(), key -> new LongAdder()).increment();
+    }
+
+    private static String getSource(PrismRecord record) {
+        if (record.getPlayer() != null) {
+            return "player";
+        }
+
+        return record.getCause() != null ? record.getCause().toLowerCase(Locale.ENGLISH) : "environment";
+    }
+
+    private static String findRule(Map<String, Integer> rules, String event, String source) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+
+        String rule = event + ":" + source;
+        if (rules.containsKey(rule)) {
+            return rule;
+        }
+
+        return rules.containsKey(event) ? event : null;
+    }
+
+    /**
+     * Normalizes configured rules, dropping those which have no effect.
+     *
+     * @param rules Configured rules
+     * @param disabled Highest value which does not limit anything
+     * @return Rules keyed by lower case event and source
+     */
+    private static Map<String, Integer> parseRules(Map<String, Integer> rules, int disabled) {
+        ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+        if (rules != null) {
+            rules.forEach((key, value) -> {
+                if (key != null && value != null && value > disabled) {
+                    builder.put(key.toLowerCase(Locale.ENGLISH), value);
+                }
+            });
+        }
+
+        return builder.build();
+    }
+
+    private static final class TokenBucket {
+        private final double rate;
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(int rate) {
+            this.rate = rate;
+            this.tokens = rate;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+
+            if (tokens < 1) {
+                return false;
+            }
+
+            tokens--;
+            return true;
+        }
+
+        private synchronized boolean isIdle(long now) {
+            return now - lastRefill > BUCKET_EXPIRY;
+        }
+    }
+
+    private static final class BucketKey {
+        private final String rule;
+        private final UUID worldUuid;
+        private final int chunkX;
+        private final int chunkZ;
+
+        private BucketKey(String rule, UUID worldUuid, int chunkX, int chunkZ) {
+            this.rule = rule;
+            this.worldUuid = worldUuid;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof BucketKey)) {
+                return false;
+            }
+
+            BucketKey key = (BucketKey) obj;
+            return chunkX == key.chunkX
+                    && chunkZ == key.chunkZ
+                    && rule.equals(key.rule)
+                    && Objects.equals(worldUuid, key.worldUuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(rule, worldUuid, chunkX, chunkZ);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.helion3.prism.queues;
+
+import com.helion3.prism.Prism;
+import com.helion3.prism.api.storage.StorageAdapter;
+import org.spongepowered.api.data.DataContainer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-ahead journal for batches which could not be written to storage.
+ *
+ * Failed batches are appended to disk with a single sync per batch and
+ * replayed, oldest first, once the storage adapter is healthy again.
+ * Replay attempts back off exponentially while storage stays unavailable.
+ * New batches are journaled behind the pending ones until the journal has
+ * been replayed, so records reach storage in the order they were written.
+ */
+public class RecordingJournal {
+
+    private static final long INITIAL_RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+
+    private final RecordLog log;
+    private final ReadWriteLock replayLock = new ReentrantReadWriteLock();
+    private final long maximumRetryDelay;
+    private long retryDelay = INITIAL_RETRY_DELAY;
+    private long nextAttempt = 0;
+
+    /**
+     * Opens the journal, any batches left from a previous run are
+     * replayed once storage is available.
+     *
+     * @param directory Directory holding journal segments
+     * @param segmentSize Amount of records per segment
+     * @param maximumRetryDelay Maximum milliseconds between replay attempts
+     * @throws IOException If the directory could not be read
+     */
+    public RecordingJournal(Path directory, int segmentSize, long maximumRetryDelay) throws IOException {
+        this.log = new RecordLog(directory, segmentSize);
+        this.maximumRetryDelay = Math.max(INITIAL_RETRY_DELAY, maximumRetryDelay);
+    }
+
+    /**
+     * Appends a failed batch and syncs it to disk.
+     *
+     * @param containers Records which failed to write
+     * @throws IOException If the batch could not be journaled
+     */
+    public synchronized void append(List<DataContainer> containers) throws IOException {
+        log.append(containers);
+        log.flush(true);
+    }
+
+    /**
+     * Schedules the next replay attempt after a failed write.
+     */
+    public synchronized void backoff() {
+        nextAttempt = System.currentTimeMillis() + retryDelay;
+        retryDelay = Math.min(retryDelay * 2, maximumRetryDelay);
+    }
+
+    /**
+     * Returns the lock writers hold while writing to storage. Replaying
+     * holds it exclusively, so no batch is written while older journaled
+     * records are still on their way to storage.
+     *
+     * @return Lock shared by the writers
+     */
+    public Lock getWriteLock() {
+        return replayLock.readLock();
+    }
+
+    /**
+     * Returns whether there are journaled records waiting to be replayed.
+     *
+     * @return True if the journal is not empty
+     */
+    public boolean isPending() {
+        return !log.isEmpty();
+    }
+
+    /**
+     * Writes all journal segments to storage, oldest first, if a replay
+     * is due. Writers are paused until the journal is empty or storage
+     * fails again.
+     *
+     * @param storageAdapter Storage to replay into
+     * @return True if the journal was emptied
+     */
+    public boolean replay(StorageAdapter storageAdapter) {
+        synchronized (this) {
+            if (log.isEmpty() || System.currentTimeMillis() < nextAttempt) {
+                return false;
+            }
+        }
+
+        // Taken before the monitor, writers hold the lock while appending to the journal
+        replayLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                return replaySegments(storageAdapter);
+            }
+        } finally {
+            replayLock.writeLock().unlock();
+        }
+    }
+
+    private boolean replaySegments(StorageAdapter storageAdapter) {
+        int replayed = 0;
+
+        try {
+            if (!storageAdapter.testConnection()) {
+                backoff();
+                return false;
+            }
+
+            Optional<Path> segment;
+            while ((segment = log.oldest()).isPresent()) {
+                List<DataContainer> containers = log.read(segment.get());
+                if (!containers.isEmpty()) {
+                    storageAdapter.records().write(containers);
+                }
+
+                log.delete(segment.get());
+                replayed += containers.size();
+            }
+
+            retryDelay = INITIAL_RETRY_DELAY;
+            return true;
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().warn("Failed to replay journaled records, retrying in {}ms", retryDelay, ex);
+            backoff();
+            return false;
+        } finally {
+            if (replayed > 0) {
+                Prism.getInstance().getLogger().info("Replayed {} journaled records", replayed);
+            }
+        }
+    }
+
+    /**
+     * Closes the current journal segment.
+     *
+     * @throws IOException If the segment could not be closed
+     */
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+}
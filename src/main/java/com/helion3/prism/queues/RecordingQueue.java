@@ -23,40 +23,375 @@
  */
 package com.helion3.prism.queues;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.common.collect.ImmutableSet;
+import com.helion3.prism.Prism;
 import com.helion3.prism.api.records.PrismRecord;
+import com.helion3.prism.configuration.category.RecordingCategory;
+import com.helion3.prism.metrics.Metrics;
 import org.spongepowered.api.data.DataContainer;
 
 public class RecordingQueue {
 
-    private static final LinkedBlockingQueue<PrismRecord> queue = new LinkedBlockingQueue<>();
+    private static final long OVERFLOW_REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(30);
 
-    private RecordingQueue(){}
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long overflowTimeout;
+    private final Set<String> lowPriorityEvents;
+    private final LinkedBlockingQueue<PrismRecord> queue;
+    private final RecordLog spill;
+
+    private final AtomicInteger lowPriorityCount = new AtomicInteger();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+
+    private volatile boolean spilling = false;
+    private long lastReportedDropped = 0;
+    private long lastReportTime = 0;
+
+    /**
+     * Creates the queue from the recording configuration.
+     *
+     * @param config Recording configuration
+     * @param spillDirectory Directory holding spilled records
+     */
+    public RecordingQueue(RecordingCategory config, Path spillDirectory) {
+        this(Math.max(1, config.getQueueCapacity()),
+                parseOverflowPolicy(config.getOverflowPolicy()),
+                Math.max(0, config.getOverflowTimeout()),
+                ImmutableSet.copyOf(config.getLowPriorityEvents()),
+                spillDirectory,
+                config.getSpillSegmentSize());
+    }
+
+    /**
+     * Creates a queue.
+     *
+     * @param capacity Maximum amount of records held in memory
+     * @param overflowPolicy What to do with records once the queue is full
+     * @param overflowTimeout Milliseconds to wait for space with {@link OverflowPolicy#BLOCK}
+     * @param lowPriorityEvents Events dropped first with {@link OverflowPolicy#DROP}
+     * @param spillDirectory Directory holding spilled records
+     * @param spillSegmentSize Amount of records per spill segment
+     */
+    RecordingQueue(int capacity, OverflowPolicy overflowPolicy, long overflowTimeout, Set<String> lowPriorityEvents,
+            Path spillDirectory, int spillSegmentSize) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.overflowTimeout = overflowTimeout;
+        this.lowPriorityEvents = lowPriorityEvents;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+
+        RecordLog recordLog = null;
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            try {
+                // A segment is only read back once the queue is empty so it must always fit
+                recordLog = new RecordLog(spillDirectory, Math.min(capacity, Math.max(1, spillSegmentSize)));
+
+                // Records spilled before the last shutdown are queued again
+                spilling = !recordLog.isEmpty();
+            } catch (IOException ex) {
+                Prism.getInstance().getLogger().error("Failed to open recording spill directory {}", spillDirectory, ex);
+            }
+        }
+
+        this.spill = recordLog;
+    }
 
     /**
      * Adds a new Event to the recording queue.
      *
      * @param record Event to be queued for database write
      */
-    public static void add(final PrismRecord record) {
+    public void add(final PrismRecord record) {
         if (record == null) {
             throw new IllegalArgumentException("null PrismRecord given to Prism recording queue");
         }
 
-        if (record.getDataContainer() == null) {
-            throw new IllegalArgumentException("PrismRecord with null container given to Prism recording queue.");
+        Metrics.recordEvent(record.getEvent());
+
+        // Keep spilling until everything on disk has been queued again so records stay in order
+        if (spilling && spill(record, false)) {
+            return;
+        }
+
+        if (offer(record)) {
+            return;
+        }
+
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                if (queue.offer(record, overflowTimeout, TimeUnit.MILLISECONDS)) {
+                    onQueued(record);
+                    return;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (overflowPolicy == OverflowPolicy.DROP) {
+            if (!isLowPriority(record) && evictLowPriority() && offer(record)) {
+                return;
+            }
+        } else if (overflowPolicy == OverflowPolicy.SPILL && spill(record, true)) {
+            return;
+        }
+
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * Retrieves and removes the next record, spilled records are
+     * read back from disk once the queue has been emptied.
+     *
+     * @return The next record, or null if there are no pending records
+     */
+    public PrismRecord poll() {
+        PrismRecord record = queue.poll();
+        if (record == null && spilling) {
+            refill();
+            record = queue.poll();
+        }
+
+        if (record != null && isLowPriority(record)) {
+            lowPriorityCount.decrementAndGet();
         }
 
-        queue.add(record);
+        return record;
+    }
+
+    /**
+     * Retrieves and removes the next record, waiting up to the given
+     * time for a record to become available.
+     *
+     * @param timeout How long to wait
+     * @param unit Unit of the timeout
+     * @return The next record, or null if the timeout elapsed
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public PrismRecord poll(long timeout, TimeUnit unit) throws InterruptedException {
+        PrismRecord record = poll();
+        if (record == null) {
+            record = queue.poll(timeout, unit);
+
+            if (record != null && isLowPriority(record)) {
+                lowPriorityCount.decrementAndGet();
+            }
+        }
+
+        return record;
+    }
+
+    /**
+     * Returns whether there are no pending records in memory or on disk.
+     *
+     * @return True if there is nothing left to write
+     */
+    public boolean isEmpty() {
+        return queue.isEmpty() && !spilling;
+    }
+
+    /**
+     * Returns the amount of records held in memory.
+     *
+     * @return Current queue size
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the maximum amount of records held in memory.
+     *
+     * @return Queue capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the largest queue size seen since startup.
+     *
+     * @return High-water mark
+     */
+    public int getHighWaterMark() {
+        return highWaterMark.get();
     }
 
     /**
-     * Returns all unsaved events in the queue.
+     * Returns the amount of records discarded because the queue was full.
      *
-     * @return Current unsaved {@link DataContainer} queue
+     * @return Dropped record count
      */
-    public static LinkedBlockingQueue<PrismRecord> getQueue() {
-        return queue;
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the amount of records written to disk because the queue was full.
+     *
+     * @return Spilled record count
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * Logs a warning if records were dropped since the last report.
+     */
+    public synchronized void reportOverflow() {
+        long droppedTotal = dropped.get();
+        long now = System.currentTimeMillis();
+        if (droppedTotal == lastReportedDropped || now - lastReportTime < OVERFLOW_REPORT_INTERVAL) {
+            return;
+        }
+
+        Prism.getInstance().getLogger().warn("Recording queue is full, dropped {} records ({} total). High-water mark: {}/{}",
+                droppedTotal - lastReportedDropped, droppedTotal, getHighWaterMark(), getCapacity());
+
+        lastReportedDropped = droppedTotal;
+        lastReportTime = now;
+    }
+
+    /**
+     * Closes the spill file, records left on disk are queued again on the next startup.
+     */
+    public void close() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ex) {
+                Prism.getInstance().getLogger().error("Failed to close recording spill file", ex);
+            }
+        }
+    }
+
+    private boolean offer(PrismRecord record) {
+        if (queue.offer(record)) {
+            onQueued(record);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void onQueued(PrismRecord record) {
+        if (isLowPriority(record)) {
+            lowPriorityCount.incrementAndGet();
+        }
+
+        int size = queue.size();
+        if (size > highWaterMark.get()) {
+            highWaterMark.accumulateAndGet(size, Math::max);
+        }
+    }
+
+    private boolean isLowPriority(PrismRecord record) {
+        return lowPriorityEvents.contains(record.getEvent());
+    }
+
+    /**
+     * Removes the oldest low priority record from the queue.
+     *
+     * @return True if a record was removed
+     */
+    private boolean evictLowPriority() {
+        // Avoid walking the queue when there is nothing to evict
+        if (lowPriorityCount.get() <= 0) {
+            return false;
+        }
+
+        Iterator<PrismRecord> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (isLowPriority(iterator.next())) {
+                iterator.remove();
+                lowPriorityCount.decrementAndGet();
+                dropped.incrementAndGet();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Writes a record to the spill file.
+     *
+     * @param record Record to spill
+     * @param start Whether to start spilling if not already
+     * @return True if the record was written
+     */
+    private boolean spill(PrismRecord record, boolean start) {
+        if (spill == null) {
+            return false;
+        }
+
+        synchronized (spill) {
+            if (!spilling && !start) {
+                return false;
+            }
+
+            try {
+                spill.append(record.getDataContainer());
+                spilling = true;
+                spilled.incrementAndGet();
+                return true;
+            } catch (IOException ex) {
+                Prism.getInstance().getLogger().error("Failed to spill record to disk", ex);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Moves the oldest spilled segment back into the queue.
+     */
+    private void refill() {
+        if (spill == null) {
+            return;
+        }
+
+        try {
+            Optional<Path> segment = spill.oldest();
+            if (segment.isPresent()) {
+                List<DataContainer> containers = spill.read(segment.get());
+                spill.delete(segment.get());
+
+                for (DataContainer container : containers) {
+                    if (!offer(PrismRecord.from(container))) {
+                        dropped.incrementAndGet();
+                    }
+                }
+            }
+
+            synchronized (spill) {
+                if (spill.isEmpty()) {
+                    spilling = false;
+                }
+            }
+        } catch (IOException ex) {
+            Prism.getInstance().getLogger().error("Failed to read spilled records", ex);
+        }
+    }
+
+    private static OverflowPolicy parseOverflowPolicy(String value) {
+        try {
+            return OverflowPolicy.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException ex) {
+            Prism.getInstance().getLogger().warn("Invalid overflow policy {}, using {}", value, OverflowPolicy.BLOCK);
+            return OverflowPolicy.BLOCK;
+        }
     }
-}
\ No newline at end of file
+}
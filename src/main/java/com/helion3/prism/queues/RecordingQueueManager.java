@@ -23,54 +23,236 @@
  */
 package com.helion3.prism.queues;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import com.helion3.prism.api.records.PrismRecord;
-import com.helion3.prism.api.records.PrismRecordPreSaveEvent;
-import org.spongepowered.api.Sponge;
-import org.spongepowered.api.data.DataContainer;
+import com.helion3.prism.configuration.category.RecordingCategory;
+import com.helion3.prism.metrics.Metrics;
+import com.helion3.prism.util.DataQueries;
+import org.apache.commons.lang3.StringUtils;
+import org.spongepowered.api.data.DataView;
 
 import com.helion3.prism.Prism;
-import org.spongepowered.api.event.cause.Cause;
-import org.spongepowered.api.event.cause.EventContext;
-import org.spongepowered.api.event.cause.EventContextKeys;
-import org.spongepowered.api.plugin.PluginContainer;
+import org.spongepowered.api.scheduler.Task;
 
+/**
+ * Drains the {@link RecordingQueue} and hands records to a pool of
+ * {@link RecordingWriter}s.
+ *
+ * Records are partitioned by world, or by chunk, so each partition is
+ * always written by the same writer and keeps its insert order. Batches
+ * which fail to write are journaled to disk and replayed from here once
+ * storage is available again.
+ */
 public class RecordingQueueManager implements Runnable {
 
-    @Override
-    public synchronized void run() {
-        List<DataContainer> eventsSaveBatch = new ArrayList<>();
+    private static final long POLL_INTERVAL = 250;
+    private static final long HOUSEKEEPING_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final List<RecordingWriter> writers = new ArrayList<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private volatile boolean started = false;
+    private boolean partitionByChunk = false;
+    private RecordingJournal journal;
+
+    /**
+     * Starts the writer pool and the queue manager, both run until the server stops.
+     */
+    public synchronized void start() {
+        openJournal();
+
+        RecordingCategory config = Prism.getInstance().getConfig().getRecordingCategory();
+        int workers = Math.max(1, config.getWriterWorkers());
+        int capacity = Math.max(1, config.getBatchSize()) * 2;
+        partitionByChunk = StringUtils.equalsIgnoreCase(config.getWriterPartition(), "chunk");
 
-        // Assume we're iterating everything in the queue
-        while (!RecordingQueue.getQueue().isEmpty()) {
-            // Poll the next event, append to list
-            PrismRecord record = RecordingQueue.getQueue().poll();
+        int maximumPoolSize = Prism.getInstance().getConfig().getStorageCategory().getMaximumPoolSize();
+        if (workers >= maximumPoolSize) {
+            Prism.getInstance().getLogger().warn("writer-workers ({}) should be lower than maximum-pool-size ({}) "
+                    + "so lookups can still get a connection", workers, maximumPoolSize);
+        }
+
+        for (int i = 0; i < workers; i++) {
+            RecordingWriter writer = new RecordingWriter(capacity, journal);
+            writers.add(writer);
+
+            Task.builder()
+                    .async()
+                    .name("PrismRecordingWriter-" + i)
+                    .execute(writer)
+                    .submit(Prism.getInstance().getPluginContainer());
+        }
+
+        Task.builder()
+                .async()
+                .name("PrismRecordingQueueManager")
+                .execute(this)
+                .submit(Prism.getInstance().getPluginContainer());
+    }
 
-            if (record != null) {
-                // Prepare PrismRecord for sending to a PrismRecordEvent
-                PluginContainer plugin = Prism.getInstance().getPluginContainer();
-                EventContext eventContext = EventContext.builder().add(EventContextKeys.PLUGIN, plugin).build();
+    @Override
+    public void run() {
+        started = true;
 
-                PrismRecordPreSaveEvent preSaveEvent = new PrismRecordPreSaveEvent(record,
-                    Cause.of(eventContext, plugin));
+        try {
+            long nextHousekeeping = 0;
+            while (running) {
+                PrismRecord record = Prism.getInstance().getRecordingQueue().poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    Metrics.recordQueueLag(System.currentTimeMillis() - record.getCreated());
+                    getWriter(record).put(record);
+                }
 
-                // Tell Sponge that this PrismRecordEvent has occurred
-                Sponge.getEventManager().post(preSaveEvent);
+                if (System.nanoTime() - nextHousekeeping >= 0) {
+                    if (journal != null) {
+                        journal.replay(Prism.getInstance().getStorageAdapter());
+                    }
 
-                if (!preSaveEvent.isCancelled()) {
-                    eventsSaveBatch.add(record.getDataContainer());
+                    Prism.getInstance().getRecordingQueue().reportOverflow();
+                    Prism.getInstance().getRecordSampler().reportSampled();
+                    nextHousekeeping = System.nanoTime() + HOUSEKEEPING_INTERVAL;
                 }
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().error("Recording queue manager stopped unexpectedly", ex);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Stops the queue manager, then waits for each writer to finish
+     * the records already handed to it.
+     *
+     * @param timeout How long to wait for each step
+     * @param unit Unit of the timeout
+     * @return True if the queue manager and all writers have stopped
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        boolean result = !started || stopped.await(timeout, unit);
+
+        for (RecordingWriter writer : writers) {
+            result &= writer.stop(timeout, unit);
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes all pending records on the calling thread.
+     */
+    public synchronized void flush() {
+        if (writers.isEmpty()) {
+            return;
+        }
+
+        List<List<PrismRecord>> partitions = new ArrayList<>();
+        for (int i = 0; i < writers.size(); i++) {
+            partitions.add(new ArrayList<>());
         }
 
-        if (eventsSaveBatch.size() > 0) {
+        PrismRecord record;
+        while ((record = Prism.getInstance().getRecordingQueue().poll()) != null) {
+            partitions.get(getPartition(record)).add(record);
+        }
+
+        for (int i = 0; i < writers.size(); i++) {
+            writers.get(i).flush(partitions.get(i));
+        }
+    }
+
+    /**
+     * Closes the journal, records left in it are replayed on the next startup.
+     */
+    public synchronized void close() {
+        if (journal != null) {
             try {
-                Prism.getInstance().getStorageAdapter().records().write(eventsSaveBatch);
-            } catch (Exception ignored) {
-                // @todo handle failures
+                journal.close();
+            } catch (IOException ex) {
+                Prism.getInstance().getLogger().error("Failed to close recording journal", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the writers of each partition.
+     *
+     * @return List of {@link RecordingWriter}
+     */
+    public List<RecordingWriter> getWriters() {
+        return writers;
+    }
+
+    /**
+     * Opens the journal if not already open.
+     */
+    private synchronized void openJournal() {
+        if (journal != null) {
+            return;
+        }
+
+        RecordingCategory config = Prism.getInstance().getConfig().getRecordingCategory();
+        Path directory = Prism.getInstance().getPath().getParent().resolve("journal");
+        try {
+            journal = new RecordingJournal(directory, Math.max(1, config.getBatchSize()),
+                    TimeUnit.SECONDS.toMillis(config.getJournalMaxRetryDelay()));
+        } catch (IOException ex) {
+            Prism.getInstance().getLogger().error("Failed to open recording journal {}", directory, ex);
+        }
+    }
+
+    private RecordingWriter getWriter(PrismRecord record) {
+        return writers.get(getPartition(record));
+    }
+
+    /**
+     * Determines the partition of a record from its world and, if
+     * configured, its chunk.
+     *
+     * @param record Record to partition
+     * @return Partition index
+     */
+    private int getPartition(PrismRecord record) {
+        if (writers.size() == 1) {
+            return 0;
+        }
+
+        int hash;
+        int chunkX;
+        int chunkZ;
+        if (record.getWorldUuid() != null) {
+            hash = record.getWorldUuid().hashCode();
+            chunkX = record.getX() >> 4;
+            chunkZ = record.getZ() >> 4;
+        } else {
+            // Records read back from disk only have their container
+            Optional<DataView> location = record.getDataContainer().getView(DataQueries.Location);
+            if (!location.isPresent()) {
+                return 0;
             }
+
+            hash = location.get().getString(DataQueries.WorldUuid).map(UUID::fromString).map(UUID::hashCode).orElse(0);
+            chunkX = location.get().getInt(DataQueries.X).orElse(0) >> 4;
+            chunkZ = location.get().getInt(DataQueries.Z).orElse(0) >> 4;
         }
+
+        if (partitionByChunk) {
+            hash = 31 * hash + chunkX;
+            hash = 31 * hash + chunkZ;
+        }
+
+        return Math.floorMod(hash, writers.size());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,325 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.helion3.prism.queues;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.helion3.prism.Prism;
+import com.helion3.prism.api.records.PrismRecord;
+import com.helion3.prism.api.records.PrismRecordBatchPreSaveEvent;
+import com.helion3.prism.api.records.PrismRecordPreSaveEvent;
+import com.helion3.prism.configuration.category.RecordingCategory;
+import com.helion3.prism.metrics.Metrics;
+import com.helion3.prism.util.EventUtil;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.event.cause.Cause;
+import org.spongepowered.api.event.cause.EventContext;
+import org.spongepowered.api.event.cause.EventContextKeys;
+import org.spongepowered.api.plugin.PluginContainer;
+
+/**
+ * Writes one partition of the recorded events to storage.
+ *
+ * A batch is written as soon as it reaches the configured batch size or
+ * its oldest record has waited for the maximum linger time, whichever
+ * comes first. Records are written in the order they were received,
+ * except for records held back by the coalescer to be merged.
+ */
+public class RecordingWriter implements Runnable {
+
+    private static final long MINIMUM_POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final LinkedBlockingQueue<PrismRecord> queue;
+    private final RecordingJournal journal;
+    private final RecordCoalescer coalescer;
+    private final Cause cause;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private volatile boolean started = false;
+
+    /**
+     * Creates a writer for a single partition.
+     *
+     * @param capacity Maximum amount of records waiting for this writer
+     * @param journal Journal for failed batches, may be null
+     */
+    public RecordingWriter(int capacity, RecordingJournal journal) {
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.journal = journal;
+
+        RecordingCategory config = Prism.getInstance().getConfig().getRecordingCategory();
+        if (config.getCoalesceWindow() > 0 && !config.getCoalesceEvents().isEmpty()) {
+            long window = TimeUnit.SECONDS.toNanos(config.getCoalesceWindow());
+            this.coalescer = new RecordCoalescer(new HashSet<>(config.getCoalesceEvents()), window, capacity);
+        } else {
+            this.coalescer = null;
+        }
+
+        // The cause is identical for every record so it's only built once
+        PluginContainer plugin = Prism.getInstance().getPluginContainer();
+        EventContext eventContext = EventContext.builder().add(EventContextKeys.PLUGIN, plugin).build();
+        this.cause = Cause.of(eventContext, plugin);
+    }
+
+    /**
+     * Hands a record to this writer, waiting for space if needed.
+     *
+     * @param record Record to write
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void put(PrismRecord record) throws InterruptedException {
+        queue.put(record);
+    }
+
+    /**
+     * Returns the amount of records waiting for this writer.
+     *
+     * @return Pending record count
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public void run() {
+        started = true;
+
+        try {
+            // Keep going until everything handed to us has been written
+            while (running || !queue.isEmpty()) {
+                RecordingCategory config = Prism.getInstance().getConfig().getRecordingCategory();
+                int batchSize = Math.max(1, config.getBatchSize());
+                long maxLinger = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getMaxLinger()));
+
+                writeAll(coalesce(collect(batchSize, maxLinger)), batchSize);
+            }
+
+            // Release anything still held back by the coalescer
+            flush(new ArrayList<>());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().error("Recording writer stopped unexpectedly", ex);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Stops the writer once all pending records have been written.
+     *
+     * @param timeout How long to wait
+     * @param unit Unit of the timeout
+     * @return True if the writer has stopped
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        return !started || stopped.await(timeout, unit);
+    }
+
+    /**
+     * Writes all pending records, followed by the given records, on the calling thread.
+     *
+     * @param records Additional records to write
+     */
+    public synchronized void flush(List<PrismRecord> records) {
+        int batchSize = Math.max(1, Prism.getInstance().getConfig().getRecordingCategory().getBatchSize());
+
+        List<PrismRecord> pending = new ArrayList<>();
+        if (coalescer != null) {
+            coalescer.drainAll(pending);
+        }
+
+        queue.drainTo(pending);
+        pending.addAll(records);
+
+        writeAll(pending, batchSize);
+    }
+
+    /**
+     * Returns the amount of records held back by the coalescer.
+     *
+     * @return Coalescing record count
+     */
+    public synchronized int getCoalescing() {
+        return coalescer != null ? coalescer.size() : 0;
+    }
+
+    /**
+     * Passes records through the coalescer, if enabled.
+     *
+     * @param records Collected records
+     * @return Records which are ready to be written
+     */
+    private synchronized List<PrismRecord> coalesce(List<PrismRecord> records) {
+        if (coalescer == null) {
+            return records;
+        }
+
+        List<PrismRecord> ready = new ArrayList<>(records.size());
+        for (PrismRecord record : records) {
+            if (!coalescer.offer(record, ready)) {
+                ready.add(record);
+            }
+        }
+
+        coalescer.drainExpired(ready);
+        return ready;
+    }
+
+    private void writeAll(List<PrismRecord> records, int batchSize) {
+        for (int i = 0; i < records.size(); i += batchSize) {
+            write(records.subList(i, Math.min(i + batchSize, records.size())));
+        }
+    }
+
+    /**
+     * Waits for the first record, then collects records until the batch
+     * is full or the first record has lingered for too long since it was saved.
+     *
+     * @param batchSize Maximum amount of records
+     * @param maxLinger Maximum nanoseconds to wait for the batch to fill
+     * @return Collected records, empty if none arrived
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private List<PrismRecord> collect(int batchSize, long maxLinger) throws InterruptedException {
+        List<PrismRecord> batch = new ArrayList<>();
+
+        PrismRecord record = queue.poll(Math.max(maxLinger, MINIMUM_POLL_INTERVAL), TimeUnit.NANOSECONDS);
+        if (record == null) {
+            return batch;
+        }
+
+        batch.add(record);
+
+        // Lingering starts when the record was saved, it may already have waited in the queues
+        long waited = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - record.getCreated()));
+        long deadline = System.nanoTime() + maxLinger - waited;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+
+            // Take whatever is already queued once the linger time is up
+            record = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (record == null) {
+                break;
+            }
+
+            batch.add(record);
+        }
+
+        return batch;
+    }
+
+    private void write(List<PrismRecord> records) {
+        List<DataContainer> eventsSaveBatch = new ArrayList<>(records.size());
+
+        // Let listeners filter the whole batch with a single dispatch
+        if (EventUtil.hasListeners(PrismRecordBatchPreSaveEvent.class)) {
+            PrismRecordBatchPreSaveEvent batchEvent = new PrismRecordBatchPreSaveEvent(new ArrayList<>(records), cause);
+            Sponge.getEventManager().post(batchEvent);
+
+            if (batchEvent.isCancelled()) {
+                return;
+            }
+
+            records = batchEvent.getPrismRecords();
+        }
+
+        boolean postRecordEvents = EventUtil.hasListeners(PrismRecordPreSaveEvent.class);
+        for (PrismRecord record : records) {
+            if (postRecordEvents) {
+                PrismRecordPreSaveEvent preSaveEvent = new PrismRecordPreSaveEvent(record, cause);
+
+                // Tell Sponge that this PrismRecordEvent has occurred
+                Sponge.getEventManager().post(preSaveEvent);
+
+                if (preSaveEvent.isCancelled()) {
+                    continue;
+                }
+            }
+
+            eventsSaveBatch.add(record.getDataContainer());
+        }
+
+        if (eventsSaveBatch.isEmpty()) {
+            return;
+        }
+
+        Metrics.recordBatch(eventsSaveBatch.size());
+
+        if (journal == null) {
+            store(eventsSaveBatch);
+            return;
+        }
+
+        journal.getWriteLock().lock();
+        try {
+            // Older records are waiting in the journal, they have to be written first
+            if (journal.isPending()) {
+                journal(eventsSaveBatch);
+                return;
+            }
+
+            store(eventsSaveBatch);
+        } finally {
+            journal.getWriteLock().unlock();
+        }
+    }
+
+    private void store(List<DataContainer> containers) {
+        try {
+            Prism.getInstance().getStorageAdapter().records().write(containers);
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().warn("Failed to write {} records, journaling them for retry", containers.size(), ex);
+            Metrics.recordWriteFailure(containers.size());
+            journal(containers);
+
+            if (journal != null) {
+                journal.backoff();
+            }
+        }
+    }
+
+    private void journal(List<DataContainer> containers) {
+        if (journal == null) {
+            Prism.getInstance().getLogger().error("Recording journal is unavailable, {} records were lost", containers.size());
+            return;
+        }
+
+        try {
+            journal.append(containers);
+            Metrics.recordJournaled(containers.size());
+        } catch (IOException ex) {
+            Prism.getInstance().getLogger().error("Failed to journal records, {} records were lost", containers.size(), ex);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.helion3.prism.Prism;
+import com.helion3.prism.api.records.ActionableResult;
+import com.helion3.prism.api.records.BlockResult;
+import com.helion3.prism.api.records.EntityRemovalResult;
+import com.helion3.prism.api.records.Result;
+import com.helion3.prism.util.DataQueries;
+import org.spongepowered.api.block.BlockSnapshot;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.data.Transaction;
+import org.spongepowered.api.data.persistence.DataFormats;
+import org.spongepowered.api.entity.Entity;
+import org.spongepowered.api.world.Location;
+import org.spongepowered.api.world.World;
+
+/**
+ * Keeps the changes of each player's last rollback or restore so they can
+ * be undone.
+ *
+ * Changes are stored as deflated NBT rather than as the snapshots and
+ * entities themselves, each with the ids of the records it applied so
+ * their rolled back state can be reverted along with it. Once the history
+ * in memory grows past the memory limit, the least recently used is moved
+ * to a file of the same format, which is read back and deleted when undone.
+ * Files left by a previous run are deleted on startup.
+ */
+public class UndoLog {
+
+    private static final String EXTENSION = ".undo";
+
+    private final Path directory;
+    private final Map<UUID, byte[]> logs = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryUsage = 0;
+
+    /**
+     * @param directory Directory history spilled from memory is written to
+     */
+    public UndoLog(Path directory) {
+        this.directory = directory;
+        clear();
+    }
+
+    /**
+     * Takes what is needed to undo the applied changes of a rollback or
+     * restore. Must be called from the main thread, as live entities are
+     * read for their id and position. Block snapshots are immutable and
+     * are serialized later by {@link #put}.
+     *
+     * @param actionResults Results in the order they were applied
+     * @param changeRecordIds Ids of the records each applied result settled
+     * @return Changes which can be undone
+     */
+    public static List<Change> capture(List<ActionableResult> actionResults, Map<ActionableResult, List<Object>> changeRecordIds) {
+        int maximum = Math.max(0, Prism.getInstance().getConfig().getLimitCategory().getUndoMaximumChanges());
+
+        List<Change> changes = new ArrayList<>();
+        for (ActionableResult actionResult : actionResults) {
+            if (changes.size() >= maximum) {
+                break;
+            }
+
+            if (!actionResult.getTransaction().isPresent()) {
+                continue;
+            }
+
+            Transaction<?> transaction = actionResult.getTransaction().get();
+            List<Object> recordIds = changeRecordIds.getOrDefault(actionResult, Collections.emptyList());
+
+            if (transaction.getOriginal() instanceof BlockSnapshot) {
+                changes.add(new Change((BlockSnapshot) transaction.getOriginal(), null, recordIds));
+            } else if (transaction.getFinal() instanceof Entity) {
+                Entity entity = (Entity) transaction.getFinal();
+                Location<World> location = entity.getLocation();
+
+                DataContainer container = DataContainer.createNew();
+                container.set(DataQueries.Location, getLocation(location.getExtent().getUniqueId(), location.getX(), location.getY(), location.getZ()));
+                container.set(DataQueries.Id, entity.getUniqueId().toString());
+                changes.add(new Change(null, container, recordIds));
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * Replaces a player's history with the changes of a rollback or restore.
+     * Serializes every change, so it shouldn't be called from the main thread.
+     *
+     * @param player Player UUID
+     * @param changes Changes taken by {@link #capture}
+     * @param rolledBack True for a rollback, false for a restore
+     * @return Number of changes which can be undone
+     * @throws IOException If the changes can't be serialized
+     */
+    public int put(UUID player, List<Change> changes, boolean rolledBack) throws IOException {
+        List<DataContainer> containers = new ArrayList<>();
+        for (Change change : changes) {
+            toContainer(change).ifPresent(container -> {
+                if (!change.recordIds.isEmpty()) {
+                    container.set(DataQueries.RecordIds, change.recordIds);
+                }
+
+                containers.add(container);
+            });
+        }
+
+        byte[] log = containers.isEmpty() ? null : encode(containers, rolledBack);
+
+        synchronized (this) {
+            remove(player);
+
+            if (log != null) {
+                logs.put(player, log);
+                memoryUsage += log.length;
+                evict();
+            }
+        }
+
+        return containers.size();
+    }
+
+    /**
+     * Removes a player's history, returning the changes which undo it in the
+     * order they should be applied. Reads from disk if the history was moved
+     * there, so it shouldn't be called from the main thread.
+     *
+     * @param player Player UUID
+     * @return The player's last rollback or restore, empty if there is none
+     * @throws IOException If the history can't be read
+     */
+    public Optional<History> take(UUID player) throws IOException {
+        byte[] log;
+        synchronized (this) {
+            log = logs.remove(player);
+            if (log != null) {
+                memoryUsage -= log.length;
+            } else {
+                Path file = getFile(player);
+                if (!Files.exists(file)) {
+                    return Optional.empty();
+                }
+
+                log = Files.readAllBytes(file);
+                Files.delete(file);
+            }
+        }
+
+        return Optional.of(decode(log));
+    }
+
+    /**
+     * Moves the least recently used history to disk until memory usage is within the limit.
+     */
+    private void evict() {
+        long limit = Math.max(0, Prism.getInstance().getConfig().getLimitCategory().getUndoMemoryLimit()) * 1024L * 1024L;
+
+        Iterator<Map.Entry<UUID, byte[]>> iterator = logs.entrySet().iterator();
+        while (memoryUsage > limit && iterator.hasNext()) {
+            Map.Entry<UUID, byte[]> entry = iterator.next();
+
+            try {
+                Files.createDirectories(directory);
+                Files.write(getFile(entry.getKey()), entry.getValue());
+            } catch (IOException ex) {
+                Prism.getInstance().getLogger().error("Failed to move undo history to disk, it can no longer be undone", ex);
+            }
+
+            memoryUsage -= entry.getValue().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Deletes the history moved to disk by a previous run, as the history
+     * in memory it belonged with is gone.
+     */
+    private void clear() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ex) {
+            Prism.getInstance().getLogger().error("Failed to clear undo history {}", directory, ex);
+        }
+    }
+
+    private void remove(UUID player) throws IOException {
+        byte[] log = logs.remove(player);
+        if (log != null) {
+            memoryUsage -= log.length;
+        }
+
+        Files.deleteIfExists(getFile(player));
+    }
+
+    private Path getFile(UUID player) {
+        return directory.resolve(player.toString() + EXTENSION);
+    }
+
+    /**
+     * Describes how to revert a single change, in the same layout as a
+     * record so it can be applied as a rollback.
+     */
+    private static Optional<DataContainer> toContainer(Change change) {
+        if (change.original != null) {
+            BlockSnapshot snapshot = change.original;
+            if (!snapshot.getLocation().isPresent()) {
+                return Optional.empty();
+            }
+
+            Location<World> location = snapshot.getLocation().get();
+            DataContainer block = snapshot.toContainer();
+            block.remove(DataQueries.Position);
+            block.remove(DataQueries.WorldUuid);
+
+            Optional<DataView> unsafeData = block.getView(DataQueries.UnsafeData);
+            if (unsafeData.isPresent()) {
+                unsafeData.get().remove(DataQueries.X);
+                unsafeData.get().remove(DataQueries.Y);
+                unsafeData.get().remove(DataQueries.Z);
+                block.set(DataQueries.UnsafeData, unsafeData.get());
+            }
+
+            DataContainer container = DataContainer.createNew();
+            container.set(DataQueries.Location, getLocation(location.getExtent().getUniqueId(), location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+            container.set(DataQueries.OriginalBlock, block);
+            return Optional.of(container);
+        }
+
+        return Optional.ofNullable(change.entity);
+    }
+
+    private static DataContainer getLocation(UUID worldUuid, Object x, Object y, Object z) {
+        DataContainer location = DataContainer.createNew();
+        location.set(DataQueries.WorldUuid, worldUuid.toString());
+        location.set(DataQueries.X, x);
+        location.set(DataQueries.Y, y);
+        location.set(DataQueries.Z, z);
+        return location;
+    }
+
+    private static byte[] encode(List<DataContainer> changes, boolean rolledBack) throws IOException {
+        DataContainer header = DataContainer.createNew();
+        header.set(DataQueries.RolledBack, rolledBack);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED)))) {
+            DataFormats.NBT.writeTo(output, header);
+            output.writeInt(changes.size());
+            for (DataContainer change : changes) {
+                DataFormats.NBT.writeTo(output, change);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Changes are returned in reverse, so the earliest change made to a
+     * block is undone last and leaves the block as it was to begin with.
+     */
+    private static History decode(byte[] log) throws IOException {
+        try (DataInputStream input = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(log)))) {
+            DataContainer header = DataFormats.NBT.readFrom(input);
+            int count = input.readInt();
+
+            List<Result> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                DataContainer change = DataFormats.NBT.readFrom(input);
+
+                Result result = change.contains(DataQueries.Id) ? new EntityRemovalResult() : new BlockResult();
+                result.data = change;
+                results.add(result);
+            }
+
+            Collections.reverse(results);
+            return new History(results, header.getBoolean(DataQueries.RolledBack).orElse(true));
+        }
+    }
+
+    /**
+     * A single applied change, holding only data which is safe to read
+     * off the main thread.
+     */
+    public static final class Change {
+        private final BlockSnapshot original;
+        private final DataContainer entity;
+        private final List<Object> recordIds;
+
+        private Change(BlockSnapshot original, DataContainer entity, List<Object> recordIds) {
+            this.original = original;
+            this.entity = entity;
+            this.recordIds = recordIds;
+        }
+    }
+
+    /**
+     * A player's last rollback or restore, as taken from the log.
+     */
+    public static class History {
+        private final List<Result> results;
+        private final boolean rolledBack;
+
+        private History(List<Result> results, boolean rolledBack) {
+            this.results = results;
+            this.rolledBack = rolledBack;
+        }
+
+        /**
+         * @return Results reverting the changes, in the order they should be applied
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * @return True if this was a rollback, false for a restore
+         */
+        public boolean isRolledBack() {
+            return rolledBack;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the extra data of a record for storage in a binary column.
+ *
+ * The JSON is deflated with a preset dictionary of keys and values found
+ * in most records, which matters more than the compression level for
+ * payloads this small. The first byte identifies the format so the
+ * dictionary can be changed later without breaking stored values.
+ */
+public final class ExtraDataCodec {
+
+    private static final byte FORMAT_DEFLATE_V1 = 1;
+
+    /**
+     * Common substrings, the most frequent last as they're cheapest to reference.
+     */
+    private static final byte[] DICTIONARY = (""
+            + "{\"Entity\":{\"EntityType\":\"minecraft:\",\"UnsafeData\":{\"Pos\":[\"Rotation\":[\"Motion\":["
+            + "\"Health\":\"CustomName\":\"Attributes\":[{\"Base\":\"Name\":\"generic.\"},"
+            + "\"Container\":{\"ItemType\":\"minecraft:\",\"Count\":1,\"UnsafeDamage\":0,\"Quantity\":"
+            + "\"FinalSignData\":{\"Text\":[\"{\\\"text\\\":\\\"\\\"}\"],"
+            + "\"WorldUuid\":\"\",\"Position\":{\"X\":,\"Y\":,\"Z\":}},"
+            + "{\"Original\":{\"BlockState\":{\"BlockState\":\"minecraft:air\",\"ContentVersion\":1},\"ContentVersion\":1,"
+            + "\"Replacement\":{\"BlockState\":{\"BlockState\":\"minecraft:\",\"ContentVersion\":1},\"ContentVersion\":1,")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private ExtraDataCodec() {
+    }
+
+    /**
+     * Compresses extra data.
+     *
+     * @param json Extra data JSON
+     * @return Compressed bytes
+     */
+    public static byte[] encode(String json) {
+        byte[] input = json.getBytes(StandardCharsets.UTF_8);
+
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(input);
+        deflater.finish();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 16);
+        output.write(FORMAT_DEFLATE_V1);
+
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Restores extra data compressed by {@link #encode(String)}.
+     *
+     * @param data Compressed bytes
+     * @return Extra data JSON
+     * @throws IllegalArgumentException If the data is corrupt or of an unknown format
+     */
+    public static String decode(byte[] data) {
+        if (data.length == 0 || data[0] != FORMAT_DEFLATE_V1) {
+            throw new IllegalArgumentException("Unknown extra data format");
+        }
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(data, 1, data.length - 1);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[1024];
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished() && inflater.needsInput()) {
+                    throw new IllegalArgumentException("Truncated extra data");
+                }
+
+                output.write(buffer, 0, length);
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("Corrupt extra data", ex);
+        }
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
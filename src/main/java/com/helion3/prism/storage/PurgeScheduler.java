@@ -0,0 +1,231 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage;
+
+import java.time.LocalTime;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.spongepowered.api.scheduler.Task;
+
+import com.helion3.prism.Prism;
+import com.helion3.prism.api.query.FieldCondition;
+import com.helion3.prism.api.query.MatchRule;
+import com.helion3.prism.api.query.Query;
+import com.helion3.prism.api.storage.StorageAdapterRecords;
+import com.helion3.prism.configuration.category.StorageCategory;
+import com.helion3.prism.metrics.Metrics;
+import com.helion3.prism.util.DataQueries;
+import com.helion3.prism.util.DateUtil;
+
+/**
+ * Removes expired records a little at a time.
+ *
+ * Every second the scheduler deletes up to the configured rate in chunks
+ * of the purge batch limit, using {@link StorageAdapterRecords#delete(Query)}.
+ * Once nothing is left it waits for the purge interval. Purging only runs
+ * within the configured hours and backs off while recorded events wait
+ * in the queue, so it doesn't compete with writes.
+ */
+public class PurgeScheduler {
+
+    private static final long MINIMUM_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAXIMUM_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+    private final String name;
+    private final StorageAdapterRecords records;
+    private final Logger logger;
+    private final String expiration;
+    private final int chunkSize;
+    private final int rate;
+    private final long interval;
+    private final long maximumQueueLag;
+    private final int[] hours;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private Task task;
+    private long nextRun;
+    private long backoff;
+    private long purged;
+
+    /**
+     * @param name Task name
+     * @param records Records of the storage adapter
+     */
+    public PurgeScheduler(String name, StorageAdapterRecords records) {
+        this(name, records, Prism.getInstance().getLogger(), Prism.getInstance().getConfig().getStorageCategory());
+    }
+
+    PurgeScheduler(String name, StorageAdapterRecords records, Logger logger, StorageCategory storage) {
+        this.name = name;
+        this.records = records;
+        this.logger = logger;
+        this.expiration = storage.getExpireRecords();
+        this.chunkSize = Math.max(1, storage.getPurgeBatchLimit());
+        this.rate = Math.max(1, storage.getPurgeRate());
+        this.interval = TimeUnit.MINUTES.toMillis(Math.max(1, storage.getPurgeInterval()));
+        this.maximumQueueLag = storage.getPurgeMaximumQueueLag();
+        this.hours = parseHours(storage.getPurgeHours());
+    }
+
+    /**
+     * Starts purging in the background.
+     */
+    public void start() {
+        task = Task.builder()
+            .async()
+            .name(name)
+            .interval(1, TimeUnit.SECONDS)
+            .execute(this::tick)
+            .submit(Prism.getInstance().getPluginContainer());
+    }
+
+    /**
+     * Stops purging, a chunk being deleted is finished first.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private void tick() {
+        // Deleting can take longer than a second
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try {
+            if (now >= nextRun && isWithinHours(LocalTime.now().getHour(), hours)) {
+                purge(now, Metrics.getQueueLag().getSnapshot().getPercentile(95));
+            }
+        } catch (Exception ex) {
+            logger.error("Encountered an error while purging records", ex);
+            nextRun = now + interval;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Deletes up to the rate of expired records, unless recording lags behind.
+     *
+     * @param now Current time in milliseconds
+     * @param lag 95th percentile of the recording queue lag in milliseconds
+     * @throws Exception If records can't be deleted
+     */
+    void purge(long now, long lag) throws Exception {
+        if (lag > maximumQueueLag) {
+            backoff = Math.min(Math.max(backoff * 2, MINIMUM_BACKOFF), MAXIMUM_BACKOFF);
+            nextRun = now + backoff;
+            logger.debug("Recording queue lag is {}ms, pausing purge for {}ms", lag, backoff);
+            return;
+        }
+
+        backoff = 0;
+
+        Date date = DateUtil.parseTimeStringToDate(expiration, false);
+        if (date == null) {
+            throw new IllegalArgumentException("Failed to parse expiration");
+        }
+
+        for (int budget = rate; budget > 0; ) {
+            Query query = new Query();
+            query.addCondition(FieldCondition.of(DataQueries.Created, MatchRule.LESS_THAN_EQUAL, date));
+            query.setLimit(Math.min(chunkSize, budget));
+
+            int deleted = records.delete(query).getDeleted();
+            if (deleted == 0) {
+                if (purged > 0) {
+                    logger.info("Purged {} expired records", purged);
+                }
+
+                purged = 0;
+                nextRun = now + interval;
+                return;
+            }
+
+            purged += deleted;
+            budget -= deleted;
+        }
+    }
+
+    /**
+     * Returns when purging may run next.
+     *
+     * @return Time in milliseconds
+     */
+    long getNextRun() {
+        return nextRun;
+    }
+
+    /**
+     * Parses an hour range such as "2-6".
+     *
+     * @param value Configured value
+     * @return First and last hour, null for any time
+     */
+    static int[] parseHours(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+
+        String[] parts = value.trim().split("\\s*-\\s*");
+        try {
+            int start = Integer.parseInt(parts[0]);
+            int end = Integer.parseInt(parts[1]);
+            if (parts.length == 2 && start >= 0 && start < 24 && end >= 0 && end <= 24) {
+                return new int[]{start, end};
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            // Reported below
+        }
+
+        Prism.getInstance().getLogger().warn("Invalid purge hours {}, purging at any time", value);
+        return null;
+    }
+
+    /**
+     * Checks whether an hour falls within a range, which may wrap around midnight.
+     *
+     * @param hour Hour of the day
+     * @param hours First hour, inclusive, and last hour, exclusive
+     * @return True if purging may run
+     */
+    static boolean isWithinHours(int hour, int[] hours) {
+        if (hours == null) {
+            return true;
+        }
+
+        if (hours[0] <= hours[1]) {
+            return hour >= hours[0] && hour < hours[1];
+        }
+
+        return hour >= hours[0] || hour < hours[1];
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.helion3.prism.Prism;
+
+/**
+ * Maps repeated strings such as event names, targets and causes to small
+ * integer ids stored in a dictionary table.
+ *
+ * Both directions are cached in memory up to a limit, past which the
+ * least recently used values are read from the table again. New values
+ * are committed on their own connection ahead of the record write, so a
+ * failed write may leave an unused value behind.
+ *
+ * Values are case sensitive, so free text targets such as container
+ * titles keep their own spelling. Namespaced ids are always stored in
+ * lower case, so looking them up ignores case.
+ */
+public class SQLDictionary {
+
+    private static final int MAXIMUM_CACHED = 100000;
+
+    private final ConnectionProvider connectionProvider;
+    private final String table;
+    private final String insertSql;
+    private final Cache<String, Integer> ids = CacheBuilder.newBuilder().maximumSize(MAXIMUM_CACHED).build();
+    private final Cache<Integer, String> values = CacheBuilder.newBuilder().maximumSize(MAXIMUM_CACHED).build();
+
+    /**
+     * Creates a dictionary backed by the given table.
+     *
+     * @param connectionProvider Source of database connections
+     * @param table Dictionary table name, including the prefix
+     * @param insertSql Statement inserting a single value, ignoring duplicates
+     */
+    public SQLDictionary(ConnectionProvider connectionProvider, String table, String insertSql) {
+        this.connectionProvider = connectionProvider;
+        this.table = table;
+        this.insertSql = insertSql;
+    }
+
+    /**
+     * Loads the dictionary into memory.
+     *
+     * @throws SQLException If the dictionary can't be read
+     */
+    public void load() throws SQLException {
+        String sql = "SELECT id, value FROM " + table;
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement statement = conn.prepareStatement(sql);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                cache(rs.getString("value"), rs.getInt("id"));
+            }
+        }
+
+        Prism.getInstance().getLogger().debug("Loaded {} dictionary values", ids.size());
+    }
+
+    /**
+     * Returns the ids for the given values, adding missing values to the dictionary.
+     *
+     * @param values Values to look up, null values are ignored
+     * @return Ids keyed by value
+     * @throws SQLException If a value can't be added
+     */
+    public Map<String, Integer> getIds(Collection<String> values) throws SQLException {
+        Map<String, Integer> result = new HashMap<>();
+        Connection conn = null;
+
+        try {
+            for (String value : values) {
+                if (value == null || result.containsKey(value)) {
+                    continue;
+                }
+
+                Integer id = ids.getIfPresent(value);
+                if (id == null) {
+                    if (conn == null) {
+                        conn = connectionProvider.getConnection();
+                    }
+
+                    id = insert(conn, value);
+                }
+
+                result.put(value, id);
+            }
+        } finally {
+            if (conn != null) {
+                conn.close();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the id of an existing value without adding it.
+     *
+     * @param value Value to look up
+     * @return Id of the value, empty if it has never been stored
+     */
+    public Optional<Integer> findId(String value) {
+        if (isNamespacedId(value)) {
+            value = value.toLowerCase(Locale.ENGLISH);
+        }
+
+        Integer id = ids.getIfPresent(value);
+        if (id != null) {
+            return Optional.of(id);
+        }
+
+        try (Connection conn = connectionProvider.getConnection()) {
+            return Optional.ofNullable(select(conn, value));
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to look up dictionary value " + value, ex);
+        }
+    }
+
+    /**
+     * Returns the value for an id. A connection is only borrowed if the
+     * id isn't cached, so callers reading a streamed result don't need
+     * to hold a second one.
+     *
+     * @param id Id to look up, 0 for none
+     * @return Value, or null if the id is unknown
+     * @throws SQLException If the dictionary can't be read
+     */
+    public String getValue(int id) throws SQLException {
+        if (id <= 0) {
+            return null;
+        }
+
+        String value = values.getIfPresent(id);
+        if (value != null) {
+            return value;
+        }
+
+        String sql = "SELECT value FROM " + table + " WHERE id = ?";
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setInt(1, id);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    value = rs.getString("value");
+                    cache(value, id);
+                }
+            }
+        }
+
+        return value;
+    }
+
+    private int insert(Connection conn, String value) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(insertSql)) {
+            statement.setString(1, value);
+            statement.executeUpdate();
+        }
+
+        // Another writer may have added the value first so always read the id back
+        Integer id = select(conn, value);
+        if (id == null) {
+            throw new SQLException("Failed to add dictionary value " + value);
+        }
+
+        return id;
+    }
+
+    private Integer select(Connection conn, String value) throws SQLException {
+        String sql = "SELECT id FROM " + table + " WHERE value = ?";
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setString(1, value);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    int id = rs.getInt("id");
+                    cache(value, id);
+                    return id;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private void cache(String value, int id) {
+        ids.put(value, id);
+        values.put(id, value);
+    }
+
+    /**
+     * Namespaced ids, such as minecraft:stone, never contain spaces.
+     */
+    private static boolean isNamespacedId(String value) {
+        return value.indexOf(':') > 0 && value.indexOf(' ') < 0;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.helion3.prism.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.helion3.prism.Prism;
+
+/**
+ * Moves extra data from the extra table into the compressed column of
+ * the records table when the inline layout is enabled.
+ *
+ * The migration runs in the background. Until it has finished, reads
+ * keep joining the extra table for rows which haven't been moved yet.
+ */
+public class SQLExtraMigration {
+
+    private static final int BATCH_SIZE = 5000;
+
+    private final ConnectionProvider connectionProvider;
+    private final String tablePrefix;
+    private final int batchSize;
+    private long lastId = 0;
+    private volatile boolean stopped = false;
+    private volatile boolean finished = false;
+
+    /**
+     * @param connectionProvider Source of database connections
+     * @param tablePrefix Table prefix
+     */
+    public SQLExtraMigration(ConnectionProvider connectionProvider, String tablePrefix) {
+        this(connectionProvider, tablePrefix, BATCH_SIZE);
+    }
+
+    SQLExtraMigration(ConnectionProvider connectionProvider, String tablePrefix, int batchSize) {
+        this.connectionProvider = connectionProvider;
+        this.tablePrefix = tablePrefix;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Moves all rows of the extra table. Every batch is committed on its
+     * own so a migration stopped part way through resumes where it left off.
+     *
+     * @throws SQLException If a batch can't be moved
+     */
+    public void run() throws SQLException {
+        long moved = 0;
+        try (Connection conn = connectionProvider.getConnection()) {
+            conn.setAutoCommit(false);
+
+            int rows;
+            while (!stopped && (rows = moveBatch(conn)) > 0) {
+                if (moved == 0) {
+                    Prism.getInstance().getLogger().info("Moving extra data into the records table in the background...");
+                }
+
+                moved += rows;
+                if ((moved / batchSize) % 100 == 0) {
+                    Prism.getInstance().getLogger().info("Moved {} extra rows", moved);
+                }
+            }
+        }
+
+        if (stopped) {
+            return;
+        }
+
+        finished = true;
+        if (moved > 0) {
+            Prism.getInstance().getLogger().info("Finished moving {} extra rows into the records table", moved);
+        }
+    }
+
+    /**
+     * Moves the next batch of rows in a transaction of its own.
+     *
+     * @param conn Connection, with auto commit disabled
+     * @return Number of extra rows moved, 0 once the extra table is empty
+     * @throws SQLException If the batch can't be moved
+     */
+    int moveBatch(Connection conn) throws SQLException {
+        String select = "SELECT id, record_id, json FROM " + tablePrefix + "extra WHERE id > ? ORDER BY id LIMIT " + batchSize;
+        String update = "UPDATE " + tablePrefix + "records SET extra = ? WHERE id = ?";
+        String delete = "DELETE FROM " + tablePrefix + "extra WHERE id > ? AND id <= ?";
+
+        long firstId = lastId;
+        long batchLastId = lastId;
+        int rows = 0;
+
+        try (PreparedStatement selectStatement = conn.prepareStatement(select);
+             PreparedStatement updateStatement = conn.prepareStatement(update);
+             PreparedStatement deleteStatement = conn.prepareStatement(delete)) {
+            selectStatement.setLong(1, firstId);
+            try (ResultSet rs = selectStatement.executeQuery()) {
+                while (rs.next()) {
+                    batchLastId = rs.getLong("id");
+                    rows++;
+
+                    String json = rs.getString("json");
+                    if (json == null) {
+                        continue;
+                    }
+
+                    updateStatement.setBytes(1, ExtraDataCodec.encode(json));
+                    updateStatement.setLong(2, rs.getLong("record_id"));
+                    updateStatement.addBatch();
+                }
+            }
+
+            if (rows == 0) {
+                return 0;
+            }
+
+            try {
+                updateStatement.executeBatch();
+
+                deleteStatement.setLong(1, firstId);
+                deleteStatement.setLong(2, batchLastId);
+                deleteStatement.executeUpdate();
+
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        }
+
+        lastId = batchLastId;
+        return rows;
+    }
+
+    /**
+     * Stops the migration after the current batch.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns whether every row has been moved out of the extra table.
+     *
+     * @return True once the migration has finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Hands out record ids from blocks reserved in a sequence table.
+ *
+ * Ids are known before a record is written, so records and the rows
+ * referencing them can be inserted together without reading generated
+ * keys back. Each reservation takes a whole block in a short transaction
+ * of its own. Ids left in a block when the server stops are skipped.
+ */
+public class SQLIdAllocator {
+
+    private final ConnectionProvider connectionProvider;
+    private final String sequenceTable;
+    private final String sourceTable;
+    private final int blockSize;
+    private long next;
+    private long limit;
+
+    /**
+     * Creates an allocator for ids of the given table.
+     *
+     * @param connectionProvider Source of database connections
+     * @param sequenceTable Sequence table name, including the prefix
+     * @param sourceTable Table the ids are used in, including the prefix
+     * @param blockSize Number of ids reserved at once
+     */
+    public SQLIdAllocator(ConnectionProvider connectionProvider, String sequenceTable, String sourceTable, int blockSize) {
+        this.connectionProvider = connectionProvider;
+        this.sequenceTable = sequenceTable;
+        this.sourceTable = sourceTable;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Allocates ids, reserving new blocks when the current one runs out.
+     *
+     * @param count Number of ids needed
+     * @return Unique ids in ascending order
+     * @throws SQLException If a block can't be reserved
+     */
+    public synchronized long[] allocate(int count) throws SQLException {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (next >= limit) {
+                reserve();
+            }
+
+            ids[i] = next++;
+        }
+
+        return ids;
+    }
+
+    /**
+     * Reserves the next block of ids.
+     *
+     * The stored position never falls behind ids already present in the
+     * source table, which covers new sequences as well as rows written
+     * before the sequence existed.
+     *
+     * @throws SQLException If the sequence can't be read or updated
+     */
+    private void reserve() throws SQLException {
+        try (Connection conn = connectionProvider.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                long start = 0;
+                boolean exists = false;
+                try (PreparedStatement statement = conn.prepareStatement("SELECT next_id FROM " + sequenceTable + " WHERE name = ? FOR UPDATE")) {
+                    statement.setString(1, sourceTable);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        if (rs.next()) {
+                            start = rs.getLong(1);
+                            exists = true;
+                        }
+                    }
+                }
+
+                try (PreparedStatement statement = conn.prepareStatement("SELECT MAX(id) FROM " + sourceTable);
+                     ResultSet rs = statement.executeQuery()) {
+                    if (rs.next()) {
+                        start = Math.max(start, rs.getLong(1) + 1);
+                    }
+                }
+
+                String sql = exists
+                        ? "UPDATE " + sequenceTable + " SET next_id = ? WHERE name = ?"
+                        : "INSERT INTO " + sequenceTable + "(next_id, name) VALUES (?, ?)";
+                try (PreparedStatement statement = conn.prepareStatement(sql)) {
+                    statement.setLong(1, start + blockSize);
+                    statement.setString(2, sourceTable);
+                    statement.executeUpdate();
+                }
+
+                conn.commit();
+
+                next = start;
+                limit = start + blockSize;
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.helion3.prism.Prism;
+import com.helion3.prism.api.query.Query;
+import com.helion3.prism.api.query.SQLQuery;
+import com.helion3.prism.api.storage.StorageAdapterRecords;
+import com.helion3.prism.api.storage.StorageDeleteResult;
+import com.helion3.prism.util.DataQueries;
+import com.helion3.prism.util.DataUtil;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+
+/**
+ * Parts of the records implementation shared by the SQL storage adapters.
+ */
+public abstract class SQLRecords implements StorageAdapterRecords {
+
+    private static final int UPDATE_BATCH_SIZE = 1000;
+
+    protected final String tablePrefix = Prism.getInstance().getConfig().getStorageCategory().getTablePrefix();
+
+    // Records below this id have already been checked by earlier deletes
+    private volatile long deleteFromId = 0;
+
+    /**
+     * Get a connection of the storage adapter.
+     *
+     * @return Connection
+     * @throws SQLException
+     */
+    protected abstract Connection getConnection() throws SQLException;
+
+    /**
+     * Constructs a query deleting records matching a given Query within an id range.
+     *
+     * @param query Query
+     * @param fromId First id, inclusive
+     * @param toId Last id, exclusive
+     * @return SQLQuery
+     */
+    protected abstract SQLQuery deleteQuery(Query query, long fromId, long toId);
+
+    /**
+     * Deletes records matching the query one id range at a time.
+     *
+     * Matching records are expected to hold the lowest ids, as expired
+     * records do. Each call continues after the range deleted from last,
+     * and a range without any matches ends the pass so the next one
+     * starts over from the oldest record.
+     *
+     * @param query Query conditions indicating what we're purging
+     * @return {@link StorageDeleteResult}
+     * @throws Exception
+     */
+    @Override
+    public StorageDeleteResult delete(Query query) throws Exception {
+        try (Connection conn = getConnection()) {
+            Long fromId = getMinimumId(conn, deleteFromId);
+            if (fromId == null) {
+                deleteFromId = 0;
+                return new StorageDeleteResult(0);
+            }
+
+            int deleted = deleteRange(conn, query, fromId);
+            deleteFromId = deleted > 0 ? fromId + query.getLimit() : 0;
+
+            return new StorageDeleteResult(deleted);
+        }
+    }
+
+    /**
+     * Deletes records matching the query within the id range starting
+     * at the given id, the range spans the query limit.
+     *
+     * @param conn Connection
+     * @param query Query
+     * @param fromId First id of the range
+     * @return Number of deleted records
+     * @throws SQLException
+     */
+    private int deleteRange(Connection conn, Query query, long fromId) throws SQLException {
+        SQLQuery sql = deleteQuery(query, fromId, fromId + query.getLimit());
+        try (PreparedStatement statement = sql.prepare(conn)) {
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Finds the lowest record id from the given id on, which only seeks
+     * the primary key.
+     *
+     * @param conn Connection
+     * @param fromId Lowest id to consider
+     * @return Record id, or null if there are no records left
+     * @throws SQLException
+     */
+    private Long getMinimumId(Connection conn, long fromId) throws SQLException {
+        SQLQuery sql = new SQLQuery("SELECT MIN(id) AS id FROM " + tablePrefix + "records WHERE id >= ?", Collections.<Object>singletonList(fromId));
+        try (PreparedStatement statement = sql.prepare(conn); ResultSet rs = statement.executeQuery()) {
+            return rs.next() && rs.getObject("id") != null ? rs.getLong("id") : null;
+        }
+    }
+
+    @Override
+    public void markRolledBack(List<Object> recordIds, boolean rolledBack) throws Exception {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+
+            for (List<Object> batch : Lists.partition(recordIds, UPDATE_BATCH_SIZE)) {
+                String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+                String sql = "UPDATE " + tablePrefix + "records SET " + DataQueries.RolledBack + " = ? WHERE id IN (" + placeholders + ")";
+
+                try (PreparedStatement statement = conn.prepareStatement(sql)) {
+                    statement.setInt(1, rolledBack ? 1 : 0);
+                    for (int i = 0; i < batch.size(); i++) {
+                        statement.setLong(i + 2, ((Number) batch.get(i)).longValue());
+                    }
+
+                    statement.executeUpdate();
+                }
+            }
+
+            conn.commit();
+        }
+    }
+
+    /**
+     * Restores how many events a coalesced record stands for, single
+     * events are left without a count like they are when recorded.
+     *
+     * @param rs Result set positioned on a record
+     * @param data Data container of the result
+     * @throws SQLException
+     */
+    protected void readCount(ResultSet rs, DataContainer data) throws SQLException {
+        int count = rs.getInt(DataQueries.Count.toString());
+        if (count > 1) {
+            data.set(DataQueries.Count, count);
+        }
+    }
+
+    /**
+     * Restores the extra data of a result row into its data container.
+     *
+     * @param rs Result set positioned on a record
+     * @param joinExtra Whether the extra table was joined
+     * @param data Data container of the result, holding its target and location
+     * @throws Exception
+     */
+    protected void readExtraData(ResultSet rs, boolean joinExtra, DataContainer data) throws Exception {
+        String extraJson = getExtraJson(rs, joinExtra);
+        if (extraJson == null) {
+            return;
+        }
+
+        try {
+            JsonObject json = new JsonParser().parse(extraJson).getAsJsonObject();
+            DataView extra = DataUtil.dataViewFromJson(json);
+
+            for (DataQuery key : extra.getKeys(false)) {
+                data.set(key, extra.get(key).get());
+            }
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().error("Failed to deserialize {} at {}",
+                    data.getString(DataQueries.Target).orElse(null), data.get(DataQueries.Location).orElse(null));
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the extra data of a result row from whichever layout it was stored in.
+     *
+     * @param rs Result set positioned on a record
+     * @param joinExtra Whether the extra table was joined
+     * @return Extra data JSON, or null
+     * @throws SQLException
+     */
+    private String getExtraJson(ResultSet rs, boolean joinExtra) throws SQLException {
+        byte[] inline = rs.getBytes("extra");
+        if (inline != null) {
+            return ExtraDataCodec.decode(inline);
+        }
+
+        return joinExtra ? rs.getString("json") : null;
+    }
+}
@@ -26,168 +26,149 @@ package com.helion3.prism.storage.h2;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import com.helion3.prism.api.flags.Flag;
 import com.helion3.prism.api.records.Result;
 import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
 import org.spongepowered.api.data.DataView;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.helion3.prism.Prism;
 import com.helion3.prism.api.query.Query;
 import com.helion3.prism.api.query.QuerySession;
 import com.helion3.prism.api.query.SQLQuery;
-import com.helion3.prism.api.storage.StorageAdapterRecords;
-import com.helion3.prism.api.storage.StorageDeleteResult;
 import com.helion3.prism.api.storage.StorageWriteResult;
+import com.helion3.prism.metrics.Metrics;
+import com.helion3.prism.storage.ExtraDataCodec;
+import com.helion3.prism.storage.SQLDictionary;
+import com.helion3.prism.storage.SQLRecords;
 import com.helion3.prism.util.DataQueries;
 import com.helion3.prism.util.DataUtil;
 
-public class H2Records implements StorageAdapterRecords {
+public class H2Records extends SQLRecords {
 
-    private final String tablePrefix = Prism.getInstance().getConfig().getStorageCategory().getTablePrefix();
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private final boolean extraInline = Prism.getInstance().getConfig().getStorageCategory().isExtraInline();
 
     @Override
     public StorageWriteResult write(List<DataContainer> containers) throws Exception {
-        String sql = String.format("INSERT INTO %srecords(%s, %s, %s, %s, %s, %s, %s, %s, %s)" +
-                        " values(?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        long start = System.nanoTime();
+
+        String sql = String.format("INSERT INTO %srecords(id, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, extra)" +
+                        " values(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
                 tablePrefix,
                 DataQueries.Created, DataQueries.EventName, DataQueries.WorldUuid,
                 DataQueries.X, DataQueries.Y, DataQueries.Z,
-                DataQueries.Target, DataQueries.Player, DataQueries.Cause
+                DataQueries.Target, DataQueries.Player, DataQueries.Cause, DataQueries.Count
         );
 
-        try (Connection conn = H2StorageAdapter.getConnection(); PreparedStatement statement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        Set<String> values = new HashSet<>();
+        for (DataContainer container : containers) {
+            values.add(container.getString(DataQueries.EventName).get());
+            container.getString(DataQueries.Target).ifPresent(values::add);
+            container.getString(DataQueries.Cause).ifPresent(values::add);
+        }
 
-            for (DataContainer container : containers) {
-                DataView location = container.getView(DataQueries.Location).get();
+        Map<String, Integer> ids = H2StorageAdapter.getDictionary().getIds(values);
 
-                String playerUUID = null;
-                Optional<String> player = container.getString(DataQueries.Player);
-                if (player.isPresent()) {
-                    playerUUID = player.get();
-                }
+        String extraSql = "INSERT INTO " + tablePrefix + "extra(record_id, json) values(?, ?)";
+
+        // Ids are allocated up front so both tables can be written as plain batches
+        long[] recordIds = H2StorageAdapter.getRecordIds().allocate(containers.size());
+
+        // One connection and transaction for the whole batch, including the extra rows
+        try (Connection conn = H2StorageAdapter.getConnection();
+             PreparedStatement statement = conn.prepareStatement(sql);
+             PreparedStatement extraStatement = conn.prepareStatement(extraSql)) {
+            conn.setAutoCommit(false);
+
+            try {
+                for (int i = 0; i < containers.size(); i++) {
+                    DataContainer container = containers.get(i);
+                    setRecordParameters(statement, recordIds[i], container, ids);
 
-                statement.setLong( 1, System.currentTimeMillis() / 1000L );
-                statement.setObject(2, container.getString(DataQueries.EventName).get());
-                statement.setObject(3, location.getString(DataQueries.WorldUuid).get());
-                statement.setInt(4, location.getInt(DataQueries.X).get());
-                statement.setInt(5, location.getInt(DataQueries.Y).get());
-                statement.setInt(6, location.getInt(DataQueries.Z).get());
-                statement.setString(7, container.getString(DataQueries.Target).orElse(null));
-                statement.setString(8, playerUUID);
-                statement.setString(9, container.getString(DataQueries.Cause).orElse(null));
-
-                // Remove some data not needed for extra storage
-                container.remove(DataQueries.Location);
-                container.remove(DataQueries.EventName);
-                container.remove(DataQueries.Player);
-                container.remove(DataQueries.Cause);
-                container.remove(DataQueries.Target);
-
-                statement.executeUpdate();
-                ResultSet keys = statement.getGeneratedKeys();
-
-                while (keys.next()) {
-                    writeExtraData(keys.getInt(1), DataUtil.jsonFromDataView(container).toString());
+                    Optional<DataContainer> extra = DataUtil.extraDataFromRecord(container);
+                    String json = extra.map(view -> DataUtil.jsonFromDataView(view).toString()).orElse(null);
+                    statement.setBytes(12, json != null && extraInline ? ExtraDataCodec.encode(json) : null);
+                    statement.addBatch();
+
+                    if (json != null && !extraInline) {
+                        extraStatement.setLong(1, recordIds[i]);
+                        extraStatement.setString(2, json);
+                        extraStatement.addBatch();
+                    }
                 }
+
+                statement.executeBatch();
+                extraStatement.executeBatch();
+                conn.commit();
+            } catch (Exception ex) {
+                conn.rollback();
+                throw ex;
             }
         }
 
+        Metrics.recordWrite(containers.size(), System.nanoTime() - start);
         return null;
     }
 
     /**
-     * Writes extra JSON to a separate table because we don't always need it.
+     * Sets the parameters of a records insert.
      *
-     * @param recordId Primary key of the parent record.
-     * @param json
-     * @return
-     * @throws Exception
+     * @param statement Statement to populate
+     * @param id Allocated record id
+     * @param container Record
+     * @param ids Dictionary ids of the batch
+     * @throws SQLException
      */
-    protected StorageWriteResult writeExtraData(int recordId, String json) throws Exception {
-        String sql = "INSERT INTO " + tablePrefix + "extra(record_id, json) values(?, ?)";
-
-        try (Connection conn = H2StorageAdapter.getConnection(); PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setInt(1, recordId);
-            statement.setString(2, json);
-            statement.executeUpdate();
-        }
-
-        return null;
+    private void setRecordParameters(PreparedStatement statement, long id, DataContainer container, Map<String, Integer> ids) throws SQLException {
+        DataView location = container.getView(DataQueries.Location).get();
+
+        statement.setLong(1, id);
+        statement.setLong(2, DataUtil.getCreated(container).getTime() / 1000L);
+        statement.setInt(3, ids.get(container.getString(DataQueries.EventName).get()));
+        statement.setObject(4, location.getString(DataQueries.WorldUuid).get());
+        statement.setInt(5, location.getInt(DataQueries.X).get());
+        statement.setInt(6, location.getInt(DataQueries.Y).get());
+        statement.setInt(7, location.getInt(DataQueries.Z).get());
+        statement.setObject(8, container.getString(DataQueries.Target).map(ids::get).orElse(null));
+        statement.setString(9, container.getString(DataQueries.Player).orElse(null));
+        statement.setObject(10, container.getString(DataQueries.Cause).map(ids::get).orElse(null));
+        statement.setInt(11, container.getInt(DataQueries.Count).orElse(1));
     }
 
     @Override
     public CompletableFuture<List<Result>> query(QuerySession session, boolean translate) throws Exception {
+        long start = System.nanoTime();
+
         // Prepare results
         List<Result> results = new ArrayList<>();
         CompletableFuture<List<Result>> future = new CompletableFuture<>();
 
-        SQLQuery query = H2SQLQuery.from(session);
+        boolean joinExtra = H2StorageAdapter.isExtraTableInUse();
+        SQLQuery query = H2SQLQuery.from(session, joinExtra);
 
-        try (Connection conn = H2StorageAdapter.getConnection(); PreparedStatement statement = conn.prepareStatement(query.toString()); ResultSet rs = statement.executeQuery()) {
+        SQLDictionary dictionary = H2StorageAdapter.getDictionary();
+        try (Connection conn = H2StorageAdapter.getConnection(); PreparedStatement statement = query.prepare(conn); ResultSet rs = statement.executeQuery()) {
             List<UUID> uuidsPendingLookup = new ArrayList<>();
 
             while (rs.next()) {
-                Result result = Result.from(rs.getString(DataQueries.EventName.toString()), !session.hasFlag(Flag.NO_GROUP));
-
-                // Restore the data container
-                DataContainer data = DataContainer.createNew();
-                data.set(DataQueries.EventName, rs.getString(DataQueries.EventName.toString()));
-                String target = rs.getString(DataQueries.Target.toString());
-                data.set(DataQueries.Target, target != null ? target : "");
-
-                if (!session.hasFlag(Flag.NO_GROUP)) {
-                    data.set(DataQueries.Count, rs.getInt("total"));
-                } else {
-                    DataContainer loc = DataContainer.createNew();
-                    loc.set(DataQueries.X, rs.getInt(DataQueries.X.toString()));
-                    loc.set(DataQueries.Y, rs.getInt(DataQueries.Y.toString()));
-                    loc.set(DataQueries.Z, rs.getInt(DataQueries.Z.toString()));
-                    loc.set(DataQueries.WorldUuid, rs.getString(DataQueries.WorldUuid.toString()));
-                    data.set(DataQueries.Location, loc);
-
-                    data.set(DataQueries.Created, rs.getLong(DataQueries.Created.toString()));
-
-                    if (rs.getString("json") != null) {
-                        try {
-                            JsonObject json = new JsonParser().parse(rs.getString("json")).getAsJsonObject();
-                            DataView extra = DataUtil.dataViewFromJson(json);
-
-                            for (DataQuery key : extra.getKeys(false)) {
-                                data.set(key, extra.get(key).get());
-                            }
-                        } catch (Exception ex) {
-                            Prism.getInstance().getLogger().error("Failed to deserialize {} at {}", target, loc.toString());
-                            throw ex;
-                        }
-                    }
-                }
-
-                // Determine the final name of the event source
-                String player = rs.getString(DataQueries.Player.toString());
-                if (player != null && !player.isEmpty()) {
-                    data.set(DataQueries.Cause, player);
-
-                    if (translate) {
-                        uuidsPendingLookup.add(UUID.fromString(player));
-                    }
-                } else {
-                    data.set(DataQueries.Cause, rs.getString(DataQueries.Cause.toString()));
-                }
-
-                result.data = data;
-                results.add(result);
+                results.add(readResult(rs, session, dictionary, joinExtra, translate ? uuidsPendingLookup : null));
             }
 
+            Metrics.recordQuery(System.nanoTime() - start);
+
             if (translate && !uuidsPendingLookup.isEmpty()) {
                 DataUtil.translateUuidsToNames(results, uuidsPendingLookup).thenAccept(future::complete);
             } else {
@@ -199,8 +180,98 @@ public class H2Records implements StorageAdapterRecords {
     }
 
     @Override
-    public StorageDeleteResult delete(Query query) throws Exception {
-        // @todo implement
-        return null;
+    public void stream(QuerySession session, Consumer<Result> consumer) throws Exception {
+        long start = System.nanoTime();
+
+        boolean joinExtra = H2StorageAdapter.isExtraTableInUse();
+        SQLQuery query = H2SQLQuery.from(session, joinExtra);
+
+        SQLDictionary dictionary = H2StorageAdapter.getDictionary();
+
+        try (Connection conn = H2StorageAdapter.getConnection()) {
+            try (Statement statement = conn.createStatement()) {
+                statement.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+
+            try (PreparedStatement statement = query.prepare(conn)) {
+                statement.setFetchSize(STREAM_FETCH_SIZE);
+
+                try (ResultSet rs = statement.executeQuery()) {
+                    Metrics.recordQuery(System.nanoTime() - start);
+
+                    while (rs.next()) {
+                        consumer.accept(readResult(rs, session, dictionary, joinExtra, null));
+                    }
+                }
+            } finally {
+                try (Statement statement = conn.createStatement()) {
+                    statement.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores a result from the current row.
+     *
+     * @param rs Result set positioned on a row
+     * @param session QuerySession
+     * @param dictionary SQLDictionary
+     * @param joinExtra Whether the extra table was joined
+     * @param uuidsPendingLookup Collects player UUIDs to translate, or null
+     * @return Result
+     * @throws Exception
+     */
+    private Result readResult(ResultSet rs, QuerySession session, SQLDictionary dictionary, boolean joinExtra, List<UUID> uuidsPendingLookup) throws Exception {
+        String eventName = dictionary.getValue(rs.getInt(DataQueries.EventName.toString()));
+        Result result = Result.from(eventName, !session.hasFlag(Flag.NO_GROUP));
+
+        // Restore the data container
+        DataContainer data = DataContainer.createNew();
+        data.set(DataQueries.EventName, eventName);
+        String target = dictionary.getValue(rs.getInt(DataQueries.Target.toString()));
+        data.set(DataQueries.Target, target != null ? target : "");
+
+        if (!session.hasFlag(Flag.NO_GROUP)) {
+            data.set(DataQueries.Count, rs.getInt("total"));
+        } else {
+            DataContainer loc = DataContainer.createNew();
+            loc.set(DataQueries.X, rs.getInt(DataQueries.X.toString()));
+            loc.set(DataQueries.Y, rs.getInt(DataQueries.Y.toString()));
+            loc.set(DataQueries.Z, rs.getInt(DataQueries.Z.toString()));
+            loc.set(DataQueries.WorldUuid, rs.getString(DataQueries.WorldUuid.toString()));
+            data.set(DataQueries.Location, loc);
+
+            data.set(DataQueries.Created, rs.getLong(DataQueries.Created.toString()));
+            data.set(DataQueries.RecordId, rs.getLong("id"));
+            readCount(rs, data);
+
+            readExtraData(rs, joinExtra, data);
+        }
+
+        // Determine the final name of the event source
+        String player = rs.getString(DataQueries.Player.toString());
+        if (player != null && !player.isEmpty()) {
+            data.set(DataQueries.Cause, player);
+
+            if (uuidsPendingLookup != null) {
+                uuidsPendingLookup.add(UUID.fromString(player));
+            }
+        } else {
+            data.set(DataQueries.Cause, dictionary.getValue(rs.getInt(DataQueries.Cause.toString())));
+        }
+
+        result.data = data;
+        return result;
+    }
+
+    @Override
+    protected Connection getConnection() throws SQLException {
+        return H2StorageAdapter.getConnection();
+    }
+
+    @Override
+    protected SQLQuery deleteQuery(Query query, long fromId, long toId) {
+        return H2SQLQuery.delete(query, fromId, toId);
     }
 }
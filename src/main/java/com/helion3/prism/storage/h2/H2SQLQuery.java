@@ -24,8 +24,10 @@
 package com.helion3.prism.storage.h2;
 
 import com.helion3.prism.api.flags.Flag;
+import com.helion3.prism.api.query.Query;
 import com.helion3.prism.api.query.QuerySession;
 import com.helion3.prism.api.query.SQLQuery;
+import com.helion3.prism.util.DataQueries;
 
 public class H2SQLQuery extends SQLQuery {
     public H2SQLQuery(String query) {
@@ -36,18 +38,22 @@ public class H2SQLQuery extends SQLQuery {
      * Constructs an H2 SQL query from a given QuerySession.
      *
      * @param session QuerySession
+     * @param joinExtra Whether to join the extra table
      * @return SQLQuery
      */
-    public static SQLQuery from(QuerySession session) {
+    public static SQLQuery from(QuerySession session, boolean joinExtra) {
         Builder query = SQLQuery.builder().select().from(tablePrefix + "records AS r");
         if (!session.hasFlag(Flag.NO_GROUP)) {
-            query.col("COUNT(*) AS total");
+            query.col(GROUPED_TOTAL);
             query.group("eventName", "target", "player", "cause");
+        } else if (!joinExtra) {
+            query.col("*");
         } else {
             query.col("*").leftJoin(tablePrefix + "extra AS e", "r.id = e.record_id");
         }
 
         query.conditions(session.getQuery().getConditions());
+        addValueMutators(query, H2StorageAdapter.getDictionary());
 
         // Sort by timestamp if we're not grouping
         if (session.hasFlag(Flag.NO_GROUP)) {
@@ -56,4 +62,20 @@ public class H2SQLQuery extends SQLQuery {
 
         return query.build();
     }
+
+    /**
+     * Constructs a query deleting records matching a given Query within an id range.
+     *
+     * @param query Query
+     * @param fromId First id, inclusive
+     * @param toId Last id, exclusive
+     * @return SQLQuery
+     */
+    public static SQLQuery delete(Query query, long fromId, long toId) {
+        Builder builder = SQLQuery.builder().delete().from(tablePrefix + "records").conditions(query.getConditions());
+        builder.where("id >= ? AND id < ?", fromId, toId);
+        addValueMutators(builder, H2StorageAdapter.getDictionary());
+
+        return builder.build();
+    }
 }
@@ -25,12 +25,11 @@ package com.helion3.prism.storage.h2;
 
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Date;
+import java.sql.Types;
 
 import com.helion3.prism.util.DataQueries;
-import com.helion3.prism.util.DateUtil;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.spongepowered.api.Sponge;
@@ -41,16 +40,24 @@ import com.helion3.prism.Prism;
 import com.helion3.prism.api.storage.StorageAdapter;
 import com.helion3.prism.api.storage.StorageAdapterRecords;
 import com.helion3.prism.api.storage.StorageAdapterSettings;
+import com.helion3.prism.storage.PurgeScheduler;
+import com.helion3.prism.storage.SQLDictionary;
+import com.helion3.prism.storage.SQLExtraMigration;
+import com.helion3.prism.storage.SQLIdAllocator;
 
 public class H2StorageAdapter implements StorageAdapter {
 
-    private final String expiration = Prism.getInstance().getConfig().getStorageCategory().getExpireRecords();
+    private static final int ID_BLOCK_SIZE = 5000;
+
     private final String tablePrefix = Prism.getInstance().getConfig().getStorageCategory().getTablePrefix();
-    private final int purgeBatchLimit = Prism.getInstance().getConfig().getStorageCategory().getPurgeBatchLimit();
     private final SqlService sql = Sponge.getServiceManager().provide(SqlService.class).get();
     private final Path dbPath = Prism.getInstance().getPath().getParent().resolve(Prism.getInstance().getConfig().getStorageCategory().getDatabase());
     private final StorageAdapterRecords records;
+    private PurgeScheduler purgeScheduler;
     private static HikariDataSource db;
+    private static SQLDictionary dictionary;
+    private static SQLExtraMigration extraMigration;
+    private static SQLIdAllocator recordIds;
 
     /**
      * Create a new instance of the H2 storage adapter.
@@ -69,29 +76,71 @@ public class H2StorageAdapter implements StorageAdapter {
         return db.getConnection();
     }
 
+    /**
+     * Get the dictionary holding event names, targets and causes.
+     *
+     * @return SQLDictionary
+     */
+    protected static SQLDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Whether reads have to join the extra table. It holds the extra data
+     * unless the inline layout is used, and keeps older rows until they
+     * have all been moved into the records table.
+     *
+     * @return True if the extra table may hold extra data
+     */
+    protected static boolean isExtraTableInUse() {
+        return !Prism.getInstance().getConfig().getStorageCategory().isExtraInline()
+                || extraMigration == null
+                || !extraMigration.isFinished();
+    }
+
+    /**
+     * Get the allocator handing out record ids.
+     *
+     * @return SQLIdAllocator
+     */
+    protected static SQLIdAllocator getRecordIds() {
+        return recordIds;
+    }
+
     @Override
     public boolean connect() throws Exception {
         try {
             // Get data source
             HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:h2:" + dbPath.toString());
+            // Parsed statements are cached per connection by their text, which no longer contains values
+            config.setJdbcUrl("jdbc:h2:" + dbPath.toString() + ";QUERY_CACHE_SIZE=64");
             config.setMaximumPoolSize(Prism.getInstance().getConfig().getStorageCategory().getMaximumPoolSize());
             config.setMinimumIdle(Prism.getInstance().getConfig().getStorageCategory().getMinimumIdle());
 
             db = new HikariDataSource(config);
+            dictionary = new SQLDictionary(H2StorageAdapter::getConnection, tablePrefix + "dictionary",
+                    "MERGE INTO " + tablePrefix + "dictionary(value) KEY(value) VALUES (?)");
+            recordIds = new SQLIdAllocator(H2StorageAdapter::getConnection, tablePrefix + "sequence", tablePrefix + "records", ID_BLOCK_SIZE);
 
             // Create table if needed
             createTables();
+            dictionary.load();
 
-            // Purge async
-            if (Prism.getInstance().getConfig().getStorageCategory().isShouldExpire()) {
+            if (Prism.getInstance().getConfig().getStorageCategory().isExtraInline()) {
+                extraMigration = new SQLExtraMigration(H2StorageAdapter::getConnection, tablePrefix);
                 Task.builder()
                     .async()
-                    .name("PrismH2Purge")
-                    .execute(this::purge)
+                    .name("PrismH2ExtraMigration")
+                    .execute(this::migrateExtra)
                     .submit(Prism.getInstance().getPluginContainer());
             }
 
+            // Purge async
+            if (Prism.getInstance().getConfig().getStorageCategory().isShouldExpire()) {
+                purgeScheduler = new PurgeScheduler("PrismH2Purge", records);
+                purgeScheduler.start();
+            }
+
             return true;
         } catch (SQLException e) {
             return false;
@@ -108,14 +157,17 @@ public class H2StorageAdapter implements StorageAdapter {
             String records = "CREATE TABLE IF NOT EXISTS " + tablePrefix + "records ("
                     + "id int primary key auto_increment, "
                     + DataQueries.Created + " bigint, "
-                    + DataQueries.EventName + " varchar(16), "
+                    + DataQueries.EventName + " int, "
                     + DataQueries.WorldUuid + " UUID, "
                     + DataQueries.X + " int, "
                     + DataQueries.Y + " smallint, "
                     + DataQueries.Z + " int, "
-                    + DataQueries.Target + " varchar(255), "
+                    + DataQueries.Target + " int, "
                     + DataQueries.Player + " UUID, "
-                    + DataQueries.Cause + " varchar(64))";
+                    + DataQueries.Cause + " int, "
+                    + "extra varbinary, "
+                    + DataQueries.RolledBack + " tinyint NOT NULL DEFAULT 0, "
+                    + DataQueries.Count + " int NOT NULL DEFAULT 1)";
             conn.prepareStatement(records).execute();
 
             String extra = "CREATE TABLE IF NOT EXISTS " + tablePrefix + "extra ("
@@ -129,10 +181,25 @@ public class H2StorageAdapter implements StorageAdapter {
                     + ");";
             conn.prepareStatement(extra).execute();
 
+            // Values are case sensitive so free text targets keep their own spelling
+            String dictionary = "CREATE TABLE IF NOT EXISTS " + tablePrefix + "dictionary ("
+                    + "id int primary key auto_increment, "
+                    + "value varchar(255) NOT NULL UNIQUE)";
+            conn.prepareStatement(dictionary).execute();
+
+            String sequence = "CREATE TABLE IF NOT EXISTS " + tablePrefix + "sequence ("
+                    + "name varchar(64) primary key, "
+                    + "next_id bigint NOT NULL)";
+            conn.prepareStatement(sequence).execute();
+
             String locationIndex = "CREATE INDEX IF NOT EXISTS location ON " + tablePrefix + "records("
                 + DataQueries.WorldUuid + ", " + DataQueries.X + ", " + DataQueries.Y + ", " + DataQueries.Z + ")";
             conn.prepareStatement(locationIndex).execute();
 
+            // Leads with the columns applier queries match exactly, ahead of the coordinate ranges
+            String rolledBackIndex = "CREATE INDEX IF NOT EXISTS rolledBack ON " + tablePrefix + "records("
+                + DataQueries.WorldUuid + ", " + DataQueries.RolledBack + ", " + DataQueries.X + ", " + DataQueries.Y + ", " + DataQueries.Z + ")";
+
             String dateIndex = "CREATE INDEX IF NOT EXISTS created ON " + tablePrefix + "records("
                     + DataQueries.Created + ")";
             conn.prepareStatement(dateIndex).execute();
@@ -155,55 +222,120 @@ public class H2StorageAdapter implements StorageAdapter {
                 Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(2);
                 Prism.getInstance().getConfiguration().saveConfiguration();
             }
+
+            if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 2) {
+                migrateToDictionary(conn);
+
+                Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(3);
+                Prism.getInstance().getConfiguration().saveConfiguration();
+            }
+
+            if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 3) {
+                // Compressed extra data
+                conn.prepareStatement(String.format("ALTER TABLE %srecords ADD COLUMN IF NOT EXISTS extra varbinary;", tablePrefix)).execute();
+
+                Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(4);
+                Prism.getInstance().getConfiguration().saveConfiguration();
+            }
+
+            if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 4) {
+                // Rolled back state
+                conn.prepareStatement(String.format("ALTER TABLE %srecords ADD COLUMN IF NOT EXISTS %s tinyint NOT NULL DEFAULT 0;",
+                        tablePrefix,
+                        DataQueries.RolledBack
+                )).execute();
+
+                Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(5);
+                Prism.getInstance().getConfiguration().saveConfiguration();
+            }
+
+            if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 5) {
+                // Number of events a coalesced record stands for, older records are single events
+                conn.prepareStatement(String.format("ALTER TABLE %srecords ADD COLUMN IF NOT EXISTS %s int NOT NULL DEFAULT 1;",
+                        tablePrefix,
+                        DataQueries.Count
+                )).execute();
+
+                Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(6);
+                Prism.getInstance().getConfiguration().saveConfiguration();
+            }
+
+            // Created after migrating, the column doesn't exist in older tables until then
+            conn.prepareStatement(rolledBackIndex).execute();
         }
     }
 
     /**
-     * Removes expires records and extra information from the database.
+     * Moves event names, targets and causes into the dictionary table.
+     *
+     * @param conn Connection
+     * @throws SQLException
      */
-    protected void purge() {
-        try {
-            Prism.getInstance().getLogger().info("Purging H2 database...");
-            long purged = 0;
-            while (true) {
-                int count = purgeRecords();
-                if (count == 0) {
-                    break;
-                }
-
-                purged += count;
-                Prism.getInstance().getLogger().info("Deleted {} records", purged);
-            }
+    protected void migrateToDictionary(Connection conn) throws SQLException {
+        String[] columns = {DataQueries.EventName.toString(), DataQueries.Target.toString(), DataQueries.Cause.toString()};
 
-            Prism.getInstance().getLogger().info("Finished purging H2 database");
-        } catch (Exception ex) {
-            Prism.getInstance().getLogger().error("Encountered an error while purging H2 database", ex);
+        // Tables created by this version already use the dictionary
+        Integer eventNameType = getColumnType(conn, columns[0]);
+        if (getColumnType(conn, columns[0] + "Id") == null && eventNameType != null && eventNameType != Types.VARCHAR) {
+            return;
         }
+
+        Prism.getInstance().getLogger().info("Migrating records to the dictionary schema, this may take a while...");
+
+        conn.prepareStatement(String.format("MERGE INTO %sdictionary(value) KEY(value) "
+                        + "SELECT %2$s FROM %1$srecords "
+                        + "UNION SELECT %3$s FROM %1$srecords WHERE %3$s IS NOT NULL "
+                        + "UNION SELECT %4$s FROM %1$srecords WHERE %4$s IS NOT NULL;",
+                tablePrefix, columns[0], columns[1], columns[2]
+        )).execute();
+
+        // Converted ids are written to new columns which replace the originals
+        for (String column : columns) {
+            conn.prepareStatement(String.format("ALTER TABLE %srecords ADD COLUMN IF NOT EXISTS %sId int;",
+                    tablePrefix, column
+            )).execute();
+        }
+
+        conn.prepareStatement(String.format("UPDATE %srecords r SET "
+                        + "%2$sId = (SELECT d.id FROM %1$sdictionary d WHERE d.value = r.%2$s), "
+                        + "%3$sId = (SELECT d.id FROM %1$sdictionary d WHERE d.value = r.%3$s), "
+                        + "%4$sId = (SELECT d.id FROM %1$sdictionary d WHERE d.value = r.%4$s);",
+                tablePrefix, columns[0], columns[1], columns[2]
+        )).execute();
+
+        for (String column : columns) {
+            conn.prepareStatement(String.format("ALTER TABLE %srecords DROP COLUMN %s;", tablePrefix, column)).execute();
+            conn.prepareStatement(String.format("ALTER TABLE %srecords ALTER COLUMN %2$sId RENAME TO %2$s;", tablePrefix, column)).execute();
+        }
+
+        Prism.getInstance().getLogger().info("Finished migrating records to the dictionary schema");
     }
 
     /**
-     * Removes expires records from the database.
+     * Returns the SQL type of a records column.
      *
-     * @return The amount of rows removed.
-     * @throws Exception
+     * @param conn Connection
+     * @param column Column name
+     * @return Type from {@link Types}, or null if the column doesn't exist
+     * @throws SQLException
      */
-    protected int purgeRecords() throws Exception {
-        Date date = DateUtil.parseTimeStringToDate(expiration, false);
-        if (date == null) {
-            throw new IllegalArgumentException("Failed to parse expiration");
-        }
-
-        if (purgeBatchLimit <= 0) {
-            throw new IllegalArgumentException("PurgeBatchLimit cannot be equal to or lower than 0");
+    private Integer getColumnType(Connection conn, String column) throws SQLException {
+        // Unquoted names are stored in upper case
+        String table = (tablePrefix + "records").toUpperCase();
+        try (ResultSet rs = conn.getMetaData().getColumns(null, null, table, column.toUpperCase())) {
+            return rs.next() ? rs.getInt("DATA_TYPE") : null;
         }
+    }
 
-        String sql = "DELETE FROM " + tablePrefix + "records "
-                + "WHERE " + tablePrefix + "records.created <= ? "
-                + "LIMIT ?;";
-        try (Connection conn = getConnection(); PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setLong(1, date.getTime() / 1000);
-            statement.setInt(2, purgeBatchLimit);
-            return statement.executeUpdate();
+    /**
+     * Moves extra data into the records table, reads keep joining the
+     * extra table if this fails.
+     */
+    protected void migrateExtra() {
+        try {
+            extraMigration.run();
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().error("Failed to move extra data into the records table", ex);
         }
     }
 
@@ -220,12 +352,21 @@ public class H2StorageAdapter implements StorageAdapter {
 
     @Override
     public void close() {
+        if (purgeScheduler != null) {
+            purgeScheduler.stop();
+        }
+
+        if (extraMigration != null) {
+            extraMigration.stop();
+        }
+
         db.close();
     }
 
     @Override
     public boolean testConnection() throws Exception {
-        // @todo implement
-        return true;
+        try (Connection conn = getConnection()) {
+            return conn.isValid(5);
+        }
     }
 }
@@ -27,11 +27,13 @@ package com.helion3.prism.storage.mongodb;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import com.google.common.collect.Lists;
 import com.helion3.prism.api.flags.Flag;
@@ -39,6 +41,7 @@ import com.helion3.prism.api.query.*;
 import com.helion3.prism.api.records.Result;
 import com.helion3.prism.util.PrimitiveArray;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.spongepowered.api.data.DataContainer;
 import org.spongepowered.api.data.DataQuery;
 import org.spongepowered.api.data.DataView;
@@ -49,6 +52,7 @@ import com.helion3.prism.api.query.ConditionGroup.Operator;
 import com.helion3.prism.api.storage.StorageAdapterRecords;
 import com.helion3.prism.api.storage.StorageDeleteResult;
 import com.helion3.prism.api.storage.StorageWriteResult;
+import com.helion3.prism.metrics.Metrics;
 import com.helion3.prism.util.DataQueries;
 import com.helion3.prism.util.DataUtil;
 import com.helion3.prism.util.DateUtil;
@@ -61,6 +65,9 @@ import com.mongodb.client.model.WriteModel;
 
 public class MongoRecords implements StorageAdapterRecords {
 
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final int UPDATE_BATCH_SIZE = 1000;
+
     private final BulkWriteOptions bulkWriteOptions = new BulkWriteOptions().ordered(false);
     private final String expiration = Prism.getInstance().getConfig().getStorageCategory().getExpireRecords();
     private final boolean expires = Prism.getInstance().getConfig().getStorageCategory().isShouldExpire();
@@ -150,6 +157,8 @@ public class MongoRecords implements StorageAdapterRecords {
 
    @Override
    public StorageWriteResult write(List<DataContainer> containers) throws Exception {
+       long start = System.nanoTime();
+
        MongoCollection<Document> collection = MongoStorageAdapter.getCollection(MongoStorageAdapter.collectionEventRecordsName);
 
        // Build an array of documents
@@ -169,6 +178,7 @@ public class MongoRecords implements StorageAdapterRecords {
 
        // Write
        collection.bulkWrite(documents, bulkWriteOptions);
+       Metrics.recordWrite(containers.size(), System.nanoTime() - start);
 
        // @todo implement real results, BulkWriteResult
 
@@ -210,6 +220,11 @@ public class MongoRecords implements StorageAdapterRecords {
                    conditions.put(field.getFieldName().toString(), matcher);
                }
 
+               // Records written before a flag existed don't have it, which is the same as false
+               else if (field.getMatchRule().equals(MatchRule.EQUALS) && Boolean.FALSE.equals(field.getValue())) {
+                   conditions.put(field.getFieldName().toString(), new Document("$ne", true));
+               }
+
                else if (field.getMatchRule().equals(MatchRule.EQUALS)) {
                    conditions.put(field.getFieldName().toString(), field.getValue());
                }
@@ -242,6 +257,7 @@ public class MongoRecords implements StorageAdapterRecords {
 
    @Override
    public CompletableFuture<List<Result>> query(QuerySession session, boolean translate) throws Exception {
+       long start = System.nanoTime();
        Query query = session.getQuery();
        checkNotNull(query);
 
@@ -249,6 +265,56 @@ public class MongoRecords implements StorageAdapterRecords {
        List<Result> results = new ArrayList<>();
        CompletableFuture<List<Result>> future = new CompletableFuture<>();
 
+       final AggregateIterable<Document> aggregated = aggregate(session, query);
+
+       // Iterate results and build our event record list
+       try (MongoCursor<Document> cursor = aggregated.iterator()) {
+           List<UUID> uuidsPendingLookup = new ArrayList<>();
+
+           while (cursor.hasNext()) {
+               results.add(readResult(cursor.next(), session, translate ? uuidsPendingLookup : null));
+           }
+
+           Metrics.recordQuery(System.nanoTime() - start);
+
+           if (translate && !uuidsPendingLookup.isEmpty()) {
+               DataUtil.translateUuidsToNames(results, uuidsPendingLookup).thenAccept(future::complete);
+           } else {
+               future.complete(results);
+           }
+       }
+
+       return future;
+   }
+
+   @Override
+   public void stream(QuerySession session, Consumer<Result> consumer) throws Exception {
+       long start = System.nanoTime();
+       Query query = session.getQuery();
+       checkNotNull(query);
+
+       // Large batches and disk-backed stages keep big rollbacks off the server's memory limit
+       AggregateIterable<Document> aggregated = aggregate(session, query)
+               .allowDiskUse(true)
+               .batchSize(STREAM_BATCH_SIZE);
+
+       try (MongoCursor<Document> cursor = aggregated.iterator()) {
+           Metrics.recordQuery(System.nanoTime() - start);
+
+           while (cursor.hasNext()) {
+               consumer.accept(readResult(cursor.next(), session, null));
+           }
+       }
+   }
+
+   /**
+    * Builds the aggregation pipeline for a query session.
+    *
+    * @param session QuerySession
+    * @param query Query
+    * @return AggregateIterable
+    */
+   private AggregateIterable<Document> aggregate(QuerySession session, Query query) {
        // Get collection
        MongoCollection<Document> collection = MongoStorageAdapter.getCollection(MongoStorageAdapter.collectionEventRecordsName);
 
@@ -280,7 +346,9 @@ public class MongoRecords implements StorageAdapterRecords {
            groupFields.put("year", new Document("$year", "$" + DataQueries.Created));
 
            Document groupHolder = new Document("_id", groupFields);
-           groupHolder.put(DataQueries.Count.toString(), new Document("$sum", 1));
+           // Coalesced records stand for several events, older records don't have a count
+           groupHolder.put(DataQueries.Count.toString(), new Document("$sum",
+                   new Document("$ifNull", Arrays.asList("$" + DataQueries.Count, 1))));
 
            Document group = new Document("$group", groupHolder);
 
@@ -302,59 +370,88 @@ public class MongoRecords implements StorageAdapterRecords {
            aggregated = collection.aggregate(pipeline);
        }
 
-       // Iterate results and build our event record list
-       try (MongoCursor<Document> cursor = aggregated.iterator()) {
-           List<UUID> uuidsPendingLookup = new ArrayList<>();
-
-           while (cursor.hasNext()) {
-               // Mongo document
-               Document wrapper = cursor.next();
-               Document document = session.hasFlag(Flag.NO_GROUP) ? wrapper : (Document) wrapper.get("_id");
-
-               DataContainer data = documentToDataContainer(document);
+       return aggregated;
+   }
 
-               if (!session.hasFlag(Flag.NO_GROUP)) {
-                   data.set(DataQueries.Count, wrapper.get(DataQueries.Count.toString()));
-               }
+   /**
+    * Restores a result from an aggregated document.
+    *
+    * @param wrapper Mongo document
+    * @param session QuerySession
+    * @param uuidsPendingLookup Collects player UUIDs to translate, or null
+    * @return Result
+    */
+   private Result readResult(Document wrapper, QuerySession session, List<UUID> uuidsPendingLookup) {
+       // Mongo document
+       Document document = session.hasFlag(Flag.NO_GROUP) ? wrapper : (Document) wrapper.get("_id");
 
-               // Build our result object
-               Result result = Result.from(wrapper.getString(DataQueries.EventName.toString()), !session.hasFlag(Flag.NO_GROUP));
+       DataContainer data = documentToDataContainer(document);
 
-               // Determine the final name of the event source
-               if (document.containsKey(DataQueries.Player.toString())) {
-                   String uuid = document.getString(DataQueries.Player.toString());
-                   data.set(DataQueries.Cause, uuid);
+       if (!session.hasFlag(Flag.NO_GROUP)) {
+           data.set(DataQueries.Count, wrapper.get(DataQueries.Count.toString()));
+       } else {
+           data.set(DataQueries.RecordId, wrapper.getObjectId("_id").toHexString());
+       }
 
-                   if (translate) {
-                       uuidsPendingLookup.add(UUID.fromString(uuid));
-                   }
-               } else {
-                   data.set(DataQueries.Cause, document.getString(DataQueries.Cause.toString()));
-               }
+       // Build our result object
+       Result result = Result.from(wrapper.getString(DataQueries.EventName.toString()), !session.hasFlag(Flag.NO_GROUP));
 
-               result.data = data;
-               results.add(result);
-           }
+       // Determine the final name of the event source
+       if (document.containsKey(DataQueries.Player.toString())) {
+           String uuid = document.getString(DataQueries.Player.toString());
+           data.set(DataQueries.Cause, uuid);
 
-           if (translate && !uuidsPendingLookup.isEmpty()) {
-               DataUtil.translateUuidsToNames(results, uuidsPendingLookup).thenAccept(future::complete);
-           } else {
-               future.complete(results);
+           if (uuidsPendingLookup != null) {
+               uuidsPendingLookup.add(UUID.fromString(uuid));
            }
+       } else {
+           data.set(DataQueries.Cause, document.getString(DataQueries.Cause.toString()));
        }
 
-       return future;
+       result.data = data;
+       return result;
+   }
+
+   @Override
+   public void markRolledBack(List<Object> recordIds, boolean rolledBack) {
+       MongoCollection<Document> collection = MongoStorageAdapter.getCollection(MongoStorageAdapter.collectionEventRecordsName);
+
+       for (List<Object> batch : Lists.partition(recordIds, UPDATE_BATCH_SIZE)) {
+           List<ObjectId> ids = new ArrayList<>();
+           batch.forEach(id -> ids.add(new ObjectId(id.toString())));
+
+           collection.updateMany(new Document("_id", new Document("$in", ids)),
+                   new Document("$set", new Document(DataQueries.RolledBack.toString(), rolledBack)));
+       }
    }
 
    /**
-    * Given a list of parameters, will remove all matching records.
+    * Given a list of parameters, will remove matching records. At most
+    * the query limit is removed at once, oldest first.
     *
     * @param query Query conditions indicating what we're purging
     * @return
     */
-   // @todo implement
    @Override
    public StorageDeleteResult delete(Query query) {
-       return new StorageDeleteResult();
+       MongoCollection<Document> collection = MongoStorageAdapter.getCollection(MongoStorageAdapter.collectionEventRecordsName);
+
+       // Only ids are read so the deletion itself stays a single indexed request
+       List<Object> ids = new ArrayList<>();
+       try (MongoCursor<Document> cursor = collection.find(buildConditions(query.getConditions()))
+               .projection(new Document("_id", 1))
+               .sort(new Document("_id", 1))
+               .limit(query.getLimit())
+               .iterator()) {
+           while (cursor.hasNext()) {
+               ids.add(cursor.next().get("_id"));
+           }
+       }
+
+       if (ids.isEmpty()) {
+           return new StorageDeleteResult(0);
+       }
+
+       return new StorageDeleteResult((int) collection.deleteMany(new Document("_id", new Document("$in", ids))).getDeletedCount());
    }
 }
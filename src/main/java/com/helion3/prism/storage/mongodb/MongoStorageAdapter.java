@@ -28,6 +28,7 @@ import com.helion3.prism.Prism;
 import com.helion3.prism.api.storage.StorageAdapter;
 import com.helion3.prism.api.storage.StorageAdapterRecords;
 import com.helion3.prism.api.storage.StorageAdapterSettings;
+import com.helion3.prism.storage.PurgeScheduler;
 import com.helion3.prism.storage.mongodb.codec.PrimitiveArrayCodec;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
@@ -48,6 +49,7 @@ public class MongoStorageAdapter implements StorageAdapter {
     private static MongoClient mongoClient = null;
     private static MongoDatabase database;
     private final MongoRecords records;
+    private PurgeScheduler purgeScheduler;
     private final String databaseName;
 
     protected static String collectionEventRecordsName;
@@ -96,10 +98,19 @@ public class MongoStorageAdapter implements StorageAdapter {
             getCollection(collectionEventRecordsName).createIndex(
                     new Document("Location.X", 1).append("Location.Z", 1).append("Location.Y", 1).append("Created", -1));
             getCollection(collectionEventRecordsName).createIndex(new Document("Created", -1).append("EventName", 1));
+            getCollection(collectionEventRecordsName).createIndex(
+                    new Document("RolledBack", 1).append("Location.X", 1).append("Location.Z", 1).append("Location.Y", 1));
 
             // TTL
             IndexOptions options = new IndexOptions().expireAfter(0L, TimeUnit.SECONDS);
             getCollection(collectionEventRecordsName).createIndex(new Document("Expires", 1), options);
+
+            // Removes records written before the current expiration was configured
+            if (Prism.getInstance().getConfig().getStorageCategory().isShouldExpire()) {
+                purgeScheduler = new PurgeScheduler("PrismMongoPurge", records);
+                purgeScheduler.start();
+            }
+
             return true;
         } catch (Exception e) {
             return false;
@@ -134,6 +145,10 @@ public class MongoStorageAdapter implements StorageAdapter {
      */
     @Override
     public void close() {
+        if (purgeScheduler != null) {
+            purgeScheduler.stop();
+        }
+
         mongoClient.close();
     }
 
@@ -144,9 +159,9 @@ public class MongoStorageAdapter implements StorageAdapter {
      * @return
      * @throws Exception If connection fails
      */
-    // @todo implement
     @Override
     public boolean testConnection() throws Exception {
-        return false;
+        database.runCommand(new Document("ping", 1));
+        return true;
     }
 }
@@ -0,0 +1,289 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage.mysql;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+import org.mariadb.jdbc.MariaDbStatement;
+
+/**
+ * Inserts many rows into a single MySQL table using one of several
+ * bulk strategies. Only plain JDBC is used so it works with both the
+ * MySQL and MariaDB drivers.
+ *
+ * Each column has a value expression containing a single '?', such as
+ * "UNHEX(?)", which is applied to the value on the server.
+ */
+public class MySQLBulkInsert {
+
+    /**
+     * Largest amount of placeholders allowed in a single prepared statement.
+     */
+    private static final int MAXIMUM_PARAMETERS = 65535;
+
+    private final String table;
+    private final List<String> columns;
+    private final List<String> expressions;
+    private final int rowsPerStatement;
+
+    /**
+     * How rows are sent to the server.
+     */
+    public enum Mode {
+        /**
+         * One INSERT per row, sent as a JDBC batch.
+         */
+        BATCH,
+
+        /**
+         * INSERT statements holding many rows each.
+         */
+        MULTI_ROW,
+
+        /**
+         * LOAD DATA LOCAL INFILE streamed from memory, generated keys
+         * are not available.
+         */
+        LOAD_DATA;
+
+        /**
+         * Parses a mode from its configuration name, such as "multi-row".
+         *
+         * @param value Configured value
+         * @return Mode
+         * @throws IllegalArgumentException If the value is not a mode
+         */
+        public static Mode of(String value) {
+            return valueOf(value.replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Creates a bulk insert for the given columns.
+     *
+     * @param table Table name
+     * @param columns Column names
+     * @param expressions Value expression of each column, containing a single '?'
+     * @param maximumRowsPerStatement Maximum rows sent in a single multi-row INSERT
+     */
+    public MySQLBulkInsert(String table, List<String> columns, List<String> expressions, int maximumRowsPerStatement) {
+        if (columns.size() != expressions.size()) {
+            throw new IllegalArgumentException("Every column needs a value expression");
+        }
+
+        this.table = table;
+        this.columns = columns;
+        this.expressions = expressions;
+        this.rowsPerStatement = Math.max(1, Math.min(maximumRowsPerStatement, MAXIMUM_PARAMETERS / columns.size()));
+    }
+
+    /**
+     * Inserts the rows using the given connection, the caller is
+     * responsible for the transaction.
+     *
+     * @param conn Connection
+     * @param rows Values of each row, in column order
+     * @param mode How rows are sent
+     * @param returnKeys Whether to return the generated keys
+     * @return Generated keys in row order, empty if not requested
+     * @throws SQLException If the insert fails
+     */
+    public List<Long> insert(Connection conn, List<Object[]> rows, Mode mode, boolean returnKeys) throws SQLException {
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (returnKeys && mode == Mode.LOAD_DATA) {
+            throw new IllegalArgumentException("LOAD DATA can't return generated keys");
+        }
+
+        List<Long> keys = new ArrayList<>(returnKeys ? rows.size() : 0);
+        if (mode == Mode.LOAD_DATA) {
+            loadData(conn, rows);
+        } else if (mode == Mode.MULTI_ROW) {
+            for (int i = 0; i < rows.size(); i += rowsPerStatement) {
+                multiRow(conn, rows.subList(i, Math.min(i + rowsPerStatement, rows.size())), returnKeys, keys);
+            }
+        } else {
+            batch(conn, rows, returnKeys, keys);
+        }
+
+        if (returnKeys && keys.size() != rows.size()) {
+            throw new SQLException("Expected " + rows.size() + " generated keys, received " + keys.size());
+        }
+
+        return keys;
+    }
+
+    private void batch(Connection conn, List<Object[]> rows, boolean returnKeys, List<Long> keys) throws SQLException {
+        String sql = "INSERT INTO " + table + "(" + String.join(", ", columns) + ") VALUES " + getRowPlaceholders();
+        try (PreparedStatement statement = prepare(conn, sql, returnKeys)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+            readKeys(statement, returnKeys, keys);
+        }
+    }
+
+    private void multiRow(Connection conn, List<Object[]> rows, boolean returnKeys, List<Long> keys) throws SQLException {
+        String sql = "INSERT INTO " + table + "(" + String.join(", ", columns) + ") VALUES "
+                + String.join(", ", Collections.nCopies(rows.size(), getRowPlaceholders()));
+
+        try (PreparedStatement statement = prepare(conn, sql, returnKeys)) {
+            int index = 1;
+            for (Object[] row : rows) {
+                for (Object value : row) {
+                    statement.setObject(index++, value);
+                }
+            }
+
+            statement.executeUpdate();
+            readKeys(statement, returnKeys, keys);
+        }
+    }
+
+    private void loadData(Connection conn, List<Object[]> rows) throws SQLException {
+        // Every column is read into a variable so expressions can be applied
+        List<String> variables = new ArrayList<>();
+        List<String> assignments = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            variables.add("@v" + i);
+            assignments.add(columns.get(i) + " = " + expressions.get(i).replace("?", "@v" + i));
+        }
+
+        String sql = "LOAD DATA LOCAL INFILE 'prism.tsv' INTO TABLE " + table + " CHARACTER SET utf8mb4 "
+                + "FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' "
+                + "(" + String.join(", ", variables) + ") SET " + String.join(", ", assignments);
+
+        StringBuilder data = new StringBuilder();
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    data.append('\t');
+                }
+
+                appendValue(data, row[i]);
+            }
+
+            data.append('\n');
+        }
+
+        try (Statement statement = conn.createStatement()) {
+            setLocalInfileInputStream(statement, new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8)));
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Hands the in-memory data to the driver in place of a file.
+     *
+     * @param statement Statement about to run LOAD DATA
+     * @param data Data stream
+     * @throws SQLException If the driver doesn't support streaming
+     */
+    private static void setLocalInfileInputStream(Statement statement, ByteArrayInputStream data) throws SQLException {
+        if (statement.isWrapperFor(JdbcStatement.class)) {
+            statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(data);
+        } else if (statement.isWrapperFor(MariaDbStatement.class)) {
+            statement.unwrap(MariaDbStatement.class).setLocalInfileInputStream(data);
+        } else {
+            throw new SQLException("LOAD DATA streaming is not supported by " + statement.getClass().getName());
+        }
+    }
+
+    /**
+     * Appends a value in the LOAD DATA text format.
+     *
+     * @param data Builder
+     * @param value Value, null is written as \N
+     */
+    static void appendValue(StringBuilder data, Object value) {
+        if (value == null) {
+            data.append("\\N");
+            return;
+        }
+
+        String string = value.toString();
+        for (int i = 0; i < string.length(); i++) {
+            char character = string.charAt(i);
+            switch (character) {
+                case '\\':
+                    data.append("\\\\");
+                    break;
+                case '\t':
+                    data.append("\\t");
+                    break;
+                case '\n':
+                    data.append("\\n");
+                    break;
+                case '\r':
+                    data.append("\\r");
+                    break;
+                case '\0':
+                    data.append("\\0");
+                    break;
+                default:
+                    data.append(character);
+            }
+        }
+    }
+
+    private String getRowPlaceholders() {
+        return "(" + String.join(", ", expressions) + ")";
+    }
+
+    private static PreparedStatement prepare(Connection conn, String sql, boolean returnKeys) throws SQLException {
+        return returnKeys ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : conn.prepareStatement(sql);
+    }
+
+    private static void readKeys(Statement statement, boolean returnKeys, List<Long> keys) throws SQLException {
+        if (!returnKeys) {
+            return;
+        }
+
+        try (ResultSet rs = statement.getGeneratedKeys()) {
+            while (rs.next()) {
+                keys.add(rs.getLong(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.helion3.prism.util.DataQueries;
+
+/**
+ * Maintains RANGE partitions on the created column of the records table.
+ *
+ * Every partition covers one interval, named after the UTC date it starts
+ * on. A trailing MAXVALUE partition catches records past the last interval
+ * so inserts never fail, new intervals are split off it ahead of time.
+ * Expired records are removed by dropping whole partitions.
+ */
+public class MySQLPartitionManager {
+
+    private static final String MAXIMUM_PARTITION = "pmax";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    /**
+     * MySQL allows 8192 partitions, older records share the first one.
+     */
+    private static final int MAXIMUM_PARTITIONS = 1024;
+
+    /**
+     * Intervals created ahead of the current one.
+     */
+    private static final int INTERVALS_AHEAD = 3;
+
+    private final String table;
+    private final Interval interval;
+
+    /**
+     * Length of each partition.
+     */
+    public enum Interval {
+        DAILY,
+        WEEKLY;
+
+        /**
+         * Parses an interval from its configuration name.
+         *
+         * @param value Configured value
+         * @return Interval
+         * @throws IllegalArgumentException If the value is not an interval
+         */
+        public static Interval of(String value) {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * Returns the start of the interval containing a date.
+         *
+         * @param date Date
+         * @return First day of the interval
+         */
+        public LocalDate floor(LocalDate date) {
+            return this == WEEKLY ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : date;
+        }
+
+        /**
+         * Returns the start of the following interval.
+         *
+         * @param start First day of an interval
+         * @return First day of the next interval
+         */
+        public LocalDate next(LocalDate start) {
+            return this == WEEKLY ? start.plusWeeks(1) : start.plusDays(1);
+        }
+    }
+
+    /**
+     * @param table Records table name, including the prefix
+     * @param interval Length of each partition
+     */
+    public MySQLPartitionManager(String table, Interval interval) {
+        this.table = table;
+        this.interval = interval;
+    }
+
+    /**
+     * Builds the partition clause of a new records table.
+     *
+     * @param first Date of the oldest record
+     * @param today Current date
+     * @return PARTITION BY clause
+     */
+    public String getPartitionClause(LocalDate first, LocalDate today) {
+        LocalDate last = getLastStart(today);
+        LocalDate start = interval.floor(first.isAfter(today) ? today : first);
+
+        List<String> partitions = new ArrayList<>();
+        for (; !start.isAfter(last); start = interval.next(start)) {
+            partitions.add(getPartition(start));
+        }
+
+        // Only the newest intervals are kept when there would be too many
+        if (partitions.size() > MAXIMUM_PARTITIONS) {
+            partitions = partitions.subList(partitions.size() - MAXIMUM_PARTITIONS, partitions.size());
+        }
+
+        partitions.add("PARTITION " + MAXIMUM_PARTITION + " VALUES LESS THAN MAXVALUE");
+
+        return "PARTITION BY RANGE (" + DataQueries.Created + ") (" + String.join(", ", partitions) + ")";
+    }
+
+    /**
+     * Checks whether the records table is partitioned.
+     *
+     * @param conn Connection
+     * @return True if partitioned
+     * @throws SQLException
+     */
+    public boolean isPartitioned(Connection conn) throws SQLException {
+        return !getPartitions(conn).isEmpty();
+    }
+
+    /**
+     * Partitions an existing records table. The table is rebuilt, which
+     * takes a while for large tables.
+     *
+     * @param conn Connection
+     * @param today Current date
+     * @throws SQLException
+     */
+    public void partition(Connection conn, LocalDate today) throws SQLException {
+        LocalDate first = today;
+        try (PreparedStatement statement = conn.prepareStatement("SELECT MIN(" + DataQueries.Created + ") FROM " + table);
+             ResultSet rs = statement.executeQuery()) {
+            if (rs.next() && rs.getObject(1) != null) {
+                first = toDate(rs.getLong(1));
+            }
+        }
+
+        // The partitioning column has to be part of the primary key
+        conn.prepareStatement("ALTER TABLE " + table + " "
+                + "DROP PRIMARY KEY, ADD PRIMARY KEY (`id`, `" + DataQueries.Created + "`) "
+                + getPartitionClause(first, today)).execute();
+    }
+
+    /**
+     * Splits upcoming intervals off the MAXVALUE partition.
+     *
+     * @param conn Connection
+     * @param today Current date
+     * @return Number of partitions created
+     * @throws SQLException
+     */
+    public int createPartitions(Connection conn, LocalDate today) throws SQLException {
+        long bound = 0;
+        for (Partition partition : getPartitions(conn)) {
+            if (partition.bound != null) {
+                bound = Math.max(bound, partition.bound);
+            }
+        }
+
+        // Intervals start where the last partition ends
+        LocalDate start = bound > 0 ? toDate(bound) : interval.floor(today);
+
+        List<String> partitions = new ArrayList<>();
+        for (LocalDate last = getLastStart(today); !start.isAfter(last); start = interval.next(start)) {
+            partitions.add(getPartition(start));
+        }
+
+        if (partitions.isEmpty()) {
+            return 0;
+        }
+
+        partitions.add("PARTITION " + MAXIMUM_PARTITION + " VALUES LESS THAN MAXVALUE");
+        conn.prepareStatement("ALTER TABLE " + table + " REORGANIZE PARTITION " + MAXIMUM_PARTITION
+                + " INTO (" + String.join(", ", partitions) + ")").execute();
+
+        return partitions.size() - 1;
+    }
+
+    /**
+     * Drops partitions holding only records created before the cutoff.
+     * Records in the partition containing the cutoff are kept until the
+     * whole partition has expired.
+     *
+     * @param conn Connection
+     * @param cutoff Epoch seconds
+     * @return Number of partitions dropped
+     * @throws SQLException
+     */
+    public int dropPartitions(Connection conn, long cutoff) throws SQLException {
+        List<String> expired = new ArrayList<>();
+        for (Partition partition : getPartitions(conn)) {
+            if (partition.bound != null && partition.bound <= cutoff) {
+                expired.add(partition.name);
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            conn.prepareStatement("ALTER TABLE " + table + " DROP PARTITION " + String.join(", ", expired)).execute();
+        }
+
+        return expired.size();
+    }
+
+    private List<Partition> getPartitions(Connection conn) throws SQLException {
+        String sql = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL "
+                + "ORDER BY PARTITION_ORDINAL_POSITION";
+
+        List<Partition> partitions = new ArrayList<>();
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setString(1, table);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String description = rs.getString("PARTITION_DESCRIPTION");
+                    Long bound = "MAXVALUE".equalsIgnoreCase(description) ? null : Long.valueOf(description);
+                    partitions.add(new Partition(rs.getString("PARTITION_NAME"), bound));
+                }
+            }
+        }
+
+        return partitions;
+    }
+
+    private LocalDate getLastStart(LocalDate today) {
+        LocalDate start = interval.floor(today);
+        for (int i = 0; i < INTERVALS_AHEAD; i++) {
+            start = interval.next(start);
+        }
+
+        return start;
+    }
+
+    private String getPartition(LocalDate start) {
+        return "PARTITION " + start.format(NAME_FORMAT) + " VALUES LESS THAN (" + toEpoch(interval.next(start)) + ")";
+    }
+
+    static long toEpoch(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    }
+
+    static LocalDate toDate(long epoch) {
+        return Instant.ofEpochSecond(epoch).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private static final class Partition {
+
+        private final String name;
+        private final Long bound;
+
+        private Partition(String name, Long bound) {
+            this.name = name;
+            this.bound = bound;
+        }
+    }
+}
@@ -24,6 +24,7 @@
 package com.helion3.prism.storage.mysql;
 
 import com.helion3.prism.api.flags.Flag;
+import com.helion3.prism.api.query.Query;
 import com.helion3.prism.api.query.QuerySession;
 import com.helion3.prism.api.query.SQLQuery;
 import com.helion3.prism.util.DataQueries;
@@ -38,9 +39,10 @@ public class MySQLQuery extends SQLQuery {
      * Constructs a MySQL SQL query from a given QuerySession.
      *
      * @param session QuerySession
+     * @param joinExtra Whether to join the extra table
      * @return SQLQuery
      */
-    public static SQLQuery from(QuerySession session) {
+    public static SQLQuery from(QuerySession session, boolean joinExtra) {
         Builder builder = SQLQuery.builder().select().from(tablePrefix + "records AS r");
         if (!session.hasFlag(Flag.NO_GROUP)) {
             builder.group(
@@ -49,18 +51,41 @@ public class MySQLQuery extends SQLQuery {
                     DataQueries.Player.toString(),
                     DataQueries.Cause.toString(),
                     "DATE_FORMAT(created, '%Y-%m-%d')"
-            ).col("COUNT(*) AS total").col("DATE_FORMAT(created, '%Y-%m-%d') as created");
+            ).col(GROUPED_TOTAL).col("DATE_FORMAT(created, '%Y-%m-%d') as created");
+        } else if (!joinExtra) {
+            builder.col("*");
         } else {
             builder.col("*").leftJoin(tablePrefix + "extra AS e", "r.id = e.record_id");
         }
 
         builder.hex(DataQueries.Player.toString(), DataQueries.WorldUuid.toString()).conditions(session.getQuery().getConditions());
-        builder.valueMutator(DataQueries.Player, value -> "UNHEX('" + TypeUtil.uuidStringToDbString(value) + "')");
-        builder.valueMutator(DataQueries.Location.then(DataQueries.WorldUuid), value -> "UNHEX('" + TypeUtil.uuidStringToDbString(value) + "')");
+        addValueMutators(builder);
 
         // Get Sorting order.
         builder.order("created " + session.getSortBy().getString());
 
         return builder.build();
     }
+
+    /**
+     * Constructs a query deleting records matching a given Query within an id range.
+     *
+     * @param query Query
+     * @param fromId First id, inclusive
+     * @param toId Last id, exclusive
+     * @return SQLQuery
+     */
+    public static SQLQuery delete(Query query, long fromId, long toId) {
+        Builder builder = SQLQuery.builder().delete().from(tablePrefix + "records").conditions(query.getConditions());
+        builder.where("id >= ? AND id < ?", fromId, toId);
+        addValueMutators(builder);
+
+        return builder.build();
+    }
+
+    private static void addValueMutators(Builder builder) {
+        builder.valueMutator(DataQueries.Player, "UNHEX(?)", TypeUtil::uuidStringToDbString);
+        builder.valueMutator(DataQueries.Location.then(DataQueries.WorldUuid), "UNHEX(?)", TypeUtil::uuidStringToDbString);
+        addValueMutators(builder, MySQLStorageAdapter.getDictionary());
+    }
 }
@@ -26,189 +26,171 @@ package com.helion3.prism.storage.mysql;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.Statement;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import com.helion3.prism.api.flags.Flag;
 import com.helion3.prism.api.records.Result;
 import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
 import org.spongepowered.api.data.DataView;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.helion3.prism.Prism;
 import com.helion3.prism.api.query.Query;
 import com.helion3.prism.api.query.QuerySession;
 import com.helion3.prism.api.query.SQLQuery;
-import com.helion3.prism.api.storage.StorageAdapterRecords;
-import com.helion3.prism.api.storage.StorageDeleteResult;
 import com.helion3.prism.api.storage.StorageWriteResult;
+import com.helion3.prism.metrics.Metrics;
+import com.helion3.prism.storage.ExtraDataCodec;
+import com.helion3.prism.storage.SQLDictionary;
+import com.helion3.prism.storage.SQLRecords;
 import com.helion3.prism.util.DataQueries;
 import com.helion3.prism.util.DataUtil;
 import com.helion3.prism.util.TypeUtil;
 
-public class MySQLRecords implements StorageAdapterRecords {
+public class MySQLRecords extends SQLRecords {
 
-    private final String tablePrefix = Prism.getInstance().getConfig().getStorageCategory().getTablePrefix();
+    private static final int ROWS_PER_STATEMENT = 1000;
 
-    @Override
-    public StorageWriteResult write(List<DataContainer> containers) throws Exception {
+    private final boolean extraInline = MySQLStorageAdapter.isExtraInline();
 
-        List<String> extraData = new ArrayList<>();
-        Map<Integer, String> extraDataMap = new HashMap<>();
+    private final MySQLBulkInsert.Mode insertMode = parseInsertMode(Prism.getInstance().getConfig().getStorageCategory().getMysqlInsertMode());
 
-        String sql = String.format("INSERT INTO %srecords(%s, %s, %s, %s, %s, %s, %s, %s, %s)" +
-                        " values(?, ?, UNHEX(?), ?, ?, ?, ?, UNHEX(?), ?)",
-                tablePrefix,
-                DataQueries.Created, DataQueries.EventName, DataQueries.WorldUuid,
-                DataQueries.X, DataQueries.Y, DataQueries.Z,
-                DataQueries.Target, DataQueries.Player, DataQueries.Cause
-        );
+    private final MySQLBulkInsert recordsInsert = new MySQLBulkInsert(tablePrefix + "records",
+            Arrays.asList("id",
+                    DataQueries.Created.toString(), DataQueries.EventName.toString(), DataQueries.WorldUuid.toString(),
+                    DataQueries.X.toString(), DataQueries.Y.toString(), DataQueries.Z.toString(),
+                    DataQueries.Target.toString(), DataQueries.Player.toString(), DataQueries.Cause.toString(),
+                    DataQueries.Count.toString(), "extra"),
+            Arrays.asList("?", "?", "?", "UNHEX(?)", "?", "?", "?", "?", "UNHEX(?)", "?", "?", "FROM_BASE64(?)"),
+            ROWS_PER_STATEMENT);
 
-        try (Connection conn = MySQLStorageAdapter.getConnection(); PreparedStatement statement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            conn.setAutoCommit(false);
+    private final MySQLBulkInsert extraInsert = new MySQLBulkInsert(tablePrefix + "extra",
+            Arrays.asList("record_id", "json"),
+            Arrays.asList("?", "?"),
+            ROWS_PER_STATEMENT);
 
-            for (DataContainer container : containers) {
-                DataView location = container.getView(DataQueries.Location).get();
+    @Override
+    public StorageWriteResult write(List<DataContainer> containers) throws Exception {
+        long start = System.nanoTime();
 
-                String playerUUID = null;
-                Optional<String> player = container.getString(DataQueries.Player);
-                if (player.isPresent()) {
-                    playerUUID = TypeUtil.uuidStringToDbString(player.get());
-                }
+        Set<String> values = new HashSet<>();
+        for (DataContainer container : containers) {
+            values.add(container.getString(DataQueries.EventName).get());
+            container.getString(DataQueries.Target).ifPresent(values::add);
+            container.getString(DataQueries.Cause).ifPresent(values::add);
+        }
 
-                statement.setLong( 1, System.currentTimeMillis() / 1000L );
-                statement.setObject(2, container.getString(DataQueries.EventName).get());
-                statement.setString(3, TypeUtil.uuidStringToDbString(location.getString(DataQueries.WorldUuid).get()));
-                statement.setInt(4, location.getInt(DataQueries.X).get());
-                statement.setInt(5, location.getInt(DataQueries.Y).get());
-                statement.setInt(6, location.getInt(DataQueries.Z).get());
-                statement.setString(7, container.getString(DataQueries.Target).orElse(null));
-                statement.setString(8, playerUUID);
-                statement.setString(9, container.getString(DataQueries.Cause).orElse(null));
-                statement.addBatch();
-
-                // Remove some data not needed for extra storage
-                container.remove(DataQueries.Location);
-                container.remove(DataQueries.EventName);
-                container.remove(DataQueries.Player);
-                container.remove(DataQueries.Cause);
-                container.remove(DataQueries.Target);
-
-                extraData.add(DataUtil.jsonFromDataView(container).toString());
+        // Resolve dictionary ids up front, new values are committed separately
+        Map<String, Integer> ids = MySQLStorageAdapter.getDictionary().getIds(values);
+
+        // Ids are allocated up front so extra rows don't have to wait for generated keys
+        long[] recordIds = MySQLStorageAdapter.getRecordIds().allocate(containers.size());
+
+        List<Object[]> rows = new ArrayList<>(containers.size());
+        List<Object[]> extraRows = new ArrayList<>();
+        for (int i = 0; i < containers.size(); i++) {
+            DataContainer container = containers.get(i);
+            String json = DataUtil.extraDataFromRecord(container)
+                    .map(extra -> DataUtil.jsonFromDataView(extra).toString())
+                    .orElse(null);
+
+            // Base64 keeps the compressed bytes safe for every insert mode, including LOAD DATA
+            String inlineExtra = null;
+            if (json != null && extraInline) {
+                inlineExtra = Base64.getEncoder().encodeToString(ExtraDataCodec.encode(json));
+            } else if (json != null) {
+                extraRows.add(new Object[]{recordIds[i], json});
             }
 
-            statement.executeBatch();
-            ResultSet keys = statement.getGeneratedKeys();
-            conn.commit();
+            rows.add(getRecordRow(recordIds[i], container, ids, inlineExtra));
+        }
 
-            int i = 0;
-            while (keys.next()) {
-                extraDataMap.put(keys.getInt(1), extraData.get(i));
-                i++;
-            }
+        try (Connection conn = MySQLStorageAdapter.getConnection()) {
+            conn.setAutoCommit(false);
 
-            writeExtraData(extraDataMap);
+            try {
+                recordsInsert.insert(conn, rows, insertMode, false);
+                extraInsert.insert(conn, extraRows, insertMode, false);
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
         }
 
+        Metrics.recordWrite(containers.size(), System.nanoTime() - start);
         return null;
     }
 
-    protected StorageWriteResult writeExtraData(Map<Integer, String> extraDataMap) throws Exception {
-        if (extraDataMap.isEmpty()) {
-            throw new IllegalArgumentException("Extra data map must not be empty.");
-        }
-
-        String sql = "INSERT INTO " + tablePrefix + "extra(record_id, json) values(?, ?)";
-        try (Connection conn = MySQLStorageAdapter.getConnection(); PreparedStatement statement = conn.prepareStatement(sql)) {
-            conn.setAutoCommit(false);
-
-            for (Entry<Integer, String> data : extraDataMap.entrySet()) {
-                statement.setInt(1, data.getKey());
-                statement.setString(2, data.getValue());
-                statement.addBatch();
-            }
+    /**
+     * Builds the column values of a record.
+     *
+     * @param id Allocated record id
+     * @param container Record
+     * @param ids Dictionary ids of the batch
+     * @param inlineExtra Base64 encoded compressed extra data, or null
+     * @return Values in insert column order
+     */
+    private Object[] getRecordRow(long id, DataContainer container, Map<String, Integer> ids, String inlineExtra) {
+        DataView location = container.getView(DataQueries.Location).get();
+
+        return new Object[]{
+                id,
+                DataUtil.getCreated(container).getTime() / 1000L,
+                ids.get(container.getString(DataQueries.EventName).get()),
+                TypeUtil.uuidStringToDbString(location.getString(DataQueries.WorldUuid).get()),
+                location.getInt(DataQueries.X).get(),
+                location.getInt(DataQueries.Y).get(),
+                location.getInt(DataQueries.Z).get(),
+                container.getString(DataQueries.Target).map(ids::get).orElse(null),
+                container.getString(DataQueries.Player).map(TypeUtil::uuidStringToDbString).orElse(null),
+                container.getString(DataQueries.Cause).map(ids::get).orElse(null),
+                container.getInt(DataQueries.Count).orElse(1),
+                inlineExtra
+        };
+    }
 
-            statement.executeBatch();
-            conn.commit();
+    private static MySQLBulkInsert.Mode parseInsertMode(String value) {
+        try {
+            return MySQLBulkInsert.Mode.of(value);
+        } catch (IllegalArgumentException | NullPointerException ex) {
+            Prism.getInstance().getLogger().warn("Invalid MySQL insert mode {}, using {}", value, MySQLBulkInsert.Mode.BATCH);
+            return MySQLBulkInsert.Mode.BATCH;
         }
-
-        return null;
     }
 
     @Override
     public CompletableFuture<List<Result>> query(QuerySession session, boolean translate) throws Exception {
+        long start = System.nanoTime();
+
         // Prepare results
         List<Result> results = new ArrayList<>();
         CompletableFuture<List<Result>> future = new CompletableFuture<>();
         List<UUID> uuidsPendingLookup = new ArrayList<>();
 
         // Build query
-        SQLQuery query = MySQLQuery.from(session);
-        Prism.getInstance().getLogger().debug("MySQL Query: " + query);
+        boolean joinExtra = MySQLStorageAdapter.isExtraTableInUse();
+        SQLQuery query = MySQLQuery.from(session, joinExtra);
+        Prism.getInstance().getLogger().debug("MySQL Query: {} {}", query, query.getParameters());
 
-        try (Connection conn = MySQLStorageAdapter.getConnection(); PreparedStatement statement = conn.prepareStatement(query.toString()); ResultSet rs = statement.executeQuery()) {
+        SQLDictionary dictionary = MySQLStorageAdapter.getDictionary();
+        try (Connection conn = MySQLStorageAdapter.getConnection(); PreparedStatement statement = query.prepare(conn); ResultSet rs = statement.executeQuery()) {
             while (rs.next()) {
-                // Build our result object
-                Result result = Result.from(rs.getString(DataQueries.EventName.toString()), !session.hasFlag(Flag.NO_GROUP));
-
-                // Restore the data container
-                DataContainer data = DataContainer.createNew();
-                data.set(DataQueries.EventName, rs.getString(DataQueries.EventName.toString()));
-                data.set(DataQueries.Created, rs.getLong(DataQueries.Created.toString()));
-
-                String target = rs.getString(DataQueries.Target.toString());
-                data.set(DataQueries.Target, target != null ? target : "");
-
-                if (!session.hasFlag(Flag.NO_GROUP)) {
-                    data.set(DataQueries.Count, rs.getInt("total"));
-                } else {
-                    DataContainer loc = DataContainer.createNew();
-                    loc.set(DataQueries.X, rs.getInt(DataQueries.X.toString()));
-                    loc.set(DataQueries.Y, rs.getInt(DataQueries.Y.toString()));
-                    loc.set(DataQueries.Z, rs.getInt(DataQueries.Z.toString()));
-                    loc.set(DataQueries.WorldUuid, TypeUtil.uuidStringFromDbString(rs.getString("worldUuidHexed")));
-                    data.set(DataQueries.Location, loc);
-
-                    if (rs.getString("json") != null) {
-                        try {
-                            JsonObject json = new JsonParser().parse(rs.getString("json")).getAsJsonObject();
-                            DataView extra = DataUtil.dataViewFromJson(json);
-
-                            for (DataQuery key : extra.getKeys(false)) {
-                                data.set(key, extra.get(key).get());
-                            }
-                        } catch (Exception ex) {
-                            Prism.getInstance().getLogger().error("Failed to deserialize {} at {}", target, loc.toString());
-                            throw ex;
-                        }
-                    }
-                }
-
-                // Determine the final name of the event source
-                if (rs.getString("playerHexed") != null && !rs.getString("playerHexed").isEmpty()) {
-                    UUID uuid = TypeUtil.uuidFromDbString(rs.getString("playerHexed"));
-                    data.set(DataQueries.Cause, uuid.toString());
-
-                    if (translate) {
-                        uuidsPendingLookup.add(uuid);
-                    }
-                } else {
-                    data.set(DataQueries.Cause, rs.getString(DataQueries.Cause.toString()));
-                }
-
-                result.data = data;
-                results.add(result);
+                results.add(readResult(rs, session, dictionary, joinExtra, translate ? uuidsPendingLookup : null));
             }
 
+            Metrics.recordQuery(System.nanoTime() - start);
+
             if (translate && !uuidsPendingLookup.isEmpty()) {
                 DataUtil.translateUuidsToNames(results, uuidsPendingLookup).thenAccept(future::complete);
             } else {
@@ -220,9 +202,100 @@ public class MySQLRecords implements StorageAdapterRecords {
     }
 
     @Override
-    public StorageDeleteResult delete(Query query) throws Exception {
-        // @todo implement
-        return null;
+    public void stream(QuerySession session, Consumer<Result> consumer) throws Exception {
+        long start = System.nanoTime();
+
+        boolean joinExtra = MySQLStorageAdapter.isExtraTableInUse();
+        SQLQuery query = MySQLQuery.from(session, joinExtra);
+        Prism.getInstance().getLogger().debug("MySQL Query: {} {}", query, query.getParameters());
+
+        SQLDictionary dictionary = MySQLStorageAdapter.getDictionary();
+
+        // A streaming result set locks its connection, dictionary misses borrow another one
+        try (Connection conn = MySQLStorageAdapter.getConnection();
+             PreparedStatement statement = query.prepare(conn)) {
+            // Row-by-row streaming for both Connector/J and MariaDB
+            statement.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                Metrics.recordQuery(System.nanoTime() - start);
+
+                try {
+                    while (rs.next()) {
+                        consumer.accept(readResult(rs, session, dictionary, joinExtra, null));
+                    }
+                } catch (CancellationException ex) {
+                    // Closing a streaming result set reads every remaining row unless the query is cancelled first
+                    statement.cancel();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores a result from the current row.
+     *
+     * @param rs Result set positioned on a row
+     * @param session QuerySession
+     * @param dictionary SQLDictionary
+     * @param joinExtra Whether the extra table was joined
+     * @param uuidsPendingLookup Collects player UUIDs to translate, or null
+     * @return Result
+     * @throws Exception
+     */
+    private Result readResult(ResultSet rs, QuerySession session, SQLDictionary dictionary, boolean joinExtra, List<UUID> uuidsPendingLookup) throws Exception {
+        String eventName = dictionary.getValue(rs.getInt(DataQueries.EventName.toString()));
+
+        // Build our result object
+        Result result = Result.from(eventName, !session.hasFlag(Flag.NO_GROUP));
+
+        // Restore the data container
+        DataContainer data = DataContainer.createNew();
+        data.set(DataQueries.EventName, eventName);
+        data.set(DataQueries.Created, rs.getLong(DataQueries.Created.toString()));
+
+        String target = dictionary.getValue(rs.getInt(DataQueries.Target.toString()));
+        data.set(DataQueries.Target, target != null ? target : "");
+
+        if (!session.hasFlag(Flag.NO_GROUP)) {
+            data.set(DataQueries.Count, rs.getInt("total"));
+        } else {
+            DataContainer loc = DataContainer.createNew();
+            loc.set(DataQueries.X, rs.getInt(DataQueries.X.toString()));
+            loc.set(DataQueries.Y, rs.getInt(DataQueries.Y.toString()));
+            loc.set(DataQueries.Z, rs.getInt(DataQueries.Z.toString()));
+            loc.set(DataQueries.WorldUuid, TypeUtil.uuidStringFromDbString(rs.getString("worldUuidHexed")));
+            data.set(DataQueries.Location, loc);
+            data.set(DataQueries.RecordId, rs.getLong("id"));
+            readCount(rs, data);
+
+            readExtraData(rs, joinExtra, data);
+        }
+
+        // Determine the final name of the event source
+        if (rs.getString("playerHexed") != null && !rs.getString("playerHexed").isEmpty()) {
+            UUID uuid = TypeUtil.uuidFromDbString(rs.getString("playerHexed"));
+            data.set(DataQueries.Cause, uuid.toString());
+
+            if (uuidsPendingLookup != null) {
+                uuidsPendingLookup.add(uuid);
+            }
+        } else {
+            data.set(DataQueries.Cause, dictionary.getValue(rs.getInt(DataQueries.Cause.toString())));
+        }
+
+        result.data = data;
+        return result;
     }
-}
 
+    @Override
+    protected Connection getConnection() throws SQLException {
+        return MySQLStorageAdapter.getConnection();
+    }
+
+    @Override
+    protected SQLQuery deleteQuery(Query query, long fromId, long toId) {
+        return MySQLQuery.delete(query, fromId, toId);
+    }
+}
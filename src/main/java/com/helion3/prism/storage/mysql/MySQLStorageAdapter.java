@@ -25,32 +25,59 @@ package com.helion3.prism.storage.mysql;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import com.helion3.prism.Prism;
 import com.helion3.prism.api.storage.StorageAdapter;
 import com.helion3.prism.api.storage.StorageAdapterRecords;
 import com.helion3.prism.api.storage.StorageAdapterSettings;
+import com.helion3.prism.storage.PurgeScheduler;
+import com.helion3.prism.storage.SQLDictionary;
+import com.helion3.prism.storage.SQLExtraMigration;
+import com.helion3.prism.storage.SQLIdAllocator;
 import com.helion3.prism.util.DataQueries;
 import com.helion3.prism.util.DateUtil;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.lang3.StringUtils;
 import org.spongepowered.api.scheduler.Task;
 
 public class MySQLStorageAdapter implements StorageAdapter {
 
+    private static final int MIGRATION_BATCH_SIZE = 10000;
+    private static final int ID_BLOCK_SIZE = 5000;
+
     private final String expiration = Prism.getInstance().getConfig().getStorageCategory().getExpireRecords();
     private final String tablePrefix = Prism.getInstance().getConfig().getStorageCategory().getTablePrefix();
-    private final int purgeBatchLimit = Prism.getInstance().getConfig().getStorageCategory().getPurgeBatchLimit();
     private final StorageAdapterRecords records;
+    private final MySQLPartitionManager partitionManager;
+    private Task maintenanceTask;
+    private PurgeScheduler purgeScheduler;
     private static HikariDataSource db;
+    private static SQLDictionary dictionary;
+    private static SQLExtraMigration extraMigration;
+    private static boolean extraInline;
+    private static SQLIdAllocator recordIds;
     private final String dns;
 
     /**
      * Create a new instance of the H2 storage adapter.
      */
     public MySQLStorageAdapter() {
+        partitionManager = createPartitionManager();
+
+        // Partitioned tables can't have foreign keys, so the extra table is unusable
+        extraInline = Prism.getInstance().getConfig().getStorageCategory().isExtraInline() || partitionManager != null;
+        if (extraInline && !Prism.getInstance().getConfig().getStorageCategory().isExtraInline()) {
+            Prism.getInstance().getLogger().warn("MySQL partitioning requires the inline extra layout, using it instead of the configured layout");
+        }
+
         records = new MySQLRecords();
 
         dns = String.format("jdbc:mysql://%s/%s",
@@ -59,6 +86,28 @@ public class MySQLStorageAdapter implements StorageAdapter {
         );
     }
 
+    /**
+     * Creates the partition manager if partitioning is enabled.
+     *
+     * @return MySQLPartitionManager, or null
+     */
+    private MySQLPartitionManager createPartitionManager() {
+        String partitioning = Prism.getInstance().getConfig().getStorageCategory().getMysqlPartitioning();
+        if (StringUtils.isBlank(partitioning) || partitioning.equalsIgnoreCase("none")) {
+            return null;
+        }
+
+        MySQLPartitionManager.Interval interval;
+        try {
+            interval = MySQLPartitionManager.Interval.of(partitioning);
+        } catch (IllegalArgumentException ex) {
+            Prism.getInstance().getLogger().error("Invalid input for MySQL partitioning configuration: " + partitioning);
+            return null;
+        }
+
+        return new MySQLPartitionManager(tablePrefix + "records", interval);
+    }
+
     /**
      * Get the connection.
      *
@@ -69,6 +118,47 @@ public class MySQLStorageAdapter implements StorageAdapter {
         return db.getConnection();
     }
 
+    /**
+     * Get the dictionary holding event names, targets and causes.
+     *
+     * @return SQLDictionary
+     */
+    protected static SQLDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Whether extra data is stored in the records table. Partitioning
+     * requires it regardless of the configured layout.
+     *
+     * @return True for the inline layout
+     */
+    protected static boolean isExtraInline() {
+        return extraInline;
+    }
+
+    /**
+     * Whether reads have to join the extra table. It holds the extra data
+     * unless the inline layout is used, and keeps older rows until they
+     * have all been moved into the records table.
+     *
+     * @return True if the extra table may hold extra data
+     */
+    protected static boolean isExtraTableInUse() {
+        return !extraInline
+                || extraMigration == null
+                || !extraMigration.isFinished();
+    }
+
+    /**
+     * Get the allocator handing out record ids.
+     *
+     * @return SQLIdAllocator
+     */
+    protected static SQLIdAllocator getRecordIds() {
+        return recordIds;
+    }
+
     @Override
     public boolean connect() throws Exception {
         try {
@@ -76,30 +166,73 @@ public class MySQLStorageAdapter implements StorageAdapter {
             HikariConfig config = new HikariConfig();
             config.setJdbcUrl(dns);
             String mysqlDriver = Prism.getInstance().getConfig().getStorageCategory().getMysqlDriver();
+            boolean loadData = StringUtils.equalsIgnoreCase(Prism.getInstance().getConfig().getStorageCategory().getMysqlInsertMode(), "load-data");
             if (mysqlDriver.equalsIgnoreCase("MySQL")) {
                 config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+
+                // Both drivers refuse LOAD DATA LOCAL unless it's enabled, each with its own property
+                if (loadData) {
+                    config.addDataSourceProperty("allowLoadLocalInfile", "true");
+                }
+
+                // Lookups only differ in their bound values, so their server side statements are reused
+                config.addDataSourceProperty("useServerPrepStmts", "true");
+                config.addDataSourceProperty("cachePrepStmts", "true");
+                config.addDataSourceProperty("prepStmtCacheSize", "250");
+                config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
             } else if (mysqlDriver.equalsIgnoreCase("MariaDB")) {
                 config.setDriverClassName("org.mariadb.jdbc.Driver");
+
+                if (loadData) {
+                    config.addDataSourceProperty("allowLocalInfile", "true");
+                }
+
+                // Caching is on by default, but statements are only prepared on the server when asked to
+                config.addDataSourceProperty("useServerPrepStmts", "true");
+                config.addDataSourceProperty("cachePrepStmts", "true");
+                config.addDataSourceProperty("prepStmtCacheSize", "250");
+                config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
             } else {
                 Prism.getInstance().getLogger().error("Invalid input for MySQL Driver configuration: " + mysqlDriver);
             }
+
             config.setUsername(Prism.getInstance().getConfig().getStorageCategory().getUsername());
             config.setPassword(Prism.getInstance().getConfig().getStorageCategory().getPassword());
             config.setMaximumPoolSize(Prism.getInstance().getConfig().getStorageCategory().getMaximumPoolSize());
             config.setMinimumIdle(Prism.getInstance().getConfig().getStorageCategory().getMinimumIdle());
 
             db = new HikariDataSource(config);
+            dictionary = new SQLDictionary(MySQLStorageAdapter::getConnection, tablePrefix + "dictionary",
+                    "INSERT IGNORE INTO " + tablePrefix + "dictionary(value) VALUES (?)");
+            recordIds = new SQLIdAllocator(MySQLStorageAdapter::getConnection, tablePrefix + "sequence", tablePrefix + "records", ID_BLOCK_SIZE);
 
             // Create table if needed
             createTables();
+            dictionary.load();
 
-            // Purge async
-            if (Prism.getInstance().getConfig().getStorageCategory().isShouldExpire()) {
+            if (extraInline) {
+                extraMigration = new SQLExtraMigration(MySQLStorageAdapter::getConnection, tablePrefix);
                 Task.builder()
                     .async()
-                    .name("PrismMySQLPurge")
-                    .execute(this::purge)
+                    .name("PrismMySQLExtraMigration")
+                    .execute(this::migrateExtra)
+                    .submit(Prism.getInstance().getPluginContainer());
+            }
+
+            if (partitionManager != null) {
+                partitionTables();
+
+                // Partitions are created ahead of time and expire as a whole
+                maintenanceTask = Task.builder()
+                    .async()
+                    .name("PrismMySQLPartitions")
+                    .interval(1, TimeUnit.HOURS)
+                    .execute(this::maintainPartitions)
                     .submit(Prism.getInstance().getPluginContainer());
+            } else if (Prism.getInstance().getConfig().getStorageCategory().isShouldExpire()) {
+                // Purge async
+                purgeScheduler = new PurgeScheduler("PrismMySQLPurge", records);
+                purgeScheduler.start();
             }
 
             return true;
@@ -119,23 +252,34 @@ public class MySQLStorageAdapter implements StorageAdapter {
                     + tablePrefix + "records ("
                     + "id int(10) unsigned NOT NULL AUTO_INCREMENT, "
                     + DataQueries.Created + " int(10) unsigned NOT NULL, "
-                    + DataQueries.EventName + " varchar(16) NOT NULL, "
+                    + DataQueries.EventName + " int(10) unsigned NOT NULL, "
                     + DataQueries.WorldUuid + " binary(16) NOT NULL, "
                     + DataQueries.X + " int(10) NOT NULL, "
                     + DataQueries.Y + " smallint(5) NOT NULL, "
                     + DataQueries.Z + " int(10) NOT NULL, "
-                    + DataQueries.Target + " varchar(255), "
+                    + DataQueries.Target + " int(10) unsigned, "
                     + DataQueries.Player + " binary(16), "
-                    + DataQueries.Cause + " varchar(55), "
-                    + "PRIMARY KEY (`id`), "
+                    + DataQueries.Cause + " int(10) unsigned, "
+                    + "extra blob, "
+                    + DataQueries.RolledBack + " tinyint(1) NOT NULL DEFAULT 0, "
+                    + DataQueries.Count + " int(10) unsigned NOT NULL DEFAULT 1, "
+                    + (partitionManager != null ? "PRIMARY KEY (`id`, `created`), " : "PRIMARY KEY (`id`), ")
                     + "KEY  `location` (`"+ DataQueries.WorldUuid
                         + "`, `" + DataQueries.X
                         + "`, `" + DataQueries.Z
                         + "`, `" + DataQueries.Y
                     + "`), "
+                    + "KEY `rolled_back` (`" + DataQueries.WorldUuid
+                        + "`, `" + DataQueries.RolledBack
+                        + "`, `" + DataQueries.X
+                        + "`, `" + DataQueries.Z
+                        + "`, `" + DataQueries.Y
+                    + "`), "
                     + "KEY `created` (`created`)"
                     + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8 " +
-                    "  DEFAULT COLLATE utf8_general_ci;";
+                    "  DEFAULT COLLATE utf8_general_ci"
+                    + (partitionManager != null ? " " + partitionManager.getPartitionClause(LocalDate.now(ZoneOffset.UTC), LocalDate.now(ZoneOffset.UTC)) : "")
+                    + ";";
             conn.prepareStatement(records).execute();
 
             String extra = "CREATE TABLE IF NOT EXISTS "
@@ -144,15 +288,36 @@ public class MySQLStorageAdapter implements StorageAdapter {
                     + "record_id int(10) unsigned NOT NULL, "
                     + "json TEXT, "
                     + "PRIMARY KEY (`id`), "
-                    + "KEY `record_id` (`record_id`), "
-                    + "CONSTRAINT " + tablePrefix + "extra_ibfk_1 "
-                    + "FOREIGN KEY (record_id) "
-                    + "REFERENCES " + tablePrefix + "records (id) "
-                    + "ON DELETE CASCADE"
+                    + "KEY `record_id` (`record_id`)"
+                    + (partitionManager != null ? "" : ", "
+                        + "CONSTRAINT " + tablePrefix + "extra_ibfk_1 "
+                        + "FOREIGN KEY (record_id) "
+                        + "REFERENCES " + tablePrefix + "records (id) "
+                        + "ON DELETE CASCADE")
                     + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8 "
                     + "DEFAULT COLLATE utf8_general_ci;";
             conn.prepareStatement(extra).execute();
 
+            // Values are case sensitive so free text targets keep their own spelling
+            String dictionary = "CREATE TABLE IF NOT EXISTS "
+                    + tablePrefix + "dictionary ("
+                    + "id int(10) unsigned NOT NULL AUTO_INCREMENT, "
+                    + "value varchar(255) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL, "
+                    + "PRIMARY KEY (`id`), "
+                    + "UNIQUE KEY `value` (`value`)"
+                    + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8 "
+                    + "DEFAULT COLLATE utf8_general_ci;";
+            conn.prepareStatement(dictionary).execute();
+
+            String sequence = "CREATE TABLE IF NOT EXISTS "
+                    + tablePrefix + "sequence ("
+                    + "name varchar(64) NOT NULL, "
+                    + "next_id bigint(20) unsigned NOT NULL, "
+                    + "PRIMARY KEY (`name`)"
+                    + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8 "
+                    + "DEFAULT COLLATE utf8_general_ci;";
+            conn.prepareStatement(sequence).execute();
+
             if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 1) {
                 // Expand target: 55 -> 255
                 conn.prepareStatement(String.format("ALTER TABLE %srecords MODIFY %s varchar(255);",
@@ -163,55 +328,256 @@ public class MySQLStorageAdapter implements StorageAdapter {
                 Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(2);
                 Prism.getInstance().getConfiguration().saveConfiguration();
             }
+
+            if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 2) {
+                migrateToDictionary(conn);
+
+                Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(3);
+                Prism.getInstance().getConfiguration().saveConfiguration();
+            }
+
+            if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 3) {
+                // Compressed extra data, tables created by this version already have it
+                if (getColumnType(conn, "extra") == null) {
+                    conn.prepareStatement(String.format("ALTER TABLE %srecords ADD COLUMN extra blob;", tablePrefix)).execute();
+                }
+
+                Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(4);
+                Prism.getInstance().getConfiguration().saveConfiguration();
+            }
+
+            if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 4) {
+                // Rolled back state, indexed ahead of the coordinates so applier queries can seek on it
+                if (getColumnType(conn, DataQueries.RolledBack.toString()) == null) {
+                    conn.prepareStatement(String.format("ALTER TABLE %srecords "
+                            + "ADD COLUMN %s tinyint(1) NOT NULL DEFAULT 0, "
+                            + "ADD KEY `rolled_back` (`%s`, `%s`, `%s`, `%s`, `%s`);",
+                            tablePrefix,
+                            DataQueries.RolledBack,
+                            DataQueries.WorldUuid, DataQueries.RolledBack, DataQueries.X, DataQueries.Z, DataQueries.Y
+                    )).execute();
+                }
+
+                Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(5);
+                Prism.getInstance().getConfiguration().saveConfiguration();
+            }
+
+            if (Prism.getInstance().getConfig().getGeneralCategory().getSchemaVersion() == 5) {
+                // Number of events a coalesced record stands for, older records are single events
+                if (getColumnType(conn, DataQueries.Count.toString()) == null) {
+                    conn.prepareStatement(String.format("ALTER TABLE %srecords ADD COLUMN %s int(10) unsigned NOT NULL DEFAULT 1;",
+                            tablePrefix,
+                            DataQueries.Count
+                    )).execute();
+                }
+
+                Prism.getInstance().getConfig().getGeneralCategory().setSchemaVersion(6);
+                Prism.getInstance().getConfiguration().saveConfiguration();
+            }
         }
     }
 
     /**
-     * Removes expires records and extra information from the database.
+     * Moves event names, targets and causes into the dictionary table.
+     * Records are converted in batches and the last converted id is kept
+     * in the sequence table, so the migration resumes from there if the
+     * server stops part way through.
+     *
+     * @param conn Connection
+     * @throws SQLException
      */
-    protected void purge() {
-        try {
-            Prism.getInstance().getLogger().info("Purging MySQL database...");
-            long purged = 0;
-            while (true) {
-                int count = purgeRecords();
-                if (count == 0) {
-                    break;
+    protected void migrateToDictionary(Connection conn) throws SQLException {
+        String[] columns = {DataQueries.EventName.toString(), DataQueries.Target.toString(), DataQueries.Cause.toString()};
+
+        // Tables created by this version already use the dictionary
+        Integer eventNameType = getColumnType(conn, columns[0]);
+        if (getColumnType(conn, columns[0] + "Id") == null && eventNameType != null && eventNameType != Types.VARCHAR) {
+            return;
+        }
+
+        // Converted ids are written to new columns which replace the originals once done
+        for (String column : columns) {
+            if (getColumnType(conn, column + "Id") == null) {
+                conn.prepareStatement(String.format("ALTER TABLE %srecords ADD COLUMN %sId int(10) unsigned;",
+                        tablePrefix, column
+                )).execute();
+            }
+        }
+
+        long maxId;
+        try (ResultSet rs = conn.prepareStatement("SELECT MAX(id) FROM " + tablePrefix + "records;").executeQuery()) {
+            maxId = rs.next() ? rs.getLong(1) : 0;
+        }
+
+        String progressName = tablePrefix + "dictionary_migration";
+        long startId = 0;
+        try (PreparedStatement statement = conn.prepareStatement("SELECT next_id FROM " + tablePrefix + "sequence WHERE name = ?;")) {
+            statement.setString(1, progressName);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    startId = rs.getLong(1);
+                }
+            }
+        }
+
+        if (startId > 0) {
+            Prism.getInstance().getLogger().info("Resuming the dictionary schema migration at record {}/{}", startId, maxId);
+        } else {
+            Prism.getInstance().getLogger().info("Migrating {} records to the dictionary schema, this may take a while...", maxId);
+        }
+
+        String insert = String.format("INSERT IGNORE INTO %sdictionary(value) "
+                        + "SELECT %2$s FROM %1$srecords WHERE id > ? AND id <= ? "
+                        + "UNION SELECT %3$s FROM %1$srecords WHERE id > ? AND id <= ? AND %3$s IS NOT NULL "
+                        + "UNION SELECT %4$s FROM %1$srecords WHERE id > ? AND id <= ? AND %4$s IS NOT NULL;",
+                tablePrefix, columns[0], columns[1], columns[2]
+        );
+
+        String update = String.format("UPDATE %srecords r "
+                        + "JOIN %1$sdictionary e ON e.value = r.%2$s "
+                        + "LEFT JOIN %1$sdictionary t ON t.value = r.%3$s "
+                        + "LEFT JOIN %1$sdictionary c ON c.value = r.%4$s "
+                        + "SET r.%2$sId = e.id, r.%3$sId = t.id, r.%4$sId = c.id "
+                        + "WHERE r.id > ? AND r.id <= ?;",
+                tablePrefix, columns[0], columns[1], columns[2]
+        );
+
+        String progress = String.format("INSERT INTO %ssequence(name, next_id) VALUES (?, ?) "
+                        + "ON DUPLICATE KEY UPDATE next_id = VALUES(next_id);",
+                tablePrefix
+        );
+
+        try (PreparedStatement insertStatement = conn.prepareStatement(insert);
+             PreparedStatement updateStatement = conn.prepareStatement(update);
+             PreparedStatement progressStatement = conn.prepareStatement(progress)) {
+            for (long start = startId; start < maxId; start += MIGRATION_BATCH_SIZE) {
+                long end = Math.min(start + MIGRATION_BATCH_SIZE, maxId);
+
+                for (int i = 0; i < columns.length; i++) {
+                    insertStatement.setLong(i * 2 + 1, start);
+                    insertStatement.setLong(i * 2 + 2, end);
                 }
 
-                purged += count;
-                Prism.getInstance().getLogger().info("Deleted {} records", purged);
+                insertStatement.executeUpdate();
+
+                updateStatement.setLong(1, start);
+                updateStatement.setLong(2, end);
+                updateStatement.executeUpdate();
+
+                // Batches are idempotent, one repeated after a crash converts the same rows again
+                progressStatement.setString(1, progressName);
+                progressStatement.setLong(2, end);
+                progressStatement.executeUpdate();
+
+                if ((end / MIGRATION_BATCH_SIZE) % 100 == 0) {
+                    Prism.getInstance().getLogger().info("Migrated {}/{} records", end, maxId);
+                }
             }
+        }
 
-            Prism.getInstance().getLogger().info("Finished purging MySQL database");
-        } catch (Exception ex) {
-            Prism.getInstance().getLogger().error("Encountered an error while purging MySQL database", ex);
+        // Replace the original columns in a single table rebuild
+        conn.prepareStatement(String.format("ALTER TABLE %srecords "
+                        + "DROP COLUMN %2$s, DROP COLUMN %3$s, DROP COLUMN %4$s, "
+                        + "CHANGE %2$sId %2$s int(10) unsigned NOT NULL, "
+                        + "CHANGE %3$sId %3$s int(10) unsigned, "
+                        + "CHANGE %4$sId %4$s int(10) unsigned;",
+                tablePrefix, columns[0], columns[1], columns[2]
+        )).execute();
+
+        try (PreparedStatement statement = conn.prepareStatement("DELETE FROM " + tablePrefix + "sequence WHERE name = ?;")) {
+            statement.setString(1, progressName);
+            statement.executeUpdate();
         }
+
+        Prism.getInstance().getLogger().info("Finished migrating records to the dictionary schema");
     }
 
     /**
-     * Removes expires records from the database.
+     * Returns the SQL type of a records column.
      *
-     * @return The amount of rows removed.
-     * @throws Exception
+     * @param conn Connection
+     * @param column Column name
+     * @return Type from {@link Types}, or null if the column doesn't exist
+     * @throws SQLException
      */
-    protected int purgeRecords() throws Exception {
-        Date date = DateUtil.parseTimeStringToDate(expiration, false);
-        if (date == null) {
-            throw new IllegalArgumentException("Failed to parse expiration");
+    private Integer getColumnType(Connection conn, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, tablePrefix + "records", column)) {
+            return rs.next() ? rs.getInt("DATA_TYPE") : null;
         }
+    }
 
-        if (purgeBatchLimit <= 0) {
-            throw new IllegalArgumentException("PurgeBatchLimit cannot be equal to or lower than 0");
+    /**
+     * Partitions an existing records table, dropping the foreign key of
+     * the extra table which partitioned tables don't support.
+     *
+     * @throws SQLException
+     */
+    protected void partitionTables() throws SQLException {
+        try (Connection conn = getConnection()) {
+            if (partitionManager.isPartitioned(conn)) {
+                return;
+            }
+
+            try (ResultSet rs = conn.getMetaData().getImportedKeys(conn.getCatalog(), null, tablePrefix + "extra")) {
+                while (rs.next()) {
+                    conn.prepareStatement(String.format("ALTER TABLE %sextra DROP FOREIGN KEY %s;",
+                            tablePrefix, rs.getString("FK_NAME")
+                    )).execute();
+                }
+            }
+
+            Prism.getInstance().getLogger().info("Partitioning the records table, this may take a while...");
+            partitionManager.partition(conn, LocalDate.now(ZoneOffset.UTC));
+            Prism.getInstance().getLogger().info("Finished partitioning the records table");
+        }
+    }
+
+    /**
+     * Creates upcoming partitions and drops expired ones.
+     */
+    protected void maintainPartitions() {
+        try (Connection conn = getConnection()) {
+            int created = partitionManager.createPartitions(conn, LocalDate.now(ZoneOffset.UTC));
+            if (created > 0) {
+                Prism.getInstance().getLogger().debug("Created {} MySQL partitions", created);
+            }
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().error("Encountered an error while creating MySQL partitions", ex);
         }
 
-        String sql = "DELETE FROM " + tablePrefix + "records "
-                + "WHERE " + tablePrefix + "records.created <= ? "
-                + "LIMIT ?;";
-        try (Connection conn = getConnection(); PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setLong(1, date.getTime() / 1000);
-            statement.setInt(2, purgeBatchLimit);
-            return statement.executeUpdate();
+        if (Prism.getInstance().getConfig().getStorageCategory().isShouldExpire()) {
+            purgePartitions();
+        }
+    }
+
+    /**
+     * Removes expired records by dropping the partitions holding them.
+     */
+    protected void purgePartitions() {
+        try (Connection conn = getConnection()) {
+            Date date = DateUtil.parseTimeStringToDate(expiration, false);
+            if (date == null) {
+                throw new IllegalArgumentException("Failed to parse expiration");
+            }
+
+            int dropped = partitionManager.dropPartitions(conn, date.getTime() / 1000);
+            if (dropped > 0) {
+                Prism.getInstance().getLogger().info("Dropped {} expired MySQL partitions", dropped);
+            }
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().error("Encountered an error while purging MySQL database", ex);
+        }
+    }
+
+    /**
+     * Moves extra data into the records table, reads keep joining the
+     * extra table if this fails.
+     */
+    protected void migrateExtra() {
+        try {
+            extraMigration.run();
+        } catch (Exception ex) {
+            Prism.getInstance().getLogger().error("Failed to move extra data into the records table", ex);
         }
     }
 
@@ -228,12 +594,25 @@ public class MySQLStorageAdapter implements StorageAdapter {
 
     @Override
     public void close() {
+        if (maintenanceTask != null) {
+            maintenanceTask.cancel();
+        }
+
+        if (purgeScheduler != null) {
+            purgeScheduler.stop();
+        }
+
+        if (extraMigration != null) {
+            extraMigration.stop();
+        }
+
         db.close();
     }
 
     @Override
     public boolean testConnection() throws Exception {
-        // @todo implement
-        return true;
+        try (Connection conn = getConnection()) {
+            return conn.isValid(5);
+        }
     }
 }
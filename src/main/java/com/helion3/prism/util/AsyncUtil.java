@@ -26,6 +26,7 @@ package com.helion3.prism.util;
 import com.helion3.prism.Prism;
 import com.helion3.prism.api.query.QuerySession;
 import com.helion3.prism.api.records.Result;
+import com.helion3.prism.metrics.Metrics;
 import org.spongepowered.api.Sponge;
 
 import java.util.List;
@@ -53,9 +54,13 @@ public class AsyncUtil {
      */
     private static void async(final QuerySession session, AsyncCallback callback) {
         Sponge.getScheduler().createTaskBuilder().async().execute(() -> {
+            long start = System.nanoTime();
+
             try {
                 CompletableFuture<List<Result>> future = Prism.getInstance().getStorageAdapter().records().query(session, true);
                 future.thenAccept(results -> {
+                    Metrics.recordLookup(System.nanoTime() - start);
+
                     try {
                         if (results.isEmpty()) {
                             callback.empty();
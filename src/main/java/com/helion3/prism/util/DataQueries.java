@@ -50,7 +50,10 @@ public final class DataQueries {
     public static final DataQuery Player = of("Player");
     public static final DataQuery Position = of("Position");
     public static final DataQuery Quantity = of("Quantity");
+    public static final DataQuery RecordId = of("RecordId");
+    public static final DataQuery RecordIds = of("RecordIds");
     public static final DataQuery ReplacementBlock = of("Replacement");
+    public static final DataQuery RolledBack = of("RolledBack");
     public static final DataQuery Rotation = of("Rotation");
     public static final DataQuery Target = of("Target");
     public static final DataQuery UnsafeData = of("UnsafeData");
@@ -29,6 +29,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.Map.Entry;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.helion3.prism.api.records.Result;
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -62,6 +63,16 @@ public class DataUtil {
             UnicodeEscaper.between(123, Integer.MAX_VALUE)
     );
 
+    private static final Set<DataQuery> RECORD_COLUMNS = ImmutableSet.of(
+            DataQueries.Created,
+            DataQueries.EventName,
+            DataQueries.Location,
+            DataQueries.Player,
+            DataQueries.Cause,
+            DataQueries.Target,
+            DataQueries.Count
+    );
+
     private DataUtil() {
     }
 
@@ -268,6 +279,50 @@ public class DataUtil {
         return jsonObject;
     }
 
+    /**
+     * Returns the date a record was created, records which were queued
+     * or stored on disk for a while must not use the time they were written.
+     *
+     * @param dataView Record DataView
+     * @return Date The created date, or the current date if missing
+     */
+    public static Date getCreated(DataView dataView) {
+        return dataView.get(DataQueries.Created)
+                .filter(Date.class::isInstance)
+                .map(Date.class::cast)
+                .orElseGet(Date::new);
+    }
+
+    /**
+     * Returns a copy of a record container without the values stored in
+     * dedicated SQL columns. The original container is kept intact in case
+     * the write has to be retried.
+     *
+     * @param container Record DataContainer
+     * @return The remaining extra data, or empty if there is none
+     */
+    public static Optional<DataContainer> extraDataFromRecord(DataContainer container) {
+        boolean hasExtraData = false;
+        for (DataQuery key : container.getKeys(false)) {
+            if (!RECORD_COLUMNS.contains(key)) {
+                hasExtraData = true;
+                break;
+            }
+        }
+
+        // Plain records don't need an extra row at all
+        if (!hasExtraData) {
+            return Optional.empty();
+        }
+
+        DataContainer extra = container.copy();
+        for (DataQuery key : RECORD_COLUMNS) {
+            extra.remove(key);
+        }
+
+        return Optional.of(extra);
+    }
+
     /**
      * Helper method to translate Player UUIDs to names.
      *
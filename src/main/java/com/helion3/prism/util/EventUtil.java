@@ -23,17 +23,113 @@
  */
 package com.helion3.prism.util;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import com.google.common.reflect.TypeToken;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.block.BlockSnapshot;
 import org.spongepowered.api.block.BlockType;
 import org.spongepowered.api.block.BlockTypes;
 import org.spongepowered.api.entity.Entity;
 import org.spongepowered.api.entity.living.Living;
 import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.Event;
 import org.spongepowered.api.event.cause.Cause;
 
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class EventUtil {
+    private static final Map<Class<?>, Set<Class<?>>> eventTypes = new ConcurrentHashMap<>();
+    private static volatile boolean listenerLookupSupported = true;
+
     private EventUtil() {}
 
+    /**
+     * Returns whether any listeners are registered for the given event
+     * type, including listeners of its supertypes, so events nobody
+     * listens to don't need to be built and posted. The Sponge API
+     * doesn't expose this so the event manager implementation is
+     * inspected, if that isn't possible listeners are assumed to exist.
+     * Nothing is cached as listeners may be registered at any time.
+     *
+     * @param type Event type
+     * @return boolean If the event may have listeners
+     */
+    public static boolean hasListeners(Class<? extends Event> type) {
+        if (!listenerLookupSupported) {
+            return true;
+        }
+
+        Object eventManager = Sponge.getEventManager();
+        Multimap<?, ?> handlersByEvent;
+        Object lock;
+        try {
+            Field handlersField = findField(eventManager.getClass(), "handlersByEvent");
+            if (handlersField == null) {
+                listenerLookupSupported = false;
+                return true;
+            }
+
+            handlersField.setAccessible(true);
+            Object handlers = handlersField.get(eventManager);
+            if (!(handlers instanceof Multimap)) {
+                listenerLookupSupported = false;
+                return true;
+            }
+
+            handlersByEvent = (Multimap<?, ?>) handlers;
+
+            // Registration modifies the listeners while holding this lock
+            Field lockField = findField(eventManager.getClass(), "lock");
+            if (lockField != null) {
+                lockField.setAccessible(true);
+                lock = lockField.get(eventManager);
+            } else {
+                lock = handlersByEvent;
+            }
+        } catch (Exception | LinkageError ex) {
+            listenerLookupSupported = false;
+            return true;
+        }
+
+        Set<Class<?>> types = eventTypes.computeIfAbsent(type, key -> ImmutableSet.<Class<?>>copyOf(TypeToken.of(key).getTypes().rawTypes()));
+        try {
+            synchronized (lock) {
+                for (Class<?> eventType : types) {
+                    if (handlersByEvent.containsKey(eventType)) {
+                        return true;
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds a field by name in a class or its parents.
+     *
+     * @param type Class to search
+     * @param name Field name
+     * @return Field, or null if none was found
+     */
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    return field;
+                }
+            }
+        }
+
+        return null;
+    }
+
     /**
      * Reject certain events which can only be identified
      * by the change + cause signature.
@@ -118,12 +118,11 @@ public class LookupCallback extends AsyncCallback {
             hoverMessage.append(Text.of(TextColors.DARK_GRAY, "Container: ", TextColors.WHITE, container, Text.NEW_LINE));
         }
 
-        if (result instanceof ResultAggregate) {
-            int count = result.data.getInt(DataQueries.Count).orElse(0);
-            if (count > 0) {
-                resultMessage.append(Text.of(TextColors.GREEN, "x", count, " "));
-                hoverMessage.append(Text.of(TextColors.DARK_GRAY, "Count: ", TextColors.WHITE, count));
-            }
+        // Complete results carry a count when identical records were merged
+        int count = result.data.getInt(DataQueries.Count).orElse(0);
+        if (count > 1 || (count > 0 && result instanceof ResultAggregate)) {
+            resultMessage.append(Text.of(TextColors.GREEN, "x", count, " "));
+            hoverMessage.append(Text.of(TextColors.DARK_GRAY, "Count: ", TextColors.WHITE, count, Text.NEW_LINE));
         }
 
         if (result instanceof ResultComplete) {
@@ -0,0 +1,95 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.api.records;
+
+import com.helion3.prism.util.DataQueries;
+import com.helion3.prism.util.DataUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataView;
+
+public class PrismRecordTest {
+
+    @Test
+    public void testContainerFromFields() {
+        PrismRecord record = TestRecords.create("break", "minecraft:stone", 10, 64, -3);
+        Assertions.assertFalse(record.hasExtraData());
+
+        DataContainer container = record.getDataContainer();
+        Assertions.assertEquals("break", container.getString(DataQueries.EventName).orElse(null));
+        Assertions.assertEquals("minecraft:stone", container.getString(DataQueries.Target).orElse(null));
+        Assertions.assertEquals("environment", container.getString(DataQueries.Cause).orElse(null));
+        Assertions.assertFalse(container.contains(DataQueries.Count));
+        Assertions.assertFalse(container.contains(DataQueries.Quantity));
+
+        DataView location = container.getView(DataQueries.Location).orElseThrow(AssertionError::new);
+        Assertions.assertEquals(TestRecords.WORLD_UUID.toString(), location.getString(DataQueries.WorldUuid).orElse(null));
+        Assertions.assertEquals(10, location.getInt(DataQueries.X).orElse(0).intValue());
+        Assertions.assertEquals(64, location.getInt(DataQueries.Y).orElse(0).intValue());
+        Assertions.assertEquals(-3, location.getInt(DataQueries.Z).orElse(0).intValue());
+    }
+
+    @Test
+    public void testExtraLocationIsKept() {
+        // Entities store their exact position in the extra data
+        DataContainer extra = DataContainer.createNew();
+        extra.set(DataQueries.Location.then(DataQueries.X), 10.5D);
+
+        PrismRecord record = TestRecords.create("death", "Zombie", 10, 64, -3, extra);
+        Assertions.assertTrue(record.hasExtraData());
+        Assertions.assertEquals(10.5D, record.getDataContainer().getDouble(DataQueries.Location.then(DataQueries.X)).orElse(0D), 0);
+    }
+
+    @Test
+    public void testMerge() {
+        PrismRecord record = TestRecords.create("item-drop", "minecraft:dirt", 0, 64, 0);
+        record.merge(TestRecords.create("item-drop", "minecraft:dirt", 0, 64, 0));
+        record.merge(TestRecords.create("item-drop", "minecraft:dirt", 0, 64, 0));
+
+        Assertions.assertEquals(3, record.getCount());
+        Assertions.assertNull(record.getQuantity());
+        Assertions.assertEquals(3, record.getDataContainer().getInt(DataQueries.Count).orElse(0).intValue());
+    }
+
+    @Test
+    public void testMergedCountIsStoredAsColumn() {
+        PrismRecord record = TestRecords.create("item-pickup", "minecraft:dirt", 0, 64, 0);
+        record.merge(TestRecords.create("item-pickup", "minecraft:dirt", 0, 64, 0));
+
+        // Grouped lookups add up the count column, so it must not end up in the extra data
+        DataContainer container = record.getDataContainer();
+        Assertions.assertEquals(2, container.getInt(DataQueries.Count).orElse(0).intValue());
+        Assertions.assertFalse(DataUtil.extraDataFromRecord(container).isPresent());
+    }
+
+    @Test
+    public void testMergeAfterWrite() {
+        PrismRecord record = TestRecords.create("item-drop", "minecraft:dirt", 0, 64, 0);
+        record.getDataContainer();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> record.merge(TestRecords.create("item-drop", "minecraft:dirt", 0, 64, 0)));
+    }
+}
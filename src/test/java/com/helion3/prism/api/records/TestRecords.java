@@ -0,0 +1,96 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.api.records;
+
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.world.Location;
+import org.spongepowered.api.world.World;
+
+/**
+ * Builds records without a running server. {@link PrismRecord.EventBuilder#build()}
+ * checks the event registry, so records are created from the builder directly.
+ */
+public final class TestRecords {
+
+    public static final UUID WORLD_UUID = UUID.fromString("1d2b0bb5-3a43-4dd4-9a3b-4e0d7f7a1c11");
+
+    // Only the unique id of the world is read while building records
+    private static final World WORLD = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{World.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getUniqueId":
+                        return WORLD_UUID;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "World";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    private TestRecords() {}
+
+    /**
+     * Creates a record at a block position without extra data.
+     *
+     * @param event Event id
+     * @param target Target
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     * @return Record
+     */
+    public static PrismRecord create(String event, String target, int x, int y, int z) {
+        return new PrismRecord(builder(event, target, x, y, z));
+    }
+
+    /**
+     * Creates a record at a block position carrying extra data.
+     *
+     * @param event Event id
+     * @param target Target
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     * @param extraData Extra data
+     * @return Record
+     */
+    public static PrismRecord create(String event, String target, int x, int y, int z, DataContainer extraData) {
+        return new PrismRecord(builder(event, target, x, y, z).dataContainer(extraData));
+    }
+
+    private static PrismRecord.EventBuilder builder(String event, String target, int x, int y, int z) {
+        return new PrismRecord.EventBuilder(null)
+                .event(event)
+                .target(target)
+                .location(new Location<>(WORLD, x, y, z));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testBucketBoundsContainValue() {
+        long[] values = new long[]{0, 1, 3, 4, 5, 7, 8, 15, 16, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = Histogram.getBucket(value);
+
+            Assertions.assertTrue(value <= Histogram.getUpperBound(bucket), "Upper bound below " + value);
+            Assertions.assertTrue(bucket == 0 || value > Histogram.getUpperBound(bucket - 1), "Previous bucket holds " + value);
+        }
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for (int bucket = 1; bucket < Histogram.getBucket(Long.MAX_VALUE); bucket++) {
+            Assertions.assertEquals(bucket, Histogram.getBucket(Histogram.getUpperBound(bucket - 1) + 1));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        Histogram.Snapshot snapshot = histogram.getSnapshot();
+
+        Assertions.assertEquals(100, snapshot.getCount());
+        Assertions.assertEquals(100, snapshot.getMax());
+
+        // Buckets are a quarter of a power of two wide
+        long median = snapshot.getPercentile(50);
+        Assertions.assertTrue(median >= 50 && median <= 63, "Median was " + median);
+        Assertions.assertEquals(100, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testEmptySnapshot() {
+        Histogram.Snapshot snapshot = new Histogram().getSnapshot();
+
+        Assertions.assertEquals(0, snapshot.getCount());
+        Assertions.assertEquals(0, snapshot.getPercentile(99));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.helion3.prism.api.query.Sort;
+import com.helion3.prism.api.records.BlockResult;
+import com.helion3.prism.api.records.Result;
+import com.helion3.prism.util.DataQueries;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+
+public class ApplierQueueTest {
+
+    @Test
+    public void testRollbackKeepsEarliestOriginal() {
+        ApplierQueue.Chunk chunk = new ApplierQueue.Chunk(null);
+
+        // Rollbacks are offered newest first, so the last one holds the earliest original
+        Result newest = createResult(3, DataQueries.OriginalBlock, 1, 64, 1);
+        Result middle = createResult(2, DataQueries.OriginalBlock, 1, 64, 1);
+        Result earliest = createResult(1, DataQueries.OriginalBlock, 1, 64, 1);
+
+        Assertions.assertTrue(chunk.add(newest, Sort.NEWEST_FIRST));
+        Assertions.assertFalse(chunk.add(middle, Sort.NEWEST_FIRST));
+        Assertions.assertFalse(chunk.add(earliest, Sort.NEWEST_FIRST));
+
+        ApplierQueue.Entry entry = chunk.poll();
+        Assertions.assertSame(earliest, entry.result);
+        Assertions.assertEquals(Arrays.asList(3L, 2L), entry.replacedRecordIds);
+        Assertions.assertTrue(chunk.isEmpty());
+    }
+
+    @Test
+    public void testRestoreKeepsLatestReplacement() {
+        ApplierQueue.Chunk chunk = new ApplierQueue.Chunk(null);
+
+        Result other = createResult(1, DataQueries.ReplacementBlock, 2, 64, 1);
+        Result earliest = createResult(2, DataQueries.ReplacementBlock, 1, 64, 1);
+        Result latest = createResult(3, DataQueries.ReplacementBlock, 1, 64, 1);
+
+        chunk.add(other, Sort.OLDEST_FIRST);
+        chunk.add(earliest, Sort.OLDEST_FIRST);
+        chunk.add(latest, Sort.OLDEST_FIRST);
+
+        // The collapsed change keeps the place of the first one offered for its block
+        Assertions.assertSame(other, chunk.poll().result);
+
+        ApplierQueue.Entry entry = chunk.poll();
+        Assertions.assertSame(latest, entry.result);
+        Assertions.assertEquals(Collections.singletonList(2L), entry.replacedRecordIds);
+        Assertions.assertTrue(chunk.isEmpty());
+    }
+
+    @Test
+    public void testChangesWithoutStateAreKept() {
+        ApplierQueue.Chunk chunk = new ApplierQueue.Chunk(null);
+
+        // A rollback needs the original block, so a record with only its replacement can't stand in for another
+        Assertions.assertTrue(chunk.add(createResult(2, DataQueries.OriginalBlock, 1, 64, 1), Sort.NEWEST_FIRST));
+        Assertions.assertTrue(chunk.add(createResult(1, DataQueries.ReplacementBlock, 1, 64, 1), Sort.NEWEST_FIRST));
+
+        Assertions.assertEquals(2L, (long) chunk.poll().result.data.getLong(DataQueries.RecordId).get());
+        Assertions.assertEquals(1L, (long) chunk.poll().result.data.getLong(DataQueries.RecordId).get());
+        Assertions.assertTrue(chunk.isEmpty());
+    }
+
+    @Test
+    public void testPollingAllowsNewChanges() {
+        ApplierQueue.Chunk chunk = new ApplierQueue.Chunk(null);
+
+        Result first = createResult(2, DataQueries.OriginalBlock, 1, 64, 1);
+        Result second = createResult(1, DataQueries.OriginalBlock, 1, 64, 1);
+
+        chunk.add(first, Sort.NEWEST_FIRST);
+        Assertions.assertSame(first, chunk.poll().result);
+
+        // Once applied, a change can't be replaced anymore
+        Assertions.assertTrue(chunk.add(second, Sort.NEWEST_FIRST));
+        Assertions.assertSame(second, chunk.poll().result);
+    }
+
+    @Test
+    public void testUndoneChangesKeepTheirRecordIds() {
+        ApplierQueue.Chunk chunk = new ApplierQueue.Chunk(null);
+
+        // Undo changes carry the ids of the records they applied instead of their own
+        Result replaced = createResult(2, DataQueries.OriginalBlock, 1, 64, 1);
+        replaced.data.remove(DataQueries.RecordId);
+        replaced.data.set(DataQueries.RecordIds, Arrays.asList(4L, 5L));
+
+        chunk.add(replaced, Sort.NEWEST_FIRST);
+        chunk.add(createResult(1, DataQueries.OriginalBlock, 1, 64, 1), Sort.NEWEST_FIRST);
+
+        Assertions.assertEquals(Arrays.asList(4L, 5L), chunk.poll().replacedRecordIds);
+    }
+
+    private static Result createResult(long recordId, DataQuery state, int x, int y, int z) {
+        DataContainer location = DataContainer.createNew();
+        location.set(DataQueries.X, x);
+        location.set(DataQueries.Y, y);
+        location.set(DataQueries.Z, z);
+
+        Result result = new BlockResult();
+        result.data = DataContainer.createNew();
+        result.data.set(DataQueries.RecordId, recordId);
+        result.data.set(DataQueries.Location, location);
+        result.data.set(state.then(DataQueries.BlockState), "minecraft:stone");
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableSet;
+import com.helion3.prism.api.records.PrismRecord;
+import com.helion3.prism.api.records.TestRecords;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.spongepowered.api.data.DataContainer;
+
+public class RecordCoalescerTest {
+
+    private static final long WINDOW = TimeUnit.HOURS.toNanos(1);
+
+    @Test
+    public void testIdenticalRecordsMerge() {
+        RecordCoalescer coalescer = new RecordCoalescer(ImmutableSet.of("item-drop"), WINDOW, 10);
+        List<PrismRecord> ready = new ArrayList<>();
+
+        PrismRecord first = TestRecords.create("item-drop", "minecraft:dirt", 1, 64, 1);
+        Assertions.assertTrue(coalescer.offer(first, ready));
+        Assertions.assertTrue(coalescer.offer(TestRecords.create("item-drop", "minecraft:dirt", 1, 64, 1), ready));
+        Assertions.assertTrue(coalescer.offer(TestRecords.create("item-drop", "minecraft:dirt", 1, 64, 1), ready));
+
+        Assertions.assertTrue(ready.isEmpty());
+        Assertions.assertEquals(1, coalescer.size());
+
+        coalescer.drainAll(ready);
+        Assertions.assertEquals(1, ready.size());
+        Assertions.assertSame(first, ready.get(0));
+        Assertions.assertEquals(3, first.getCount());
+        Assertions.assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void testDifferentRecordsAreKeptApart() {
+        RecordCoalescer coalescer = new RecordCoalescer(ImmutableSet.of("item-drop"), WINDOW, 10);
+        List<PrismRecord> ready = new ArrayList<>();
+
+        coalescer.offer(TestRecords.create("item-drop", "minecraft:dirt", 1, 64, 1), ready);
+        coalescer.offer(TestRecords.create("item-drop", "minecraft:stone", 1, 64, 1), ready);
+        coalescer.offer(TestRecords.create("item-drop", "minecraft:dirt", 2, 64, 1), ready);
+
+        Assertions.assertEquals(3, coalescer.size());
+
+        // Pending records are released in the order they arrived
+        coalescer.drainAll(ready);
+        Assertions.assertEquals("minecraft:dirt", ready.get(0).getTarget());
+        Assertions.assertEquals("minecraft:stone", ready.get(1).getTarget());
+        Assertions.assertEquals(2, ready.get(2).getX());
+        ready.forEach(record -> Assertions.assertEquals(1, record.getCount()));
+    }
+
+    @Test
+    public void testRecordsWhichCantMerge() {
+        RecordCoalescer coalescer = new RecordCoalescer(ImmutableSet.of("item-drop"), WINDOW, 10);
+        List<PrismRecord> ready = new ArrayList<>();
+
+        // Events which aren't configured and records with extra data are never held back
+        Assertions.assertFalse(coalescer.offer(TestRecords.create("break", "minecraft:dirt", 1, 64, 1), ready));
+        Assertions.assertFalse(coalescer.offer(TestRecords.create("item-drop", "minecraft:dirt", 1, 64, 1, DataContainer.createNew()), ready));
+
+        Assertions.assertEquals(0, coalescer.size());
+        Assertions.assertTrue(ready.isEmpty());
+    }
+
+    @Test
+    public void testMaximumPendingReleasesOldest() {
+        RecordCoalescer coalescer = new RecordCoalescer(ImmutableSet.of("item-drop"), WINDOW, 2);
+        List<PrismRecord> ready = new ArrayList<>();
+
+        PrismRecord oldest = TestRecords.create("item-drop", "minecraft:dirt", 1, 64, 1);
+        coalescer.offer(oldest, ready);
+        coalescer.offer(TestRecords.create("item-drop", "minecraft:dirt", 2, 64, 1), ready);
+        coalescer.offer(TestRecords.create("item-drop", "minecraft:dirt", 3, 64, 1), ready);
+
+        Assertions.assertEquals(2, coalescer.size());
+        Assertions.assertEquals(1, ready.size());
+        Assertions.assertSame(oldest, ready.get(0));
+    }
+
+    @Test
+    public void testDrainExpired() {
+        List<PrismRecord> ready = new ArrayList<>();
+
+        RecordCoalescer holding = new RecordCoalescer(ImmutableSet.of("item-drop"), WINDOW, 10);
+        holding.offer(TestRecords.create("item-drop", "minecraft:dirt", 1, 64, 1), ready);
+        holding.drainExpired(ready);
+        Assertions.assertTrue(ready.isEmpty());
+        Assertions.assertEquals(1, holding.size());
+
+        RecordCoalescer expired = new RecordCoalescer(ImmutableSet.of("item-drop"), 0, 10);
+        expired.offer(TestRecords.create("item-drop", "minecraft:dirt", 1, 64, 1), ready);
+        expired.drainExpired(ready);
+        Assertions.assertEquals(1, ready.size());
+        Assertions.assertEquals(0, expired.size());
+    }
+}
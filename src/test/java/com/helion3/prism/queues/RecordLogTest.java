@@ -0,0 +1,91 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.helion3.prism.util.DataQueries;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spongepowered.api.data.DataContainer;
+
+public class RecordLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testPartialLastLineIsSkipped() throws Exception {
+        Path segment = writeSegment("a", "b");
+
+        // A crash while appending leaves the last line cut short
+        List<String> lines = Files.readAllLines(segment, StandardCharsets.UTF_8);
+        lines.add(lines.get(0).substring(0, lines.get(0).length() / 2));
+        Files.write(segment, lines, StandardCharsets.UTF_8);
+
+        RecordLog log = new RecordLog(directory, 10);
+        List<DataContainer> containers = log.read(segment);
+        Assertions.assertEquals(2, containers.size());
+        Assertions.assertFalse(Files.exists(segment.resolveSibling(segment.getFileName() + ".corrupt")));
+    }
+
+    @Test
+    public void testCorruptSegmentIsKeptAside() throws Exception {
+        Path segment = writeSegment("a", "b", "c");
+
+        List<String> lines = Files.readAllLines(segment, StandardCharsets.UTF_8);
+        lines.set(1, "{\"Target\":");
+        Files.write(segment, lines, StandardCharsets.UTF_8);
+
+        RecordLog log = new RecordLog(directory, 10);
+        List<DataContainer> containers = log.read(segment);
+        Assertions.assertEquals(2, containers.size());
+        Assertions.assertEquals("c", containers.get(1).getString(DataQueries.Target).orElse(null));
+
+        log.delete(segment);
+        Path corrupt = segment.resolveSibling(segment.getFileName() + ".corrupt");
+        Assertions.assertEquals(lines, Files.readAllLines(corrupt, StandardCharsets.UTF_8));
+
+        // Segments kept aside are never read back as part of the log
+        Assertions.assertFalse(new RecordLog(directory, 10).oldest().isPresent());
+    }
+
+    private Path writeSegment(String... targets) throws Exception {
+        RecordLog log = new RecordLog(directory, 10);
+        for (String target : targets) {
+            DataContainer container = DataContainer.createNew();
+            container.set(DataQueries.EventName, "break");
+            container.set(DataQueries.Target, target);
+            log.append(container);
+        }
+
+        log.close();
+        return log.oldest().orElseThrow(AssertionError::new);
+    }
+}
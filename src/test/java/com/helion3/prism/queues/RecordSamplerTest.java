@@ -0,0 +1,105 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.util.Collections;
+
+import com.google.common.collect.ImmutableMap;
+import com.helion3.prism.api.records.TestRecords;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RecordSamplerTest {
+
+    @Test
+    public void testSampleRate() {
+        RecordSampler sampler = new RecordSampler(ImmutableMap.of("break", 4), Collections.emptyMap());
+
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sampler.accept(TestRecords.create("break", "minecraft:dirt", i, 64, 0))) {
+                accepted++;
+            }
+        }
+
+        Assertions.assertEquals(25, accepted);
+        Assertions.assertEquals(75, sampler.getSampled());
+    }
+
+    @Test
+    public void testSourceRuleTakesPrecedence() {
+        // Records without a player or cause come from the environment
+        RecordSampler sampler = new RecordSampler(ImmutableMap.of("Break", 10, "break:environment", 2, "place:player", 2), Collections.emptyMap());
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (sampler.accept(TestRecords.create("break", "minecraft:dirt", i, 64, 0))) {
+                accepted++;
+            }
+
+            Assertions.assertTrue(sampler.accept(TestRecords.create("place", "minecraft:dirt", i, 64, 0)));
+        }
+
+        Assertions.assertEquals(5, accepted);
+    }
+
+    @Test
+    public void testRateLimitPerChunk() {
+        RecordSampler sampler = new RecordSampler(Collections.emptyMap(), ImmutableMap.of("break", 2));
+
+        Assertions.assertTrue(sampler.accept(TestRecords.create("break", "minecraft:dirt", 0, 64, 0)));
+        Assertions.assertTrue(sampler.accept(TestRecords.create("break", "minecraft:dirt", 15, 64, 15)));
+        Assertions.assertFalse(sampler.accept(TestRecords.create("break", "minecraft:dirt", 8, 64, 8)));
+
+        // Neighbouring chunks have their own budget
+        Assertions.assertTrue(sampler.accept(TestRecords.create("break", "minecraft:dirt", 16, 64, 0)));
+        Assertions.assertTrue(sampler.accept(TestRecords.create("break", "minecraft:dirt", 0, 64, -1)));
+    }
+
+    @Test
+    public void testDisabledRulesAreIgnored() {
+        RecordSampler sampler = new RecordSampler(ImmutableMap.of("break", 1), ImmutableMap.of("break", 0));
+
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(sampler.accept(TestRecords.create("break", "minecraft:dirt", 0, 64, 0)));
+        }
+
+        Assertions.assertEquals(0, sampler.getSampled());
+    }
+
+    @Test
+    public void testSampledByEvent() {
+        RecordSampler sampler = new RecordSampler(ImmutableMap.of("break", 2, "place", 3), Collections.emptyMap());
+
+        for (int i = 0; i < 6; i++) {
+            sampler.accept(TestRecords.create("break", "minecraft:dirt", i, 64, 0));
+            sampler.accept(TestRecords.create("place", "minecraft:dirt", i, 64, 0));
+            sampler.accept(TestRecords.create("decay", "minecraft:leaves", i, 64, 0));
+        }
+
+        Assertions.assertEquals(ImmutableMap.of("break", 3L, "place", 4L), sampler.getSampledByEvent());
+        Assertions.assertEquals(7, sampler.getSampled());
+    }
+}
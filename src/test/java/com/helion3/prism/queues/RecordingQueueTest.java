@@ -0,0 +1,133 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.queues;
+
+import java.nio.file.Path;
+
+import com.google.common.collect.ImmutableSet;
+import com.helion3.prism.api.records.PrismRecord;
+import com.helion3.prism.util.DataQueries;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spongepowered.api.data.DataContainer;
+
+public class RecordingQueueTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testDropEvictsLowPriority() {
+        RecordingQueue queue = new RecordingQueue(2, OverflowPolicy.DROP, 0, ImmutableSet.of("item-pickup"), directory, 1);
+        queue.add(record("item-pickup", "a"));
+        queue.add(record("break", "b"));
+        queue.add(record("break", "c"));
+
+        Assertions.assertEquals(1, queue.getDropped());
+        Assertions.assertEquals("b", getTarget(queue.poll()));
+        Assertions.assertEquals("c", getTarget(queue.poll()));
+        Assertions.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testDropDiscardsNewRecords() {
+        RecordingQueue queue = new RecordingQueue(1, OverflowPolicy.DROP, 0, ImmutableSet.of("item-pickup"), directory, 1);
+        queue.add(record("item-pickup", "a"));
+
+        // Low priority records never evict each other
+        queue.add(record("item-pickup", "b"));
+        Assertions.assertEquals(1, queue.getDropped());
+
+        queue.add(record("break", "c"));
+        Assertions.assertEquals(2, queue.getDropped());
+        Assertions.assertEquals("c", getTarget(queue.poll()));
+        Assertions.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testBlockTimesOut() {
+        RecordingQueue queue = new RecordingQueue(1, OverflowPolicy.BLOCK, 10, ImmutableSet.of(), directory, 1);
+        queue.add(record("break", "a"));
+        queue.add(record("break", "b"));
+
+        Assertions.assertEquals(1, queue.getDropped());
+        Assertions.assertEquals(1, queue.getHighWaterMark());
+        Assertions.assertEquals("a", getTarget(queue.poll()));
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testSpillKeepsOrder() {
+        RecordingQueue queue = new RecordingQueue(2, OverflowPolicy.SPILL, 0, ImmutableSet.of(), directory, 2);
+        for (int i = 0; i < 7; i++) {
+            queue.add(record("break", "r" + i));
+        }
+
+        Assertions.assertEquals(2, queue.size());
+        Assertions.assertEquals(5, queue.getSpilled());
+        Assertions.assertEquals("r0", getTarget(queue.poll()));
+
+        // There's space again, but new records must still line up behind the spilled ones
+        queue.add(record("break", "r7"));
+        Assertions.assertEquals(6, queue.getSpilled());
+
+        for (int i = 1; i < 8; i++) {
+            Assertions.assertEquals("r" + i, getTarget(queue.poll()));
+        }
+
+        Assertions.assertNull(queue.poll());
+        Assertions.assertTrue(queue.isEmpty());
+        Assertions.assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void testSpillSurvivesRestart() {
+        RecordingQueue queue = new RecordingQueue(1, OverflowPolicy.SPILL, 0, ImmutableSet.of(), directory, 1);
+        queue.add(record("break", "a"));
+        queue.add(record("break", "b"));
+        queue.add(record("break", "c"));
+        queue.close();
+
+        // Only spilled records are kept, the record held in memory is flushed by the writers on shutdown
+        RecordingQueue reopened = new RecordingQueue(1, OverflowPolicy.SPILL, 0, ImmutableSet.of(), directory, 1);
+        Assertions.assertFalse(reopened.isEmpty());
+        Assertions.assertEquals("b", getTarget(reopened.poll()));
+        Assertions.assertEquals("c", getTarget(reopened.poll()));
+        Assertions.assertTrue(reopened.isEmpty());
+    }
+
+    private static PrismRecord record(String event, String target) {
+        DataContainer container = DataContainer.createNew();
+        container.set(DataQueries.EventName, event);
+        container.set(DataQueries.Target, target);
+        return PrismRecord.from(container);
+    }
+
+    private static String getTarget(PrismRecord record) {
+        Assertions.assertNotNull(record);
+        return record.getDataContainer().getString(DataQueries.Target).orElse(null);
+    }
+}
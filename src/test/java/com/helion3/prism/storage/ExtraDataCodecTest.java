@@ -0,0 +1,64 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ExtraDataCodecTest {
+
+    private static final String BLOCK_JSON = "{\"Original\":{\"BlockState\":{\"BlockState\":\"minecraft:stone\",\"ContentVersion\":1},"
+            + "\"ContentVersion\":1,\"Position\":{\"X\":120,\"Y\":64,\"Z\":-340},\"WorldUuid\":\"2a4b1f7e-54a1-4b0c-a0a7-3c7e4e1a5c11\"},"
+            + "\"Replacement\":{\"BlockState\":{\"BlockState\":\"minecraft:air\",\"ContentVersion\":1},"
+            + "\"ContentVersion\":1,\"Position\":{\"X\":120,\"Y\":64,\"Z\":-340},\"WorldUuid\":\"2a4b1f7e-54a1-4b0c-a0a7-3c7e4e1a5c11\"}}";
+
+    @Test
+    public void testRoundTrip() {
+        String[] values = new String[]{BLOCK_JSON, "", "{}", "{\"Text\":\"\u00e9\u4e2d\ud83d\ude00\"}"};
+        for (String value : values) {
+            Assertions.assertEquals(value, ExtraDataCodec.decode(ExtraDataCodec.encode(value)));
+        }
+    }
+
+    @Test
+    public void testCompressesBlockData() {
+        int length = BLOCK_JSON.getBytes(StandardCharsets.UTF_8).length;
+        int encoded = ExtraDataCodec.encode(BLOCK_JSON).length;
+
+        Assertions.assertTrue(encoded < length / 3, "Encoded " + length + " bytes to " + encoded);
+    }
+
+    @Test
+    public void testRejectsInvalidData() {
+        byte[] encoded = ExtraDataCodec.encode(BLOCK_JSON);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ExtraDataCodec.decode(new byte[0]));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ExtraDataCodec.decode(new byte[]{42, 1, 2}));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ExtraDataCodec.decode(Arrays.copyOf(encoded, encoded.length / 2)));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.helion3.prism.api.query.Query;
+import com.helion3.prism.api.query.QuerySession;
+import com.helion3.prism.api.records.Result;
+import com.helion3.prism.api.storage.StorageAdapterRecords;
+import com.helion3.prism.api.storage.StorageDeleteResult;
+import com.helion3.prism.api.storage.StorageWriteResult;
+import com.helion3.prism.configuration.category.StorageCategory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+import org.spongepowered.api.data.DataContainer;
+
+public class PurgeSchedulerTest {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void testParseHours() {
+        Assertions.assertNull(PurgeScheduler.parseHours(""));
+        Assertions.assertArrayEquals(new int[]{2, 6}, PurgeScheduler.parseHours("2-6"));
+        Assertions.assertArrayEquals(new int[]{22, 4}, PurgeScheduler.parseHours(" 22 - 4 "));
+    }
+
+    @Test
+    public void testWithinHours() {
+        Assertions.assertTrue(PurgeScheduler.isWithinHours(13, null));
+
+        int[] night = new int[]{2, 6};
+        Assertions.assertTrue(PurgeScheduler.isWithinHours(2, night));
+        Assertions.assertTrue(PurgeScheduler.isWithinHours(5, night));
+        Assertions.assertFalse(PurgeScheduler.isWithinHours(6, night));
+        Assertions.assertFalse(PurgeScheduler.isWithinHours(1, night));
+
+        // Ranges may wrap around midnight
+        int[] wrapped = new int[]{22, 4};
+        Assertions.assertTrue(PurgeScheduler.isWithinHours(23, wrapped));
+        Assertions.assertTrue(PurgeScheduler.isWithinHours(0, wrapped));
+        Assertions.assertFalse(PurgeScheduler.isWithinHours(4, wrapped));
+        Assertions.assertFalse(PurgeScheduler.isWithinHours(12, wrapped));
+    }
+
+    @Test
+    public void testRateLimitsDeletesPerRun() throws Exception {
+        DeletingRecords records = new DeletingRecords(Integer.MAX_VALUE);
+        PurgeScheduler scheduler = createScheduler(records, 1000, 2500);
+
+        scheduler.purge(NOW, 0);
+
+        Assertions.assertEquals(2500, records.deleted);
+        Assertions.assertEquals(3, records.limits.size());
+        Assertions.assertEquals(500, (int) records.limits.get(2));
+
+        // More records are left, so purging continues on the next run
+        Assertions.assertEquals(0, scheduler.getNextRun());
+    }
+
+    @Test
+    public void testBudgetCountsDeletedRecords() throws Exception {
+        // Chunks may delete fewer records than their limit, for example past gaps in the ids
+        DeletingRecords records = new DeletingRecords(300);
+        PurgeScheduler scheduler = createScheduler(records, 1000, 2500);
+
+        scheduler.purge(NOW, 0);
+
+        Assertions.assertEquals(2500, records.deleted);
+        Assertions.assertEquals(9, records.limits.size());
+        Assertions.assertEquals(100, (int) records.limits.get(8));
+    }
+
+    @Test
+    public void testWaitsForIntervalOnceDone() throws Exception {
+        DeletingRecords records = new DeletingRecords(0);
+        PurgeScheduler scheduler = createScheduler(records, 1000, 2500);
+
+        scheduler.purge(NOW, 0);
+
+        Assertions.assertEquals(1, records.limits.size());
+        Assertions.assertEquals(NOW + TimeUnit.MINUTES.toMillis(60), scheduler.getNextRun());
+    }
+
+    @Test
+    public void testBacksOffWhileQueueLags() throws Exception {
+        DeletingRecords records = new DeletingRecords(Integer.MAX_VALUE);
+        PurgeScheduler scheduler = createScheduler(records, 1000, 1000);
+
+        // Lag above the 1000ms default doubles the pause, starting at a second
+        long[] expected = new long[]{1, 2, 4, 8};
+        for (long seconds : expected) {
+            scheduler.purge(NOW, 1001);
+            Assertions.assertEquals(NOW + TimeUnit.SECONDS.toMillis(seconds), scheduler.getNextRun());
+        }
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.purge(NOW, 5000);
+        }
+
+        Assertions.assertEquals(NOW + TimeUnit.MINUTES.toMillis(5), scheduler.getNextRun());
+        Assertions.assertTrue(records.limits.isEmpty());
+
+        // Purging resumes once the queue catches up, and the pause starts over
+        scheduler.purge(NOW, 1000);
+        Assertions.assertEquals(1000, records.deleted);
+
+        scheduler.purge(NOW, 1001);
+        Assertions.assertEquals(NOW + TimeUnit.SECONDS.toMillis(1), scheduler.getNextRun());
+    }
+
+    private static PurgeScheduler createScheduler(StorageAdapterRecords records, int chunkSize, int rate) {
+        StorageCategory storage = new StorageCategory();
+        storage.setPurgeBatchLimit(chunkSize);
+        storage.setPurgeRate(rate);
+
+        return new PurgeScheduler("PrismTestPurge", records, NOPLogger.NOP_LOGGER, storage);
+    }
+
+    /**
+     * Deletes up to a fixed number of records per call, regardless of how
+     * many records are left.
+     */
+    private static final class DeletingRecords implements StorageAdapterRecords {
+        private final int perCall;
+        private final List<Integer> limits = new ArrayList<>();
+        private int deleted;
+
+        private DeletingRecords(int perCall) {
+            this.perCall = perCall;
+        }
+
+        @Override
+        public StorageDeleteResult delete(Query query) {
+            limits.add(query.getLimit());
+
+            int count = Math.min(perCall, query.getLimit());
+            deleted += count;
+            return new StorageDeleteResult(count);
+        }
+
+        @Override
+        public StorageWriteResult write(List<DataContainer> containers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<List<Result>> query(QuerySession session, boolean translate) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void stream(QuerySession session, Consumer<Result> consumer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void markRolledBack(List<Object> recordIds, boolean rolledBack) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
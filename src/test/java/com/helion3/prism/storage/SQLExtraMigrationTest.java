@@ -0,0 +1,133 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SQLExtraMigrationTest {
+
+    private static final String URL = "jdbc:h2:mem:prism_extra;DB_CLOSE_DELAY=-1";
+
+    private Connection conn;
+
+    @BeforeEach
+    public void createTables() throws SQLException {
+        conn = DriverManager.getConnection(URL);
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE prism_records (id bigint primary key, extra varbinary)");
+            statement.execute("CREATE TABLE prism_extra (id int primary key auto_increment, record_id bigint, json varchar(65535))");
+        }
+    }
+
+    @AfterEach
+    public void dropTables() throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+
+        conn.close();
+    }
+
+    @Test
+    public void testMovesExtraInBatches() throws SQLException {
+        Map<Long, String> expected = new HashMap<>();
+        for (long id = 1; id <= 5; id++) {
+            String json = "{\"Entity\":{\"EntityType\":\"minecraft:cow\",\"Health\":" + id + "}}";
+            insert(id, json);
+            expected.put(id, json);
+        }
+
+        // Records without extra data keep an empty column
+        insert(6, null);
+        expected.put(6L, null);
+
+        SQLExtraMigration migration = new SQLExtraMigration(() -> DriverManager.getConnection(URL), "prism_", 2);
+        conn.setAutoCommit(false);
+
+        Assertions.assertEquals(2, migration.moveBatch(conn));
+        Assertions.assertEquals(4, countExtra());
+
+        Assertions.assertEquals(2, migration.moveBatch(conn));
+        Assertions.assertEquals(2, migration.moveBatch(conn));
+        Assertions.assertEquals(0, migration.moveBatch(conn));
+        Assertions.assertEquals(0, countExtra());
+
+        Assertions.assertEquals(expected, readInline());
+    }
+
+    @Test
+    public void testEmptyExtraTable() throws SQLException {
+        SQLExtraMigration migration = new SQLExtraMigration(() -> DriverManager.getConnection(URL), "prism_");
+        conn.setAutoCommit(false);
+
+        Assertions.assertEquals(0, migration.moveBatch(conn));
+        Assertions.assertFalse(migration.isFinished());
+    }
+
+    private void insert(long id, String json) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement("INSERT INTO prism_records(id) VALUES (?)")) {
+            statement.setLong(1, id);
+            statement.executeUpdate();
+        }
+
+        try (PreparedStatement statement = conn.prepareStatement("INSERT INTO prism_extra(record_id, json) VALUES (?, ?)")) {
+            statement.setLong(1, id);
+            statement.setString(2, json);
+            statement.executeUpdate();
+        }
+    }
+
+    private long countExtra() throws SQLException {
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM prism_extra")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private Map<Long, String> readInline() throws SQLException {
+        Map<Long, String> values = new HashMap<>();
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT id, extra FROM prism_records")) {
+            while (rs.next()) {
+                byte[] extra = rs.getBytes("extra");
+                values.put(rs.getLong("id"), extra != null ? ExtraDataCodec.decode(extra) : null);
+            }
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage.mysql;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MySQLBulkInsertTest {
+
+    @Test
+    public void testLoadDataEscaping() {
+        StringBuilder data = new StringBuilder();
+        MySQLBulkInsert.appendValue(data, "a\tb\nc\\d\re\0f");
+        data.append('\t');
+        MySQLBulkInsert.appendValue(data, null);
+        data.append('\t');
+        MySQLBulkInsert.appendValue(data, 42);
+
+        Assertions.assertEquals("a\\tb\\nc\\\\d\\re\\0f\t\\N\t42", data.toString());
+    }
+
+    @Test
+    public void testModeFromConfiguration() {
+        Assertions.assertEquals(MySQLBulkInsert.Mode.MULTI_ROW, MySQLBulkInsert.Mode.of("multi-row"));
+        Assertions.assertEquals(MySQLBulkInsert.Mode.LOAD_DATA, MySQLBulkInsert.Mode.of("Load-Data"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MySQLBulkInsert.Mode.of("fast"));
+    }
+}
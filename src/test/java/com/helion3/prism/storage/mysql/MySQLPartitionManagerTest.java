@@ -0,0 +1,68 @@
+/*
+ * This file is part of Prism, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2015 Helion3 http://helion3.com/
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.helion3.prism.storage.mysql;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MySQLPartitionManagerTest {
+
+    @Test
+    public void testIntervalBoundaries() {
+        LocalDate thursday = LocalDate.of(2026, 10, 15);
+
+        Assertions.assertEquals(thursday, MySQLPartitionManager.Interval.DAILY.floor(thursday));
+        Assertions.assertEquals(LocalDate.of(2026, 10, 12), MySQLPartitionManager.Interval.WEEKLY.floor(thursday));
+        Assertions.assertEquals(LocalDate.of(2026, 10, 19), MySQLPartitionManager.Interval.WEEKLY.next(LocalDate.of(2026, 10, 12)));
+        Assertions.assertEquals(MySQLPartitionManager.Interval.WEEKLY, MySQLPartitionManager.Interval.of("Weekly"));
+    }
+
+    @Test
+    public void testPartitionClause() {
+        MySQLPartitionManager manager = new MySQLPartitionManager("prism_records", MySQLPartitionManager.Interval.DAILY);
+        LocalDate today = LocalDate.of(2026, 10, 15);
+
+        String clause = manager.getPartitionClause(LocalDate.of(2026, 10, 14), today);
+
+        // Yesterday through three days ahead, then the catch-all
+        Assertions.assertEquals("PARTITION BY RANGE (created) ("
+                + "PARTITION p20261014 VALUES LESS THAN (" + MySQLPartitionManager.toEpoch(today) + "), "
+                + "PARTITION p20261015 VALUES LESS THAN (" + MySQLPartitionManager.toEpoch(LocalDate.of(2026, 10, 16)) + "), "
+                + "PARTITION p20261016 VALUES LESS THAN (" + MySQLPartitionManager.toEpoch(LocalDate.of(2026, 10, 17)) + "), "
+                + "PARTITION p20261017 VALUES LESS THAN (" + MySQLPartitionManager.toEpoch(LocalDate.of(2026, 10, 18)) + "), "
+                + "PARTITION p20261018 VALUES LESS THAN (" + MySQLPartitionManager.toEpoch(LocalDate.of(2026, 10, 19)) + "), "
+                + "PARTITION pmax VALUES LESS THAN MAXVALUE)", clause);
+    }
+
+    @Test
+    public void testEpochConversion() {
+        LocalDate date = LocalDate.of(2026, 10, 15);
+
+        Assertions.assertEquals(date, MySQLPartitionManager.toDate(MySQLPartitionManager.toEpoch(date)));
+        Assertions.assertEquals(date, MySQLPartitionManager.toDate(MySQLPartitionManager.toEpoch(date) + 86399));
+    }
+}